@@ -0,0 +1,55 @@
+package com.soagrowers.benchmarks;
+
+import com.soagrowers.productcommand.aggregates.ProductAggregate;
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to rebuild a ProductAggregate from its event history, which is what the
+ * repository does on every cache miss (minus the event store read). The history is one
+ * ProductAddedEvent followed by alternating saleable / unsaleable events.
+ * <p/>
+ * Use this to pick spring.application.snapshotEventThreshold - the cost should grow
+ * linearly with historyLength.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregateRehydrationBenchmark {
+
+    @Param({"1", "10", "50", "100", "1000"})
+    int historyLength;
+
+    private List<DomainEventMessage> history;
+
+    @Setup
+    public void setup() {
+        String id = UUID.randomUUID().toString();
+        history = new ArrayList<DomainEventMessage>(historyLength);
+        history.add(new GenericDomainEventMessage<Object>(id, 0, new ProductAddedEvent(id, "Everything Is Awesome")));
+        for (int sequence = 1; sequence < historyLength; sequence++) {
+            Object payload = sequence % 2 == 1 ? new ProductSaleableEvent(id) : new ProductUnsaleableEvent(id);
+            history.add(new GenericDomainEventMessage<Object>(id, sequence, payload));
+        }
+    }
+
+    @Benchmark
+    public ProductAggregate rehydrate() {
+        ProductAggregate aggregate = new ProductAggregate();
+        aggregate.initializeState(new SimpleDomainEventStream(history));
+        return aggregate;
+    }
+}
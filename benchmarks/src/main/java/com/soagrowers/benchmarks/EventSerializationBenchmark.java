@@ -0,0 +1,70 @@
+package com.soagrowers.benchmarks;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import com.soagrowers.productevents.serializer.CompactEventSerializer;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.json.JacksonSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize / deserialize throughput for each of the product events, using the same
+ * serializers that the command side writes to the event store and the AMQP exchange with.
+ * <p/>
+ * 'json' is the plain JacksonSerializer, 'compact' is the CompactEventSerializer
+ * (spring.application.eventSerializer=compact).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventSerializationBenchmark {
+
+    @Param({"added", "saleable", "unsaleable"})
+    String event;
+
+    @Param({"json", "compact"})
+    String serializer;
+
+    @Param({"byte[]", "String"})
+    String representation;
+
+    private Serializer eventSerializer;
+    private Object payload;
+    private Class<?> representationType;
+    private SerializedObject<?> serialized;
+
+    @Setup
+    public void setup() {
+        JacksonSerializer json = new JacksonSerializer();
+        eventSerializer = "compact".equals(serializer) ? new CompactEventSerializer(json) : json;
+        representationType = "String".equals(representation) ? String.class : byte[].class;
+
+        String id = UUID.randomUUID().toString();
+        if ("added".equals(event)) {
+            payload = new ProductAddedEvent(id, "Everything Is Awesome");
+        } else if ("saleable".equals(event)) {
+            payload = new ProductSaleableEvent(id);
+        } else {
+            payload = new ProductUnsaleableEvent(id);
+        }
+        serialized = eventSerializer.serialize(payload, representationType);
+    }
+
+    @Benchmark
+    public SerializedObject<?> serialize() {
+        return eventSerializer.serialize(payload, representationType);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return eventSerializer.deserialize(serialized);
+    }
+}
@@ -0,0 +1,63 @@
+package com.soagrowers.benchmarks;
+
+import com.soagrowers.productcommand.locking.StripedLockManager;
+import org.axonframework.repository.LockManager;
+import org.axonframework.repository.PessimisticLockManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of obtaining and releasing aggregate locks from 8 threads at once, comparing
+ * Axon's PessimisticLockManager (the default) with the StripedLockManager
+ * (spring.application.lockManager=striped).
+ * <p/>
+ * Each operation locks a random product from a pool of 'products' ids, so a small pool
+ * shows behaviour under real contention on the same product and a big pool shows the
+ * bookkeeping cost of each lock manager. The lock is held for a short burst of CPU work,
+ * standing in for the command handler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LockManagerBenchmark {
+
+    @Param({"pessimistic", "striped"})
+    String lockManager;
+
+    @Param({"1024"})
+    int stripes;
+
+    @Param({"16", "100000"})
+    int products;
+
+    private LockManager locks;
+    private String[] ids;
+
+    @Setup
+    public void setup() {
+        locks = "striped".equals(lockManager) ? new StripedLockManager(stripes) : new PessimisticLockManager();
+        ids = new String[products];
+        for (int i = 0; i < products; i++) {
+            ids[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public void obtainAndRelease() {
+        String id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        locks.obtainLock(id);
+        try {
+            Blackhole.consumeCPU(100);
+        } finally {
+            locks.releaseLock(id);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.soagrowers.benchmarks;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import com.soagrowers.productquery.cache.ProductReadCache;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import com.soagrowers.productquery.handlers.ProductViewEventHandler;
+import com.soagrowers.productquery.handlers.ProductViewVersion;
+import com.soagrowers.productquery.repository.ProductRepository;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the query side's ProductViewEventHandler per event, with the JPA repository
+ * swapped for a HashMap. This measures the handler itself (one conditional write and one
+ * cache eviction per event) rather than H2, so changes to how the handler talks to the repository show up clearly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductViewEventHandlerBenchmark {
+
+    @Param({"1000"})
+    int products;
+
+    private ProductViewEventHandler handler;
+    private ProductAddedEvent[] added;
+    private ProductSaleableEvent[] saleable;
+    private ProductUnsaleableEvent[] unsaleable;
+    private long[] sequenceNumbers;
+    private int next;
+    private CacheManager cacheManager;
+    private ProductChangeFeed changeFeed;
+
+    @Setup
+    public void setup() {
+        handler = new ProductViewEventHandler();
+        Field repository = ReflectionUtils.findField(ProductViewEventHandler.class, "productRepository");
+        ReflectionUtils.makeAccessible(repository);
+        ReflectionUtils.setField(repository, handler, inMemoryRepository());
+        cacheManager = new CacheManager(new net.sf.ehcache.config.Configuration().name("benchmark"));
+        Field cache = ReflectionUtils.findField(ProductViewEventHandler.class, "productReadCache");
+        ReflectionUtils.makeAccessible(cache);
+        ReflectionUtils.setField(cache, handler, new ProductReadCache(cache("products"), cache("saleableProducts")));
+        Field version = ReflectionUtils.findField(ProductViewEventHandler.class, "productViewVersion");
+        ReflectionUtils.makeAccessible(version);
+        ReflectionUtils.setField(version, handler, new ProductViewVersion());
+        changeFeed = new ProductChangeFeed(products, 1, 60000, 10000);
+        Field feed = ReflectionUtils.findField(ProductViewEventHandler.class, "productChangeFeed");
+        ReflectionUtils.makeAccessible(feed);
+        ReflectionUtils.setField(feed, handler, changeFeed);
+
+        added = new ProductAddedEvent[products];
+        saleable = new ProductSaleableEvent[products];
+        unsaleable = new ProductUnsaleableEvent[products];
+        sequenceNumbers = new long[products];
+        for (int i = 0; i < products; i++) {
+            String id = "product-" + i;
+            added[i] = new ProductAddedEvent(id, "Product " + i);
+            saleable[i] = new ProductSaleableEvent(id);
+            unsaleable[i] = new ProductUnsaleableEvent(id);
+            handler.handle(added[i], 0L);
+        }
+    }
+
+    /**
+     * The products were added in setup(), so this measures skipping a duplicate.
+     */
+    @Benchmark
+    public void productAdded() {
+        handler.handle(added[nextIndex()], 0L);
+    }
+
+    /**
+     * Marks a product saleable and back again, so both handlers always find a change to save.
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void productSaleableThenUnsaleable() {
+        int index = nextIndex();
+        handler.handle(saleable[index], ++sequenceNumbers[index]);
+        handler.handle(unsaleable[index], ++sequenceNumbers[index]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cacheManager.shutdown();
+        changeFeed.shutdown();
+    }
+
+    private Cache cache(String name) {
+        Cache cache = new Cache(new CacheConfiguration().name(name).maxEntriesLocalHeap(products).eternal(true));
+        cacheManager.addCache(cache);
+        return cache;
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % products;
+        return next;
+    }
+
+    /**
+     * Only the repository methods the handler uses are backed, anything else fails loudly.
+     */
+    private static ProductRepository inMemoryRepository() {
+        final Map<String, Product> rows = new HashMap<String, Product>();
+        return (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("addIfAbsent".equals(method.getName())) {
+                            String id = (String) args[0];
+                            if (rows.containsKey(id)) {
+                                return 0;
+                            }
+                            rows.put(id, new Product(id, (String) args[1], false, (Long) args[2]));
+                            return 1;
+                        }
+                        if ("addUnnamedIfAbsent".equals(method.getName())) {
+                            String id = (String) args[0];
+                            if (rows.containsKey(id)) {
+                                return 0;
+                            }
+                            rows.put(id, new Product(id, null, (Boolean) args[1], (Long) args[2]));
+                            return 1;
+                        }
+                        if ("nameIfUnnamed".equals(method.getName())) {
+                            Product product = rows.get(args[0]);
+                            if (null == product || null != product.getName()) {
+                                return 0;
+                            }
+                            product.setName((String) args[1]);
+                            return 1;
+                        }
+                        if ("findChange".equals(method.getName())) {
+                            Product product = rows.get(args[0]);
+                            return null == product ? null
+                                    : new ProductChange(product.getId(), product.getName(), product.isSaleable(), product.getSequenceNumber());
+                        }
+                        if ("updateSaleableIfNewer".equals(method.getName())) {
+                            Product product = rows.get(args[0]);
+                            long sequenceNumber = (Long) args[2];
+                            if (null == product || sequenceNumber <= product.getSequenceNumber()) {
+                                return 0;
+                            }
+                            product.setSaleable((Boolean) args[1]);
+                            product.setSequenceNumber(sequenceNumber);
+                            return 1;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,191 @@
+package com.soagrowers.productcommand;
+
+import com.soagrowers.productcommand.batch.ProductBatchEntry;
+import com.soagrowers.productcommand.batch.ProductBatchResult;
+import com.soagrowers.productcommand.commands.AddProductCommand;
+import com.soagrowers.productcommand.commands.MarkProductAsSaleableCommand;
+import com.soagrowers.productcommand.commands.MarkProductAsUnsaleableCommand;
+import com.soagrowers.productcommand.latency.CommandLatencyRecorder;
+import com.soagrowers.productcommand.latency.CommandPhase;
+import com.soagrowers.utils.Asserts;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Accepts many product commands in one request. The entries are dispatched side by side on
+ * the batch dispatch executor, as the SimpleCommandBus handles a command on the thread that
+ * sends it, and the response (one status per entry, in request order) is written once all
+ * the command callbacks have fired.
+ * <p/>
+ * Entries turned away by the admission controller, or that don't fit in the executor's
+ * queue, get a 503, and the response then carries a Retry-After header.
+ */
+@RestController
+@RequestMapping("/products")
+public class ProductBatchRestController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductBatchRestController.class);
+
+    @Autowired
+    CommandGateway commandGateway;
+
+    @Autowired
+    @Qualifier("batchDispatchExecutor")
+    Executor batchDispatchExecutor;
+
+    @Autowired
+    CommandLatencyRecorder commandLatencyRecorder;
+
+    @Value("${spring.application.maxBatchSize:1000}")
+    int maxBatchSize = 1000;
+
+    @Value("${spring.application.retryAfterSeconds:1}")
+    long retryAfterSeconds = 1;
+
+    @RequestMapping(value = "/batch", method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<List<ProductBatchResult>>> batch(@RequestBody List<ProductBatchEntry> entries) {
+
+        if (null == entries) {
+            LOG.warn("Batch Request rejected - no entries");
+            return CompletableFuture.completedFuture(new ResponseEntity<List<ProductBatchResult>>(HttpStatus.BAD_REQUEST));
+        }
+
+        if (entries.size() > maxBatchSize) {
+            LOG.warn("Batch Request rejected - {} entries (max {})", entries.size(), maxBatchSize);
+            return CompletableFuture.completedFuture(new ResponseEntity<List<ProductBatchResult>>(HttpStatus.PAYLOAD_TOO_LARGE));
+        }
+
+        LOG.debug("Dispatching a batch of {} product commands", entries.size());
+        final List<CompletableFuture<ProductBatchResult>> results = new ArrayList<CompletableFuture<ProductBatchResult>>(entries.size());
+        for (ProductBatchEntry entry : entries) {
+            results.add(dispatch(entry));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()]))
+                .thenApply(new Function<Void, ResponseEntity<List<ProductBatchResult>>>() {
+                    @Override
+                    public ResponseEntity<List<ProductBatchResult>> apply(Void done) {
+                        List<ProductBatchResult> body = new ArrayList<ProductBatchResult>(results.size());
+                        HttpStatus worst = HttpStatus.OK;
+                        for (CompletableFuture<ProductBatchResult> result : results) {
+                            ProductBatchResult entry = result.join();
+                            body.add(entry);
+                            if (HttpStatus.SERVICE_UNAVAILABLE.value() == entry.getStatus()) {
+                                worst = HttpStatus.SERVICE_UNAVAILABLE;
+                            }
+                        }
+                        return new ResponseEntity<List<ProductBatchResult>>(body,
+                                ProductRestController.headersFor(worst, retryAfterSeconds), HttpStatus.OK);
+                    }
+                });
+    }
+
+    private CompletableFuture<ProductBatchResult> dispatch(final ProductBatchEntry entry) {
+        final CompletableFuture<ProductBatchResult> result = new CompletableFuture<ProductBatchResult>();
+        if (null == entry) {
+            LOG.warn("Batch entry rejected - null entry");
+            result.complete(resultFor(null, HttpStatus.BAD_REQUEST));
+            return result;
+        }
+
+        long validateStart = System.nanoTime();
+        final Object command = toCommand(entry);
+        if (null == command) {
+            LOG.warn("Batch entry rejected - bad params?. {} [{}] '{}'", entry.getCommand(), entry.getId(), entry.getName());
+            result.complete(resultFor(entry, HttpStatus.BAD_REQUEST));
+            return result;
+        }
+        commandLatencyRecorder.record(command.getClass().getSimpleName(), CommandPhase.VALIDATE, System.nanoTime() - validateStart);
+
+        try {
+            batchDispatchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        send(entry, command, result);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Batch {} Command FAILED with Message: {}", entry.getCommand(), e.getMessage());
+                        result.complete(resultFor(entry, ProductRestController.statusForFailure(entry.getId(), e)));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Batch entry rejected - the dispatch queue is full. {} [{}]", entry.getCommand(), entry.getId());
+            result.complete(resultFor(entry, HttpStatus.SERVICE_UNAVAILABLE));
+        }
+        return result;
+    }
+
+    private void send(final ProductBatchEntry entry, final Object command, final CompletableFuture<ProductBatchResult> result) {
+        commandGateway.send(command, new CommandCallback<Object>() {
+            @Override
+            public void onSuccess(Object outcome) {
+                if (command instanceof AddProductCommand) {
+                    result.complete(resultFor(entry, HttpStatus.CREATED));
+                } else {
+                    result.complete(resultFor(entry, HttpStatus.OK));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                LOG.warn("Batch {} Command FAILED with Message: {}", entry.getCommand(), cause.getMessage());
+                result.complete(resultFor(entry, ProductRestController.statusForFailure(entry.getId(), cause)));
+            }
+        });
+    }
+
+    /**
+     * @param entry
+     * @return the command for the entry, or null if the entry isn't valid.
+     */
+    private Object toCommand(ProductBatchEntry entry) {
+        try {
+            if (ProductBatchEntry.ADD.equals(entry.getCommand())) {
+                Asserts.INSTANCE.areNotEmpty(Arrays.asList(entry.getId(), entry.getName()));
+                return new AddProductCommand(entry.getId(), entry.getName());
+            }
+
+            Asserts.INSTANCE.isNotEmpty(entry.getId());
+            if (ProductBatchEntry.SALEABLE.equals(entry.getCommand())) {
+                return new MarkProductAsSaleableCommand(entry.getId());
+            }
+            if (ProductBatchEntry.UNSALEABLE.equals(entry.getCommand())) {
+                return new MarkProductAsUnsaleableCommand(entry.getId());
+            }
+        } catch (AssertionError ae) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * @param entry  may be null, for a null entry in the request.
+     * @param status
+     */
+    private ProductBatchResult resultFor(ProductBatchEntry entry, HttpStatus status) {
+        if (null == entry) {
+            return new ProductBatchResult(null, null, status.value());
+        }
+        return new ProductBatchResult(entry.getCommand(), entry.getId(), status.value());
+    }
+}
@@ -1,19 +1,43 @@
 package com.soagrowers.productcommand;
 
+import com.soagrowers.productcommand.admission.AdmissionRejectedException;
 import com.soagrowers.productcommand.commands.AddProductCommand;
+import com.soagrowers.productcommand.idempotency.CommandDeduplicator;
+import com.soagrowers.productcommand.index.DuplicateProductException;
+import com.soagrowers.productcommand.latency.CommandLatencyRecorder;
+import com.soagrowers.productcommand.latency.CommandPhase;
 import com.soagrowers.utils.Asserts;
+import org.axonframework.commandhandling.CommandCallback;
 import org.axonframework.commandhandling.CommandExecutionException;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.axonframework.repository.ConcurrencyException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import javax.servlet.http.HttpServletResponse;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
+ * Commands are dispatched asynchronously. The request thread is handed back to Jetty
+ * as soon as the command is on the bus, and the HTTP response is written when the
+ * command's callback fires.
+ * <p/>
+ * Ids that the ProductIdIndex knows about are rejected with a 409 without being dispatched.
+ * <p/>
+ * Clients that retry can send an 'Idempotency-Key' header. A repeat with the same key is
+ * answered with the status of the first attempt, and the command isn't dispatched again.
+ * <p/>
+ * When the command side is overloaded, commands are turned away with a 503 and a
+ * Retry-After header (see AdmissionController).
+ * <p/>
  * Created by ben on 19/01/16.
  */
 @RestController
@@ -22,37 +46,106 @@ public class ProductRestController {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductRestController.class);
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     @Autowired
     CommandGateway commandGateway;
 
+    @Autowired
+    CommandDeduplicator commandDeduplicator;
+
+    @Autowired
+    CommandLatencyRecorder commandLatencyRecorder;
+
+    @Value("${spring.application.retryAfterSeconds:1}")
+    long retryAfterSeconds = 1;
+
     @RequestMapping(value = "/add/{id}", method = RequestMethod.POST)
-    public void add(@PathVariable(value = "id") String id,
-                    @RequestParam(value = "name", required = true) String name,
-                    HttpServletResponse response) {
+    public CompletableFuture<ResponseEntity<Void>> add(@PathVariable(value = "id") final String id,
+                                                       @RequestParam(value = "name", required = true) final String name,
+                                                       @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
 
         LOG.debug("Adding Product [{}] '{}'", id, name);
 
+        long validateStart = System.nanoTime();
         try {
             Asserts.INSTANCE.areNotEmpty(Arrays.asList(id, name));
-            AddProductCommand command = new AddProductCommand(id, name);
-            commandGateway.sendAndWait(command);
-            LOG.info("Added Product [{}] '{}'", id, name);
-            response.setStatus(HttpServletResponse.SC_CREATED);// Set up the 201 CREATED response
-            return;
+            commandLatencyRecorder.record(AddProductCommand.class.getSimpleName(), CommandPhase.VALIDATE, System.nanoTime() - validateStart);
         } catch (AssertionError ae) {
             LOG.warn("Add Request failed - empty params?. [{}] '{}'", id, name);
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-        } catch (CommandExecutionException cex) {
-            LOG.warn("Add Command FAILED with Message: {}", cex.getMessage());
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-
-            if (null != cex.getCause()) {
-                LOG.warn("Caused by: {} {}", cex.getCause().getClass().getName(), cex.getCause().getMessage());
-                if (cex.getCause() instanceof ConcurrencyException) {
-                    LOG.warn("A duplicate product with the same ID [{}] already exists.", id);
-                    response.setStatus(HttpServletResponse.SC_CONFLICT);
-                }
+            return CompletableFuture.completedFuture(new ResponseEntity<Void>(HttpStatus.BAD_REQUEST));
+        }
+
+        return commandDeduplicator.execute(idempotencyKey, "add:" + id + ":" + name, new Supplier<CompletableFuture<HttpStatus>>() {
+            @Override
+            public CompletableFuture<HttpStatus> get() {
+                return dispatchAdd(id, name);
+            }
+        }).thenApply(new Function<HttpStatus, ResponseEntity<Void>>() {
+            @Override
+            public ResponseEntity<Void> apply(HttpStatus status) {
+                return new ResponseEntity<Void>(headersFor(status, retryAfterSeconds), status);
+            }
+        });
+    }
+
+    private CompletableFuture<HttpStatus> dispatchAdd(final String id, final String name) {
+        final CompletableFuture<HttpStatus> result = new CompletableFuture<HttpStatus>();
+        AddProductCommand command = new AddProductCommand(id, name);
+        commandGateway.send(command, new CommandCallback<Object>() {
+            @Override
+            public void onSuccess(Object outcome) {
+                LOG.info("Added Product [{}] '{}'", id, name);
+                result.complete(HttpStatus.CREATED);// Set up the 201 CREATED response
             }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                LOG.warn("Add Command FAILED with Message: {}", cause.getMessage());
+                result.complete(statusForFailure(id, cause));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Works out the HTTP status for a failed command. A ConcurrencyException, or a rejection
+     * by the ProductIdIndex, means that the product's event stream already exists (i.e. a
+     * duplicate), a rejection by the admission controller means the service is overloaded,
+     * anything else is treated as a bad request.
+     *
+     * @param id
+     * @param cause
+     * @return
+     */
+    static HttpStatus statusForFailure(String id, Throwable cause) {
+        if (cause instanceof AdmissionRejectedException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+
+        Throwable rootCause = cause;
+        if (cause instanceof CommandExecutionException && null != cause.getCause()) {
+            rootCause = cause.getCause();
+            LOG.warn("Caused by: {} {}", rootCause.getClass().getName(), rootCause.getMessage());
+        }
+
+        if (rootCause instanceof ConcurrencyException || rootCause instanceof DuplicateProductException) {
+            LOG.warn("A duplicate product with the same ID [{}] already exists.", id);
+            return HttpStatus.CONFLICT;
+        }
+        return HttpStatus.BAD_REQUEST;
+    }
+
+    /**
+     * @param status
+     * @param retryAfterSeconds
+     * @return a Retry-After header for a 503, no headers otherwise.
+     */
+    static HttpHeaders headersFor(HttpStatus status, long retryAfterSeconds) {
+        HttpHeaders headers = new HttpHeaders();
+        if (HttpStatus.SERVICE_UNAVAILABLE == status) {
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
         }
+        return headers;
     }
 }
@@ -0,0 +1,69 @@
+package com.soagrowers.productcommand.admission;
+
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CommandGateway that asks the AdmissionController before sending each command. A rejected
+ * command fails straight away with an AdmissionRejectedException and never reaches the bus.
+ */
+public class AdmissionControlledCommandGateway implements CommandGateway {
+
+    private final CommandGateway delegate;
+    private final AdmissionController admissionController;
+
+    public AdmissionControlledCommandGateway(CommandGateway delegate, AdmissionController admissionController) {
+        this.delegate = delegate;
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public <R> void send(Object command, final CommandCallback<R> callback) {
+        final AdmissionController.Permit permit = admissionController.tryAcquire();
+        if (null == permit) {
+            callback.onFailure(new AdmissionRejectedException(admissionController.getLimit()));
+            return;
+        }
+
+        try {
+            delegate.send(command, new CommandCallback<R>() {
+                @Override
+                public void onSuccess(R result) {
+                    permit.release();
+                    callback.onSuccess(result);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    permit.release();
+                    callback.onFailure(cause);
+                }
+            });
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public <R> R sendAndWait(Object command) {
+        FutureCallback<R> callback = new FutureCallback<R>();
+        send(command, callback);
+        return callback.getResult();
+    }
+
+    @Override
+    public <R> R sendAndWait(Object command, long timeout, TimeUnit unit) {
+        FutureCallback<R> callback = new FutureCallback<R>();
+        send(command, callback);
+        return callback.getResult(timeout, unit);
+    }
+
+    @Override
+    public void send(Object command) {
+        send(command, new FutureCallback<Object>());
+    }
+}
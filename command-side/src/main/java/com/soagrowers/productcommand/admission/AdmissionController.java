@@ -0,0 +1,146 @@
+package com.soagrowers.productcommand.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of commands in flight with a limit that adapts to the latency that is
+ * being observed, and turns everything over the limit away straight away.
+ * <p/>
+ * The limit follows the AIMD scheme that TCP uses for its congestion window:
+ * <ul>
+ * <li>The lowest latency seen recently is taken as the 'no load' latency. It's re-measured
+ * every probeInterval samples, so a slower (or faster) backend is picked up.</li>
+ * <li>A command that completes within tolerance times the no load latency, while the limit
+ * is actually being used, grows the limit by 1/limit - about one per round of commands.</li>
+ * <li>A slower command shrinks the limit by backoffRatio, at most once per round, because
+ * that latency means the commands are queueing somewhere (Mongo, RabbitMQ, the bus).</li>
+ * </ul>
+ */
+public class AdmissionController {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final int probeInterval;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile double limit;
+    private long noLoadLatencyNanos = Long.MAX_VALUE;
+    private long probeMinLatencyNanos = Long.MAX_VALUE;
+    private int samplesSinceProbe;
+    private int samplesSinceBackoff;
+
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this(initialLimit, minLimit, maxLimit, tolerance, 0.9, 1000);
+    }
+
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio, int probeInterval) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Expected 1 <= minLimit <= maxLimit but got " + minLimit + " and " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.probeInterval = probeInterval;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * @return a Permit that must be released when the command completes, or null if the
+     * command should be rejected.
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.incrementAndGet();
+                return new Permit(System.nanoTime(), current + 1);
+            }
+        }
+    }
+
+    /**
+     * Feeds one command's latency into the limit. Called as permits are released.
+     *
+     * @param latencyNanos
+     * @param inFlightAtStart the number of commands in flight when this one was admitted
+     */
+    synchronized void onSample(long latencyNanos, int inFlightAtStart) {
+        samplesSinceBackoff++;
+        probeMinLatencyNanos = Math.min(probeMinLatencyNanos, latencyNanos);
+        if (++samplesSinceProbe >= probeInterval || noLoadLatencyNanos == Long.MAX_VALUE) {
+            noLoadLatencyNanos = probeMinLatencyNanos;
+            probeMinLatencyNanos = Long.MAX_VALUE;
+            samplesSinceProbe = 0;
+        }
+
+        double current = limit;
+        if (latencyNanos > noLoadLatencyNanos * tolerance) {
+            if (samplesSinceBackoff >= current) {
+                limit = Math.max(minLimit, current * backoffRatio);
+                samplesSinceBackoff = 0;
+            }
+        } else if (inFlightAtStart * 2 >= current) {
+            limit = Math.min(maxLimit, current + 1 / current);
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the latency the limit is being judged against, in microseconds.
+     */
+    public synchronized long getNoLoadLatencyMicros() {
+        return noLoadLatencyNanos == Long.MAX_VALUE ? 0 : noLoadLatencyNanos / 1000;
+    }
+
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * A slot for one command. Releasing it feeds the command's latency back into the limit.
+     */
+    public class Permit {
+
+        private final long start;
+        private final int inFlightAtStart;
+        private boolean released = false;
+
+        private Permit(long start, int inFlightAtStart) {
+            this.start = start;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - start, inFlightAtStart);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.soagrowers.productcommand.admission;
+
+/**
+ * Raised when a command is turned away because too many commands are in flight already.
+ * Nothing has been dispatched, so the client can safely try again later.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    public AdmissionRejectedException(int limit) {
+        super("Command rejected, the limit of " + limit + " commands in flight has been reached");
+    }
+}
@@ -1,5 +1,8 @@
 package com.soagrowers.productcommand.aggregates;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.soagrowers.productcommand.commands.AddProductCommand;
 import com.soagrowers.productcommand.commands.MarkProductAsSaleableCommand;
 import com.soagrowers.productcommand.commands.MarkProductAsUnsaleableCommand;
@@ -31,7 +34,14 @@ import org.slf4j.LoggerFactory;
  * Axon delivers com.soagrowers.product.commands placed on the bus to the Aggregate. Axon supports the 'applying' of
  * Events to the Aggregate, and the handling of those events by the aggregate or any other
  * configured EventHandlers.
+ * <p/>
+ * Snapshots of the ProductAggregate are serialized with Jackson, so only the annotated
+ * state fields are written. Axon's own bookkeeping is rebuilt when the snapshot is loaded.
  */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class ProductAggregate extends AbstractAnnotatedAggregateRoot {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductAggregate.class);
@@ -42,8 +52,11 @@ public class ProductAggregate extends AbstractAnnotatedAggregateRoot {
      * identifies the id field as such.
      */
     @AggregateIdentifier
+    @JsonProperty
     private String id;
+    @JsonProperty
     private String name;
+    @JsonProperty
     private boolean isSaleable = false;
 
     /**
@@ -0,0 +1,130 @@
+package com.soagrowers.productcommand.amqp;
+
+import com.soagrowers.productevents.amqp.EventBatch;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericEventMessage;
+import org.axonframework.eventhandling.Cluster;
+import org.axonframework.eventhandling.EventBusTerminal;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An EventBusTerminal that groups events into EventBatch messages before handing them to
+ * the terminal that actually publishes them.
+ * <p/>
+ * With a window of 0 the events of one Unit of Work go out as a single message, still
+ * inside that Unit of Work. With a window greater than 0 committed events are collected
+ * for up to that many milliseconds (or until a batch is full) and then published together
+ * from a background thread. Events that are waiting in an open window are lost if the
+ * process dies, although they remain in the event store.
+ */
+public class BatchingEventBusTerminal implements EventBusTerminal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingEventBusTerminal.class);
+
+    private final EventBusTerminal delegate;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final ScheduledExecutorService flusher;
+    private final List<EventMessage> buffer = new ArrayList<EventMessage>();
+
+    public BatchingEventBusTerminal(EventBusTerminal delegate, int maxBatchSize, long windowMillis) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.flusher = windowMillis > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+    }
+
+    @Override
+    public void publish(final EventMessage... events) {
+        if (windowMillis <= 0) {
+            publishBatches(Arrays.asList(events));
+        } else if (CurrentUnitOfWork.isStarted()) {
+            CurrentUnitOfWork.get().registerListener(new UnitOfWorkListenerAdapter() {
+                @Override
+                public void afterCommit(UnitOfWork unitOfWork) {
+                    enqueue(events);
+                }
+            });
+        } else {
+            enqueue(events);
+        }
+    }
+
+    @Override
+    public void onClusterCreated(Cluster cluster) {
+        delegate.onClusterCreated(cluster);
+    }
+
+    /**
+     * Publishes whatever is waiting in the window and stops the background thread.
+     */
+    public void shutdown() {
+        if (null != flusher) {
+            flusher.shutdown();
+            flush();
+        }
+    }
+
+    private void enqueue(EventMessage... events) {
+        synchronized (buffer) {
+            boolean windowOpened = buffer.isEmpty();
+            buffer.addAll(Arrays.asList(events));
+            if (buffer.size() >= maxBatchSize) {
+                flusher.execute(new FlushTask());
+            } else if (windowOpened) {
+                flusher.schedule(new FlushTask(), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        List<EventMessage> events;
+        synchronized (buffer) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<EventMessage>(buffer);
+            buffer.clear();
+        }
+        publishBatches(events);
+    }
+
+    private void publishBatches(List<EventMessage> events) {
+        for (int from = 0; from < events.size(); from += maxBatchSize) {
+            List<EventMessage> chunk = events.subList(from, Math.min(events.size(), from + maxBatchSize));
+            if (chunk.size() == 1) {
+                delegate.publish(chunk.get(0));
+            } else {
+                LOG.debug("Publishing a batch of {} events", chunk.size());
+                delegate.publish(new GenericEventMessage<EventBatch>(new EventBatch(toTyped(chunk))));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EventMessage<?>> toTyped(List<EventMessage> events) {
+        return (List<EventMessage<?>>) (List<?>) events;
+    }
+
+    private class FlushTask implements Runnable {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LOG.error("Publishing a batch of events failed.", e);
+            }
+        }
+    }
+}
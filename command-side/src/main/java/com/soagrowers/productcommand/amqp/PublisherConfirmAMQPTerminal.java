@@ -0,0 +1,282 @@
+package com.soagrowers.productcommand.amqp;
+
+import com.rabbitmq.client.AMQP;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.eventhandling.Cluster;
+import org.axonframework.eventhandling.EventBusTerminal;
+import org.axonframework.eventhandling.amqp.AMQPMessage;
+import org.axonframework.eventhandling.amqp.AMQPMessageConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An EventBusTerminal that publishes events using RabbitMQ publisher confirms instead of
+ * AMQP transactions. The events of a publish are sent back to back and then waited on
+ * together, so many Units of Work can have confirms outstanding at once. The number of
+ * unconfirmed messages is capped, so a slow broker pushes back on the publishers. Nacked
+ * messages are re-sent up to a retry limit.
+ * <p/>
+ * The Unit of Work publishes its events as it commits, once they are in the event store and
+ * before any afterCommit listener runs. Waiting for the confirms right there means that the
+ * command only succeeds once the broker has the events: a message that is still nacked after
+ * the last retry, or that isn't confirmed in time, fails the publish and with it the command.
+ * (The command bus has no transaction manager, so onPrepareTransactionCommit would never be
+ * called.) The events stay in the event store either way.
+ * <p/>
+ * Consuming is unchanged: clusters are handed to the delegate terminal.
+ */
+public class PublisherConfirmAMQPTerminal implements EventBusTerminal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublisherConfirmAMQPTerminal.class);
+
+    private final EventBusTerminal consumerTerminal;
+    private final RabbitTemplate rabbitTemplate;
+    private final AMQPMessageConverter messageConverter;
+    private final String exchangeName;
+    private final Executor retryExecutor;
+    private final Semaphore window;
+    private final ConcurrentMap<String, PendingMessage> pending = new ConcurrentHashMap<String, PendingMessage>();
+
+    private int maxRetries = 3;
+    private long windowTimeoutMillis = 10000;
+    private long confirmTimeoutMillis = 10000;
+
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong nacked = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param consumerTerminal the terminal that connects clusters to their queues
+     * @param rabbitTemplate   a template whose connection factory has publisher confirms enabled
+     * @param messageConverter converts events to AMQP messages
+     * @param exchangeName     the exchange to publish to
+     * @param maxOutstanding   the maximum number of messages waiting for a confirm
+     * @param retryExecutor    runs re-sends of nacked messages (never the broker's own thread)
+     */
+    public PublisherConfirmAMQPTerminal(EventBusTerminal consumerTerminal, RabbitTemplate rabbitTemplate,
+                                        AMQPMessageConverter messageConverter, String exchangeName,
+                                        int maxOutstanding, Executor retryExecutor) {
+        this.consumerTerminal = consumerTerminal;
+        this.rabbitTemplate = rabbitTemplate;
+        this.messageConverter = messageConverter;
+        this.exchangeName = exchangeName;
+        this.retryExecutor = retryExecutor;
+        this.window = new Semaphore(maxOutstanding);
+        this.rabbitTemplate.setConfirmCallback(new RabbitTemplate.ConfirmCallback() {
+            @Override
+            public void confirm(CorrelationData correlationData, boolean ack, String cause) {
+                onConfirm(correlationData, ack, cause);
+            }
+        });
+    }
+
+    /**
+     * Sends the events and waits for the broker to confirm them all.
+     *
+     * @param events
+     * @throws AmqpException if an event can't be sent, is nacked on every attempt or isn't
+     *                       confirmed within the confirm timeout.
+     */
+    @Override
+    public void publish(EventMessage... events) {
+        List<PendingMessage> messages = new ArrayList<PendingMessage>(events.length);
+        try {
+            for (EventMessage event : events) {
+                AMQPMessage amqpMessage = messageConverter.createAMQPMessage(event);
+                acquireWindow();
+                PendingMessage message = new PendingMessage(amqpMessage.getRoutingKey(), toMessage(amqpMessage));
+                send(message);
+                messages.add(message);
+            }
+            awaitConfirms(messages);
+        } catch (RuntimeException e) {
+            for (PendingMessage message : messages) {
+                abandon(message);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void onClusterCreated(Cluster cluster) {
+        consumerTerminal.onClusterCreated(cluster);
+    }
+
+    private void send(PendingMessage message) {
+        String correlationId = UUID.randomUUID().toString();
+        message.correlationId = correlationId;
+        pending.put(correlationId, message);
+        try {
+            rabbitTemplate.send(exchangeName, message.routingKey, message.message, new CorrelationData(correlationId));
+        } catch (AmqpException e) {
+            pending.remove(correlationId);
+            window.release();
+            throw e;
+        }
+    }
+
+    private void awaitConfirms(List<PendingMessage> messages) {
+        long deadline = System.currentTimeMillis() + confirmTimeoutMillis;
+        for (PendingMessage message : messages) {
+            try {
+                if (!message.done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    failed.incrementAndGet();
+                    throw new AmqpException("Timed out waiting for a publisher confirm (" + pending.size() + " outstanding)");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmqpException("Interrupted while waiting for publisher confirms", e);
+            }
+            if (null != message.failure) {
+                throw new AmqpException("Event message was nacked " + message.attempts + " times. Cause: " + message.failure);
+            }
+        }
+    }
+
+    /**
+     * Stops waiting for a message that is still unconfirmed, and gives its place in the
+     * window back. A confirm that arrives for it later is ignored.
+     *
+     * @param message
+     */
+    private void abandon(PendingMessage message) {
+        String correlationId = message.correlationId;
+        if (null != correlationId && null != pending.remove(correlationId)) {
+            window.release();
+        }
+    }
+
+    private void acquireWindow() {
+        try {
+            if (!window.tryAcquire(windowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new AmqpException("Timed out waiting for publisher confirms (" + pending.size() + " outstanding)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted while waiting for publisher confirms", e);
+        }
+    }
+
+    private void onConfirm(CorrelationData correlationData, boolean ack, String cause) {
+        final PendingMessage message = null == correlationData ? null : pending.remove(correlationData.getId());
+        if (null == message) {
+            return;
+        }
+
+        if (ack) {
+            confirmed.incrementAndGet();
+            window.release();
+            message.done.countDown();
+            return;
+        }
+
+        nacked.incrementAndGet();
+        if (message.attempts >= maxRetries) {
+            failed.incrementAndGet();
+            window.release();
+            LOG.error("Event message was nacked {} times, failing its publish. Cause: {}", message.attempts, cause);
+            message.fail(null == cause ? "nack" : cause);
+            return;
+        }
+
+        LOG.warn("Event message was nacked (attempt {}), re-sending. Cause: {}", message.attempts, cause);
+        message.attempts++;
+        retryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    send(message);
+                } catch (AmqpException e) {
+                    failed.incrementAndGet();
+                    LOG.error("Re-sending a nacked event message failed.", e);
+                    message.fail(e.getMessage());
+                }
+            }
+        });
+    }
+
+    private Message toMessage(AMQPMessage amqpMessage) {
+        AMQP.BasicProperties source = amqpMessage.getProperties();
+        MessageProperties properties = new MessageProperties();
+        if (null != source) {
+            properties.setMessageId(source.getMessageId());
+            properties.setContentType(source.getContentType());
+            properties.setContentEncoding(source.getContentEncoding());
+            if (null != source.getDeliveryMode()) {
+                properties.setDeliveryMode(MessageDeliveryMode.fromInt(source.getDeliveryMode()));
+            }
+            if (null != source.getHeaders()) {
+                for (Map.Entry<String, Object> header : source.getHeaders().entrySet()) {
+                    properties.setHeader(header.getKey(), header.getValue());
+                }
+            }
+        }
+        return new Message(amqpMessage.getBody(), properties);
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public void setWindowTimeoutMillis(long windowTimeoutMillis) {
+        this.windowTimeoutMillis = windowTimeoutMillis;
+    }
+
+    public void setConfirmTimeoutMillis(long confirmTimeoutMillis) {
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+    }
+
+    public int getOutstandingConfirms() {
+        return pending.size();
+    }
+
+    public long getConfirmedCount() {
+        return confirmed.get();
+    }
+
+    public long getNackedCount() {
+        return nacked.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private static class PendingMessage {
+
+        private final String routingKey;
+        private final Message message;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile int attempts = 1;
+        private volatile String correlationId;
+        private volatile String failure;
+
+        private PendingMessage(String routingKey, Message message) {
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+
+        private void fail(String cause) {
+            failure = cause;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.soagrowers.productcommand.batch;
+
+/**
+ * One line of a batch request. The 'command' says which product command to send:
+ * 'add' (which also needs a 'name'), 'saleable' or 'unsaleable'.
+ */
+public class ProductBatchEntry {
+
+    public static final String ADD = "add";
+    public static final String SALEABLE = "saleable";
+    public static final String UNSALEABLE = "unsaleable";
+
+    private String command;
+    private String id;
+    private String name;
+
+    public ProductBatchEntry() {
+    }
+
+    public ProductBatchEntry(String command, String id, String name) {
+        this.command = command;
+        this.id = id;
+        this.name = name;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
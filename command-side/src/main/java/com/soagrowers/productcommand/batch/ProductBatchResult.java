@@ -0,0 +1,30 @@
+package com.soagrowers.productcommand.batch;
+
+/**
+ * The outcome of one entry in a batch request. The status uses the same HTTP codes
+ * as the single-product endpoints (201, 200, 400, 409).
+ */
+public class ProductBatchResult {
+
+    private final String command;
+    private final String id;
+    private final int status;
+
+    public ProductBatchResult(String command, String id, int status) {
+        this.command = command;
+        this.id = id;
+        this.status = status;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
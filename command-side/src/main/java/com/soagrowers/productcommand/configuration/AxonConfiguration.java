@@ -1,31 +1,85 @@
 package com.soagrowers.productcommand.configuration;
 
 import com.mongodb.Mongo;
+import com.soagrowers.productcommand.admission.AdmissionControlledCommandGateway;
+import com.soagrowers.productcommand.admission.AdmissionController;
 import com.soagrowers.productcommand.aggregates.ProductAggregate;
+import com.soagrowers.productcommand.amqp.BatchingEventBusTerminal;
+import com.soagrowers.productcommand.amqp.PublisherConfirmAMQPTerminal;
+import com.soagrowers.productcommand.eventstore.BulkAppendMongoEventStore;
+import com.soagrowers.productcommand.eventstore.EventStoreMongoTemplate;
+import com.soagrowers.productcommand.eventstore.WriteConcernProfile;
+import com.soagrowers.productcommand.index.BloomFilter;
+import com.soagrowers.productcommand.index.ProductIdCheckingCommandGateway;
+import com.soagrowers.productcommand.index.ProductIdIndex;
+import com.soagrowers.productcommand.latency.CommandLatencyInterceptor;
+import com.soagrowers.productcommand.latency.CommandLatencyRecorder;
+import com.soagrowers.productcommand.latency.TimedEventStore;
+import com.soagrowers.productcommand.latency.TimedRepository;
+import com.soagrowers.productcommand.locking.StripedLockManager;
+import com.soagrowers.productcommand.locking.TimedLockManager;
+import com.soagrowers.productcommand.metrics.AdmissionMetrics;
+import com.soagrowers.productcommand.metrics.CommandLatencyMetrics;
+import com.soagrowers.productcommand.metrics.ProductAggregateCacheMetrics;
+import com.soagrowers.productcommand.metrics.ProductIdIndexMetrics;
+import com.soagrowers.productcommand.metrics.ProductLockMetrics;
+import com.soagrowers.productcommand.metrics.PublisherConfirmMetrics;
+import com.soagrowers.productevents.amqp.EventBatchAMQPMessageConverter;
+import com.soagrowers.productevents.amqp.EventBatchUnpackingCluster;
+import com.soagrowers.productevents.serializer.CompactEventSerializer;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.axonframework.cache.Cache;
+import org.axonframework.cache.EhCacheAdapter;
 import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandDispatchInterceptor;
+import org.axonframework.commandhandling.CommandHandlerInterceptor;
 import org.axonframework.commandhandling.SimpleCommandBus;
 import org.axonframework.commandhandling.annotation.AggregateAnnotationCommandHandler;
 import org.axonframework.commandhandling.annotation.AnnotationCommandHandlerBeanPostProcessor;
+import org.axonframework.commandhandling.disruptor.DisruptorCommandBus;
+import org.axonframework.commandhandling.disruptor.DisruptorConfiguration;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.axonframework.commandhandling.gateway.CommandGatewayFactoryBean;
 import org.axonframework.contextsupport.spring.AnnotationDriven;
 import org.axonframework.eventhandling.*;
+import org.axonframework.eventhandling.amqp.AMQPMessageConverter;
+import org.axonframework.eventhandling.amqp.DefaultAMQPMessageConverter;
+import org.axonframework.eventhandling.amqp.PackageRoutingKeyResolver;
 import org.axonframework.eventhandling.amqp.spring.ListenerContainerLifecycleManager;
 import org.axonframework.eventhandling.amqp.spring.SpringAMQPConsumerConfiguration;
 import org.axonframework.eventhandling.amqp.spring.SpringAMQPTerminal;
 import org.axonframework.eventhandling.annotation.AnnotationEventListenerBeanPostProcessor;
-import org.axonframework.eventsourcing.EventSourcingRepository;
+import org.axonframework.eventsourcing.AggregateFactory;
+import org.axonframework.eventsourcing.AggregateSnapshotter;
+import org.axonframework.eventsourcing.CachingEventSourcingRepository;
+import org.axonframework.eventsourcing.EventCountSnapshotterTrigger;
+import org.axonframework.eventsourcing.GenericAggregateFactory;
 import org.axonframework.eventstore.EventStore;
-import org.axonframework.eventstore.mongo.DefaultMongoTemplate;
+import org.axonframework.eventstore.SnapshotEventStore;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.axonframework.eventstore.mongo.DocumentPerEventStorageStrategy;
 import org.axonframework.eventstore.mongo.MongoEventStore;
-import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.axonframework.repository.PessimisticLockManager;
+import org.axonframework.repository.Repository;
+import org.axonframework.serializer.Serializer;
 import org.axonframework.serializer.json.JacksonSerializer;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.transaction.RabbitTransactionManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ben on 23/02/16.
@@ -35,6 +89,10 @@ import org.springframework.context.annotation.Configuration;
 public class AxonConfiguration {
 
     private static final String AMQP_CONFIG_KEY = "AMQP.Config";
+    private static final String COMPACT_SERIALIZER = "compact";
+    private static final String DISRUPTOR_COMMAND_BUS = "disruptor";
+    private static final String PUBLISHER_CONFIRMS = "confirms";
+    private static final String STRIPED_LOCK_MANAGER = "striped";
 
     @Autowired
     public Mongo mongo;
@@ -42,6 +100,10 @@ public class AxonConfiguration {
     @Autowired
     public ConnectionFactory connectionFactory;
 
+    @Autowired
+    @Qualifier("publisherConnectionFactory")
+    public ConnectionFactory publisherConnectionFactory;
+
     @Autowired
     public RabbitTransactionManager transactionManager;
 
@@ -60,6 +122,102 @@ public class AxonConfiguration {
     @Value("${spring.application.snapshotCollectionName}")
     private String snapshotCollectionName;
 
+    @Value("${spring.application.snapshotEventThreshold:50}")
+    private int snapshotEventThreshold;
+
+    @Value("${spring.application.snapshotterThreads:1}")
+    private int snapshotterThreads;
+
+    @Value("${spring.application.aggregateCacheSize:1000}")
+    private int aggregateCacheSize;
+
+    @Value("${spring.application.aggregateCacheTimeToIdleSeconds:300}")
+    private long aggregateCacheTimeToIdleSeconds;
+
+    @Value("${spring.application.aggregateCacheTimeToLiveSeconds:3600}")
+    private long aggregateCacheTimeToLiveSeconds;
+
+    @Value("${spring.application.commandBus:simple}")
+    private String commandBusType;
+
+    @Value("${spring.application.disruptorInvokerThreads:2}")
+    private int disruptorInvokerThreads;
+
+    @Value("${spring.application.disruptorPublisherThreads:2}")
+    private int disruptorPublisherThreads;
+
+    @Value("${spring.application.disruptorBufferSize:4096}")
+    private int disruptorBufferSize;
+
+    @Value("${spring.application.eventPublishing:transactional}")
+    private String eventPublishing;
+
+    @Value("${spring.application.maxOutstandingConfirms:1000}")
+    private int maxOutstandingConfirms;
+
+    @Value("${spring.application.confirmRetries:3}")
+    private int confirmRetries;
+
+    @Value("${spring.application.confirmTimeoutMillis:10000}")
+    private long confirmTimeoutMillis;
+
+    @Value("${spring.application.eventBatching:false}")
+    private boolean eventBatching;
+
+    @Value("${spring.application.eventBatchSize:500}")
+    private int eventBatchSize;
+
+    @Value("${spring.application.eventBatchWindowMillis:0}")
+    private long eventBatchWindowMillis;
+
+    @Value("${spring.application.eventSerializer:json}")
+    private String eventSerializerType;
+
+    @Value("${spring.application.eventStoreWriteConcern:ACKNOWLEDGED}")
+    private String eventStoreWriteConcern;
+
+    @Value("${spring.application.snapshotWriteConcern:ACKNOWLEDGED}")
+    private String snapshotWriteConcern;
+
+    @Value("${spring.application.commandLatencyIntervalSeconds:60}")
+    private long commandLatencyIntervalSeconds;
+
+    @Value("${spring.application.admissionControl:true}")
+    private boolean admissionControl;
+
+    @Value("${spring.application.admissionInitialLimit:20}")
+    private int admissionInitialLimit;
+
+    @Value("${spring.application.admissionMinLimit:4}")
+    private int admissionMinLimit;
+
+    @Value("${spring.application.admissionMaxLimit:500}")
+    private int admissionMaxLimit;
+
+    @Value("${spring.application.admissionLatencyTolerance:2.0}")
+    private double admissionLatencyTolerance;
+
+    @Value("${spring.application.productIdIndex:true}")
+    private boolean productIdIndexEnabled;
+
+    @Value("${spring.application.productIdIndexExpectedIds:1000000}")
+    private long productIdIndexExpectedIds;
+
+    @Value("${spring.application.productIdIndexFalsePositiveRate:0.01}")
+    private double productIdIndexFalsePositiveRate;
+
+    @Value("${spring.application.lockManager:pessimistic}")
+    private String lockManagerType;
+
+    @Value("${spring.application.lockStripes:1024}")
+    private int lockStripes;
+
+    @Value("${spring.application.batchDispatchThreads:8}")
+    private int batchDispatchThreads;
+
+    @Value("${spring.application.batchDispatchQueueCapacity:10000}")
+    private int batchDispatchQueueCapacity;
+
 /*    @Bean
     XStreamSerializer xmlSerializer() {
         return new XStreamSerializer();
@@ -70,6 +228,17 @@ public class AxonConfiguration {
         return new JacksonSerializer();
     }
 
+    /**
+     * Reads both JSON and compact binary events. Set 'spring.application.eventSerializer'
+     * to 'compact' to write product events in the compact form too.
+     *
+     * @return
+     */
+    @Bean
+    Serializer eventSerializer() {
+        return new CompactEventSerializer(axonJsonSerializer(), COMPACT_SERIALIZER.equalsIgnoreCase(eventSerializerType));
+    }
+
     @Bean
     ListenerContainerLifecycleManager listenerContainerLifecycleManager() {
         ListenerContainerLifecycleManager mgr = new ListenerContainerLifecycleManager();
@@ -94,51 +263,332 @@ public class AxonConfiguration {
         return cluster;
     }
 
+    /**
+     * Reads and writes single events as before, plus compressed EventBatch envelopes.
+     *
+     * @return
+     */
     @Bean
-    EventBusTerminal terminal() {
+    AMQPMessageConverter amqpMessageConverter() {
+        return new EventBatchAMQPMessageConverter(
+                new DefaultAMQPMessageConverter(eventSerializer(), new PackageRoutingKeyResolver(), true));
+    }
+
+    @Bean
+    SpringAMQPTerminal springAMQPTerminal() {
         SpringAMQPTerminal terminal = new SpringAMQPTerminal();
         terminal.setConnectionFactory(connectionFactory);
         terminal.setExchangeName(exchangeName);
         terminal.setDurable(true);
         terminal.setTransactional(true);
-        terminal.setSerializer(axonJsonSerializer());
+        terminal.setSerializer(eventSerializer());
         //terminal.setSerializer(xmlSerializer());
+        terminal.setMessageConverter(amqpMessageConverter());
         terminal.setListenerContainerLifecycleManager(listenerContainerLifecycleManager());
         return terminal;
     }
 
+    @Bean
+    ThreadPoolTaskExecutor confirmRetryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setThreadNamePrefix("confirm-retry-");
+        return executor;
+    }
+
+    /**
+     * Set 'spring.application.eventPublishing' to 'confirms' to publish events with
+     * publisher confirms instead of an AMQP transaction per Unit of Work. A command fails if
+     * its events aren't confirmed within 'spring.application.confirmTimeoutMillis'. Consumers
+     * are still set up by the SpringAMQPTerminal either way.
+     *
+     * @return
+     */
+    @Bean
+    EventBusTerminal publishingTerminal() {
+        if (!PUBLISHER_CONFIRMS.equalsIgnoreCase(eventPublishing)) {
+            return springAMQPTerminal();
+        }
+
+        PublisherConfirmAMQPTerminal terminal = new PublisherConfirmAMQPTerminal(
+                springAMQPTerminal(),
+                new RabbitTemplate(publisherConnectionFactory),
+                amqpMessageConverter(),
+                exchangeName,
+                maxOutstandingConfirms,
+                confirmRetryExecutor());
+        terminal.setMaxRetries(confirmRetries);
+        terminal.setConfirmTimeoutMillis(confirmTimeoutMillis);
+        return terminal;
+    }
+
+    @Bean
+    PublisherConfirmMetrics publisherConfirmMetrics() {
+        return new PublisherConfirmMetrics(publishingTerminal());
+    }
+
+    /**
+     * Set 'spring.application.eventBatching' to true to send events as compressed batches,
+     * either per Unit of Work or, with 'spring.application.eventBatchWindowMillis', per
+     * time window.
+     *
+     * @return
+     */
+    @Bean
+    EventBusTerminal terminal() {
+        if (!eventBatching) {
+            return publishingTerminal();
+        }
+        return new BatchingEventBusTerminal(publishingTerminal(), eventBatchSize, eventBatchWindowMillis);
+    }
+
     @Bean
     EventBus eventBus() {
-        return new ClusteringEventBus(new DefaultClusterSelector(simpleCluster()), terminal());
+        return new ClusteringEventBus(new DefaultClusterSelector(new EventBatchUnpackingCluster(simpleCluster())), terminal());
     }
 
-    @Bean(name = "axonMongoTemplate")
-    MongoTemplate axonMongoTemplate() {
-        MongoTemplate template = new DefaultMongoTemplate(mongo,
-                databaseName, eventsCollectionName, snapshotCollectionName, null, null);
+    /**
+     * Write concerns are set with 'spring.application.eventStoreWriteConcern' and
+     * 'spring.application.snapshotWriteConcern' (ACKNOWLEDGED, JOURNALED or MAJORITY).
+     * The event store's indexes are created at startup.
+     *
+     * @return
+     */
+    @Bean(name = "axonMongoTemplate", initMethod = "ensureIndexes")
+    EventStoreMongoTemplate axonMongoTemplate() {
+        EventStoreMongoTemplate template = new EventStoreMongoTemplate(mongo,
+                databaseName, eventsCollectionName, snapshotCollectionName,
+                WriteConcernProfile.forName(eventStoreWriteConcern),
+                WriteConcernProfile.forName(snapshotWriteConcern));
         return template;
     }
 
+    /**
+     * The events of a unit of work are appended in one ordered bulk insert. Appends are timed
+     * for the command latency metrics.
+     *
+     * @return
+     */
     @Bean
-    EventStore eventStore() {
+    SnapshotEventStore eventStore() {
         //MongoEventStore eventStore = new MongoEventStore(xmlSerializer(), axonMongoTemplate());
-        MongoEventStore eventStore = new MongoEventStore(axonJsonSerializer(), axonMongoTemplate());
-        return eventStore;
+        MongoEventStore eventStore = new BulkAppendMongoEventStore(axonMongoTemplate(), eventSerializer(),
+                new DocumentPerEventStorageStrategy());
+        return new TimedEventStore(eventStore);
+    }
+
+    @Bean
+    AggregateFactory<ProductAggregate> productAggregateFactory() {
+        return new GenericAggregateFactory<ProductAggregate>(ProductAggregate.class);
+    }
+
+    /**
+     * Knows which product ids already exist, so duplicate adds can be answered without a
+     * failed write. It's warmed from the event store in the background and picks up new
+     * products as their ProductAddedEvents arrive. With 'spring.application.productIdIndex'
+     * set to false it is never warmed, and every id is treated as new.
+     *
+     * @return
+     */
+    @Bean
+    ProductIdIndex productIdIndex() {
+        ProductIdIndex index = new ProductIdIndex(
+                new BloomFilter(productIdIndexExpectedIds, productIdIndexFalsePositiveRate),
+                eventStore(),
+                productAggregateFactory().getTypeIdentifier());
+        if (productIdIndexEnabled) {
+            index.warmInBackground((EventStoreManagement) eventStore());
+        }
+        return index;
     }
 
     @Bean
-    EventSourcingRepository<ProductAggregate> productEventSourcingRepository() {
-        EventSourcingRepository<ProductAggregate> repo = new EventSourcingRepository<ProductAggregate>(ProductAggregate.class, eventStore());
+    ProductIdIndexMetrics productIdIndexMetrics() {
+        return new ProductIdIndexMetrics(productIdIndex());
+    }
+
+    /**
+     * Snapshots are built on this pool so that the command thread never pays for them.
+     *
+     * @return
+     */
+    @Bean
+    ThreadPoolTaskExecutor snapshotterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(snapshotterThreads);
+        executor.setMaxPoolSize(snapshotterThreads);
+        executor.setThreadNamePrefix("snapshotter-");
+        return executor;
+    }
+
+    @Bean
+    AggregateSnapshotter productSnapshotter() {
+        AggregateSnapshotter snapshotter = new AggregateSnapshotter();
+        snapshotter.setEventStore(eventStore());
+        snapshotter.setAggregateFactories(Collections.<AggregateFactory<?>>singletonList(productAggregateFactory()));
+        snapshotter.setExecutor(snapshotterExecutor());
+        return snapshotter;
+    }
+
+    /**
+     * Schedules a snapshot once an aggregate has been loaded with more than the configured
+     * number of events. The MongoEventStore then reads the latest snapshot plus the events
+     * that follow it, instead of the whole history.
+     *
+     * @return
+     */
+    @Bean
+    EventCountSnapshotterTrigger productSnapshotterTrigger() {
+        EventCountSnapshotterTrigger trigger = new EventCountSnapshotterTrigger();
+        trigger.setSnapshotter(productSnapshotter());
+        trigger.setTrigger(snapshotEventThreshold);
+        // Cached aggregates aren't re-read, so keep counting until the cache lets them go.
+        trigger.setClearCountersAfterAppend(false);
+        trigger.setAggregateCache(productAggregateCache());
+        return trigger;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    CacheManager ehCacheManager() {
+        return new CacheManager(new net.sf.ehcache.config.Configuration().name("product-command-side"));
+    }
+
+    /**
+     * Holds the most recently used ProductAggregates, bounded by count and by idle/live time.
+     *
+     * @return
+     */
+    @Bean
+    Ehcache productAggregateEhcache() {
+        CacheConfiguration config = new CacheConfiguration("productAggregates", aggregateCacheSize)
+                .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                .timeToIdleSeconds(aggregateCacheTimeToIdleSeconds)
+                .timeToLiveSeconds(aggregateCacheTimeToLiveSeconds);
+        net.sf.ehcache.Cache cache = new net.sf.ehcache.Cache(config);
+        ehCacheManager().addCache(cache);
+        return cache;
+    }
+
+    @Bean
+    Cache productAggregateCache() {
+        return new EhCacheAdapter(productAggregateEhcache());
+    }
+
+    @Bean
+    ProductAggregateCacheMetrics productAggregateCacheMetrics() {
+        return new ProductAggregateCacheMetrics(productAggregateEhcache());
+    }
+
+    /**
+     * Aggregates are served from the cache when possible. If the unit of work rolls back
+     * (for example on a ConcurrencyException) the repository evicts the aggregate, so the
+     * next command re-reads it from the event store.
+     * <p/>
+     * The DisruptorCommandBus manages its own aggregates, so in that mode the repository
+     * is created by the bus and shares the same cache and snapshotter trigger. The bus
+     * hands each aggregate to a single invoker thread, so it doesn't take locks at all.
+     *
+     * @return
+     */
+    @Bean
+    Repository<ProductAggregate> productEventSourcingRepository() {
+        if (isDisruptorCommandBus()) {
+            return new TimedRepository<ProductAggregate>(
+                    ((DisruptorCommandBus) commandBus()).createRepository(productAggregateFactory(), productSnapshotterTrigger()));
+        }
+
+        CachingEventSourcingRepository<ProductAggregate> repo = new CachingEventSourcingRepository<ProductAggregate>(productAggregateFactory(), eventStore(), productLockManager());
+        repo.setCache(productAggregateCache());
         repo.setEventBus(eventBus());
-        return repo;
+        repo.setSnapshotterTrigger(productSnapshotterTrigger());
+        return new TimedRepository<ProductAggregate>(repo);
+    }
+
+    /**
+     * Aggregates are locked while a command works on them. By default that's Axon's
+     * PessimisticLockManager (a lock per product, created and disposed of on every command).
+     * With 'striped' the products share a fixed number of locks instead.
+     *
+     * @return
+     */
+    @Bean
+    TimedLockManager productLockManager() {
+        if (STRIPED_LOCK_MANAGER.equalsIgnoreCase(lockManagerType)) {
+            return new TimedLockManager(new StripedLockManager(lockStripes));
+        }
+        return new TimedLockManager(new PessimisticLockManager());
     }
 
+    @Bean
+    ProductLockMetrics productLockMetrics() {
+        return new ProductLockMetrics(productLockManager());
+    }
+
+    /**
+     * The command latencies on /metrics are those of the last complete interval of
+     * 'commandLatencyIntervalSeconds', not everything since the service started.
+     *
+     * @return
+     */
+    @Bean
+    CommandLatencyRecorder commandLatencyRecorder() {
+        return new CommandLatencyRecorder(TimeUnit.SECONDS.toMillis(commandLatencyIntervalSeconds));
+    }
+
+    /**
+     * Times every command by type and phase (queue, load, handle, append, publish and total).
+     *
+     * @return
+     */
+    @Bean
+    CommandLatencyInterceptor commandLatencyInterceptor() {
+        return new CommandLatencyInterceptor(commandLatencyRecorder());
+    }
+
+    @Bean
+    CommandLatencyMetrics commandLatencyMetrics() {
+        return new CommandLatencyMetrics(commandLatencyRecorder());
+    }
+
+    /**
+     * Set 'spring.application.commandBus' to 'disruptor' to swap the SimpleCommandBus for
+     * a DisruptorCommandBus. Commands for the same product are always handled by the same
+     * invoker thread (in order), while different products are spread over all the invoker
+     * threads. Events are stored and published by separate publisher threads, so the
+     * calling thread doesn't wait on the event store.
+     *
+     * @return
+     */
     @Bean
     CommandBus commandBus() {
+        if (isDisruptorCommandBus()) {
+            DisruptorConfiguration config = new DisruptorConfiguration()
+                    .setInvokerThreadCount(disruptorInvokerThreads)
+                    .setPublisherThreadCount(disruptorPublisherThreads)
+                    .setBufferSize(disruptorBufferSize)
+                    .setCache(productAggregateCache())
+                    .setDispatchInterceptors(Collections.<CommandDispatchInterceptor>singletonList(commandLatencyInterceptor()))
+                    .setInvokerInterceptors(Collections.<CommandHandlerInterceptor>singletonList(commandLatencyInterceptor()));
+            return new DisruptorCommandBus(eventStore(), eventBus(), config);
+        }
+
         SimpleCommandBus commandBus = new SimpleCommandBus();
+        commandBus.setDispatchInterceptors(Collections.<CommandDispatchInterceptor>singletonList(commandLatencyInterceptor()));
+        commandBus.setHandlerInterceptors(Collections.<CommandHandlerInterceptor>singletonList(commandLatencyInterceptor()));
         return commandBus;
     }
 
+    @PreDestroy
+    void stopCommandBus() {
+        if (isDisruptorCommandBus()) {
+            ((DisruptorCommandBus) commandBus()).stop();
+        }
+    }
+
+    private boolean isDisruptorCommandBus() {
+        return DISRUPTOR_COMMAND_BUS.equalsIgnoreCase(commandBusType);
+    }
+
     @Bean
     CommandGatewayFactoryBean<CommandGateway> commandGatewayFactoryBean() {
         CommandGatewayFactoryBean<CommandGateway> factory = new CommandGatewayFactoryBean<CommandGateway>();
@@ -146,6 +596,59 @@ public class AxonConfiguration {
         return factory;
     }
 
+    /**
+     * Caps the commands in flight with a limit that adapts to the observed latency. Commands
+     * over the limit are rejected before they reach the bus. Switch it off with
+     * 'spring.application.admissionControl' set to false.
+     *
+     * @return
+     */
+    @Bean
+    AdmissionController admissionController() {
+        return new AdmissionController(admissionInitialLimit, admissionMinLimit, admissionMaxLimit, admissionLatencyTolerance);
+    }
+
+    @Bean
+    AdmissionMetrics admissionMetrics() {
+        return new AdmissionMetrics(admissionController());
+    }
+
+    /**
+     * Sends the entries of batch requests (see ProductBatchRestController), so that they're
+     * handled side by side even though the SimpleCommandBus handles each command on the
+     * thread that sends it. Sized with 'spring.application.batchDispatchThreads' and
+     * 'spring.application.batchDispatchQueueCapacity'.
+     *
+     * @return
+     */
+    @Bean
+    ThreadPoolTaskExecutor batchDispatchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(batchDispatchThreads);
+        executor.setMaxPoolSize(batchDispatchThreads);
+        executor.setQueueCapacity(batchDispatchQueueCapacity);
+        executor.setThreadNamePrefix("batch-dispatch-");
+        return executor;
+    }
+
+    /**
+     * The gateway that the controllers use. Duplicate product ids are turned away by the
+     * ProductIdIndex, inside the admission control, so only admitted commands ever make the
+     * index read the event store.
+     *
+     * @return
+     * @throws Exception
+     */
+    @Bean
+    @Primary
+    CommandGateway commandGateway() throws Exception {
+        CommandGateway gateway = new ProductIdCheckingCommandGateway(commandGatewayFactoryBean().getObject(), productIdIndex());
+        if (admissionControl) {
+            return new AdmissionControlledCommandGateway(gateway, admissionController());
+        }
+        return gateway;
+    }
+
     /**
      * This method allows Axon to automatically find your @EventHandler's
      *
@@ -0,0 +1,59 @@
+package com.soagrowers.productcommand.configuration;
+
+import com.mongodb.Mongo;
+import com.soagrowers.productcommand.idempotency.CommandDeduplicator;
+import com.soagrowers.productcommand.idempotency.IdempotencyStore;
+import com.soagrowers.productcommand.idempotency.InMemoryIdempotencyStore;
+import com.soagrowers.productcommand.idempotency.MongoIdempotencyStore;
+import com.soagrowers.productcommand.metrics.IdempotencyMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Idempotency keys for the product commands. Keys are kept in memory by default. Set
+ * 'spring.application.idempotencyStore' to 'mongo' to share them between all the
+ * command-side instances.
+ */
+@Configuration
+public class IdempotencyConfiguration {
+
+    private static final String MONGO_STORE = "mongo";
+
+    @Autowired
+    public Mongo mongo;
+
+    @Value("${spring.application.databaseName}")
+    private String databaseName;
+
+    @Value("${spring.application.idempotencyStore:memory}")
+    private String idempotencyStoreType;
+
+    @Value("${spring.application.idempotencyCollectionName:idempotencykeys}")
+    private String idempotencyCollectionName;
+
+    @Value("${spring.application.idempotencyMaxKeys:100000}")
+    private int idempotencyMaxKeys;
+
+    @Value("${spring.application.idempotencyKeyTtlSeconds:86400}")
+    private long idempotencyKeyTtlSeconds;
+
+    @Bean
+    IdempotencyStore idempotencyStore() {
+        if (MONGO_STORE.equalsIgnoreCase(idempotencyStoreType)) {
+            return new MongoIdempotencyStore(mongo.getDB(databaseName).getCollection(idempotencyCollectionName), idempotencyKeyTtlSeconds);
+        }
+        return new InMemoryIdempotencyStore(idempotencyMaxKeys, idempotencyKeyTtlSeconds * 1000);
+    }
+
+    @Bean
+    CommandDeduplicator commandDeduplicator() {
+        return new CommandDeduplicator(idempotencyStore());
+    }
+
+    @Bean
+    IdempotencyMetrics idempotencyMetrics() {
+        return new IdempotencyMetrics(commandDeduplicator());
+    }
+}
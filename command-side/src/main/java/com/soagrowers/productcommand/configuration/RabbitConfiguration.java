@@ -11,6 +11,7 @@ import org.springframework.beans.factory.annotation.Required;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * Created by ben on 23/02/16.
@@ -49,6 +50,7 @@ public class RabbitConfiguration {
     }
 
     @Bean
+    @Primary
     ConnectionFactory connectionFactory() {
         CachingConnectionFactory connectionFactory = new CachingConnectionFactory(hostname);
         connectionFactory.setUsername(username);
@@ -56,6 +58,21 @@ public class RabbitConfiguration {
         return connectionFactory;
     }
 
+    /**
+     * Channels in confirm mode can't be made transactional, so publisher confirms get a
+     * connection factory of their own. The transactional consumers keep using the primary one.
+     *
+     * @return
+     */
+    @Bean
+    ConnectionFactory publisherConnectionFactory() {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(hostname);
+        connectionFactory.setUsername(username);
+        connectionFactory.setPassword(password);
+        connectionFactory.setPublisherConfirms(true);
+        return connectionFactory;
+    }
+
     @Bean
     @Required
     RabbitAdmin rabbitAdmin() {
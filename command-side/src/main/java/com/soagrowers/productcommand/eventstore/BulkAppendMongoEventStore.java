@@ -0,0 +1,102 @@
+package com.soagrowers.productcommand.eventstore;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventstore.mongo.MongoEventStore;
+import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.axonframework.eventstore.mongo.StorageStrategy;
+import org.axonframework.repository.ConcurrencyException;
+import org.axonframework.serializer.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MongoEventStore that writes all the events of a unit of work in one ordered bulk
+ * operation.
+ * <p/>
+ * The events follow on from the sequence number the aggregate was loaded at, so if another
+ * command got there first it is the batch's first document that hits the unique aggregate
+ * index. Mongo stops an ordered bulk at the first failed document, so nothing of this batch
+ * has been written and the aggregate's stream is left as the other command wrote it. A
+ * ConcurrencyException is raised as usual.
+ * <p/>
+ * Reads, snapshots and indexes are left to the MongoEventStore.
+ */
+public class BulkAppendMongoEventStore extends MongoEventStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkAppendMongoEventStore.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String DUPLICATE_MESSAGE = "Trying to insert an Event for an aggregate with a sequence number that is already present in the Event Store";
+
+    private final MongoTemplate mongoTemplate;
+    private final Serializer eventSerializer;
+    private final StorageStrategy storageStrategy;
+
+    public BulkAppendMongoEventStore(MongoTemplate mongoTemplate, Serializer eventSerializer, StorageStrategy storageStrategy) {
+        super(mongoTemplate, eventSerializer, storageStrategy);
+        this.mongoTemplate = mongoTemplate;
+        this.eventSerializer = eventSerializer;
+        this.storageStrategy = storageStrategy;
+    }
+
+    @Override
+    public void appendEvents(String type, DomainEventStream events) {
+        if (!events.hasNext()) {
+            return;
+        }
+
+        List<DomainEventMessage> messages = new ArrayList<DomainEventMessage>();
+        while (events.hasNext()) {
+            messages.add(events.next());
+        }
+
+        DBCollection collection = mongoTemplate.domainEventCollection();
+        DBObject[] documents = storageStrategy.createDocuments(type, eventSerializer, messages);
+        if (documents.length == 1) {
+            insert(collection, documents[0]);
+        } else {
+            bulkInsert(collection, documents);
+        }
+        LOG.debug("{} events appended", messages.size());
+    }
+
+    private void insert(DBCollection collection, DBObject document) {
+        try {
+            collection.insert(document);
+        } catch (MongoException e) {
+            throw isDuplicateKey(e.getCode()) ? new ConcurrencyException(DUPLICATE_MESSAGE, e) : e;
+        }
+    }
+
+    private void bulkInsert(DBCollection collection, DBObject[] documents) {
+        BulkWriteOperation bulk = collection.initializeOrderedBulkOperation();
+        for (DBObject document : documents) {
+            bulk.insert(document);
+        }
+
+        try {
+            bulk.execute();
+        } catch (BulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (isDuplicateKey(error.getCode())) {
+                    throw new ConcurrencyException(DUPLICATE_MESSAGE, e);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isDuplicateKey(int code) {
+        return code == DUPLICATE_KEY;
+    }
+}
@@ -0,0 +1,62 @@
+package com.soagrowers.productcommand.eventstore;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.Mongo;
+import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The MongoTemplate for the command side's event store. It applies the configured write
+ * concerns to the event and snapshot collections, and creates the indexes that the event
+ * store's queries rely on instead of leaving that to chance.
+ * <ul>
+ * <li>uniqueAggregateIndex - aggregateIdentifier, type, sequenceNumber. Serves every aggregate
+ * load (filtered on the first two, sorted on the third), and rejects a second event with the same
+ * sequence number, which is how concurrent changes are detected.</li>
+ * <li>orderedEventStreamIndex - timeStamp, sequenceNumber. Serves the full scans used to
+ * replay or visit all the events.</li>
+ * </ul>
+ * The index names and keys are the same as Axon's own, so an existing collection is left as it is.
+ */
+public class EventStoreMongoTemplate implements MongoTemplate {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventStoreMongoTemplate.class);
+
+    static final BasicDBObject AGGREGATE_INDEX = new BasicDBObject("aggregateIdentifier", 1).append("type", 1).append("sequenceNumber", 1);
+    static final BasicDBObject EVENT_STREAM_INDEX = new BasicDBObject("timeStamp", 1).append("sequenceNumber", 1);
+
+    private final DBCollection domainEvents;
+    private final DBCollection snapshotEvents;
+
+    public EventStoreMongoTemplate(Mongo mongo, String databaseName, String eventsCollectionName, String snapshotCollectionName,
+                                   WriteConcernProfile eventWriteConcern, WriteConcernProfile snapshotWriteConcern) {
+        DB database = mongo.getDB(databaseName);
+        this.domainEvents = database.getCollection(eventsCollectionName);
+        this.snapshotEvents = database.getCollection(snapshotCollectionName);
+        this.domainEvents.setWriteConcern(eventWriteConcern.getWriteConcern());
+        this.snapshotEvents.setWriteConcern(snapshotWriteConcern.getWriteConcern());
+    }
+
+    /**
+     * Creates the indexes if they aren't there yet. Safe to call on every startup.
+     */
+    public void ensureIndexes() {
+        domainEvents.createIndex(AGGREGATE_INDEX, new BasicDBObject("name", "uniqueAggregateIndex").append("unique", true));
+        domainEvents.createIndex(EVENT_STREAM_INDEX, new BasicDBObject("name", "orderedEventStreamIndex"));
+        snapshotEvents.createIndex(AGGREGATE_INDEX, new BasicDBObject("name", "uniqueAggregateIndex").append("unique", true));
+        LOG.info("Event store indexes in place on '{}' and '{}'", domainEvents.getName(), snapshotEvents.getName());
+    }
+
+    @Override
+    public DBCollection domainEventCollection() {
+        return domainEvents;
+    }
+
+    @Override
+    public DBCollection snapshotEventCollection() {
+        return snapshotEvents;
+    }
+}
@@ -0,0 +1,49 @@
+package com.soagrowers.productcommand.eventstore;
+
+import com.mongodb.WriteConcern;
+
+/**
+ * The write concerns the event store can be configured with. There's no unacknowledged
+ * profile on purpose: a duplicate sequence number has to come back as an error, otherwise
+ * concurrent changes to the same product go unnoticed.
+ */
+public enum WriteConcernProfile {
+
+    /**
+     * Acknowledged by the primary, not yet on disk.
+     */
+    ACKNOWLEDGED(WriteConcern.ACKNOWLEDGED),
+
+    /**
+     * Acknowledged by the primary once it's in the journal.
+     */
+    JOURNALED(WriteConcern.JOURNALED),
+
+    /**
+     * Acknowledged once a majority of the replica set has it.
+     */
+    MAJORITY(WriteConcern.MAJORITY);
+
+    private final WriteConcern writeConcern;
+
+    WriteConcernProfile(WriteConcern writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    public WriteConcern getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * @param name the profile name, in any case
+     * @return
+     */
+    public static WriteConcernProfile forName(String name) {
+        for (WriteConcernProfile profile : values()) {
+            if (profile.name().equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown write concern profile '" + name + "', expected one of ACKNOWLEDGED, JOURNALED or MAJORITY");
+    }
+}
@@ -0,0 +1,169 @@
+package com.soagrowers.productcommand.idempotency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs each command at most once per idempotency key, and answers repeats with the status
+ * of the first attempt instead of dispatching them again.
+ * <ul>
+ * <li>A repeat of a request that has finished gets the recorded status.</li>
+ * <li>A repeat of a request that is still running on this instance waits for its result.</li>
+ * <li>A repeat of a request that is still running on another instance gets a 409.</li>
+ * <li>A key that is reused for a different request gets a 422.</li>
+ * </ul>
+ * Requests without a key are dispatched as normal. Server errors (such as a 503 when
+ * overloaded) aren't recorded, so the client's retry is dispatched again.
+ */
+public class CommandDeduplicator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommandDeduplicator.class);
+
+    private final IdempotencyStore store;
+    private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<String, InFlight>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong inProgressElsewhere = new AtomicLong();
+    private final AtomicLong mismatched = new AtomicLong();
+
+    public CommandDeduplicator(IdempotencyStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @param key         the client's idempotency key, may be null
+     * @param fingerprint identifies the request, so that a key can't be reused for a different one
+     * @param command     dispatches the command and completes with its status
+     * @return
+     */
+    public CompletableFuture<HttpStatus> execute(final String key, String fingerprint, Supplier<CompletableFuture<HttpStatus>> command) {
+        if (null == key || key.isEmpty()) {
+            return command.get();
+        }
+
+        final InFlight mine = new InFlight(fingerprint);
+        InFlight running = inFlight.putIfAbsent(key, mine);
+        if (null != running) {
+            if (!running.fingerprint.equals(fingerprint)) {
+                return mismatch(key);
+            }
+            LOG.debug("Idempotency key [{}] is in progress, waiting for the first attempt.", key);
+            replayed.incrementAndGet();
+            return running.result;
+        }
+
+        final IdempotencyRecord claim = IdempotencyRecord.pending(fingerprint);
+        IdempotencyRecord existing;
+        try {
+            existing = store.putIfAbsent(key, claim);
+        } catch (RuntimeException e) {
+            LOG.warn("Idempotency store unavailable, dispatching [{}] without de-duplication: {}", key, e.getMessage());
+            inFlight.remove(key, mine);
+            return command.get();
+        }
+        if (null != existing) {
+            inFlight.remove(key, mine);
+            return forExisting(key, existing, fingerprint);
+        }
+
+        executed.incrementAndGet();
+        CompletableFuture<HttpStatus> dispatched;
+        try {
+            dispatched = command.get();
+        } catch (RuntimeException e) {
+            LOG.warn("Dispatching the command for idempotency key [{}] failed: {}", key, e.getMessage());
+            complete(key, claim, mine, null, e);
+            return mine.result;
+        }
+
+        dispatched.whenComplete(new BiConsumer<HttpStatus, Throwable>() {
+            @Override
+            public void accept(HttpStatus status, Throwable failure) {
+                complete(key, claim, mine, status, failure);
+            }
+        });
+        return mine.result;
+    }
+
+    /**
+     * Records the outcome of the first attempt (or releases the key if it failed) and hands
+     * it to everyone waiting for it.
+     */
+    private void complete(String key, IdempotencyRecord claim, InFlight mine, HttpStatus status, Throwable failure) {
+        try {
+            if (null == failure && !status.is5xxServerError()) {
+                store.put(key, claim.completedWith(status.value()));
+            } else {
+                store.remove(key);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not record the result for idempotency key [{}]: {}", key, e.getMessage());
+        } finally {
+            inFlight.remove(key, mine);
+        }
+
+        if (null == failure) {
+            mine.result.complete(status);
+        } else {
+            mine.result.completeExceptionally(failure);
+        }
+    }
+
+    private CompletableFuture<HttpStatus> forExisting(String key, IdempotencyRecord existing, String fingerprint) {
+        if (!existing.getFingerprint().equals(fingerprint)) {
+            return mismatch(key);
+        }
+        if (existing.isPending()) {
+            LOG.warn("Idempotency key [{}] is in progress on another instance.", key);
+            inProgressElsewhere.incrementAndGet();
+            return CompletableFuture.completedFuture(HttpStatus.CONFLICT);
+        }
+        LOG.debug("Idempotency key [{}] seen before, replaying status {}.", key, existing.getStatus());
+        replayed.incrementAndGet();
+        return CompletableFuture.completedFuture(HttpStatus.valueOf(existing.getStatus()));
+    }
+
+    private CompletableFuture<HttpStatus> mismatch(String key) {
+        LOG.warn("Idempotency key [{}] was reused for a different request.", key);
+        mismatched.incrementAndGet();
+        return CompletableFuture.completedFuture(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    public IdempotencyStore getStore() {
+        return store;
+    }
+
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    public long getInProgressElsewhereCount() {
+        return inProgressElsewhere.get();
+    }
+
+    public long getMismatchedCount() {
+        return mismatched.get();
+    }
+
+    private static class InFlight {
+        private final String fingerprint;
+        private final CompletableFuture<HttpStatus> result = new CompletableFuture<HttpStatus>();
+
+        private InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.soagrowers.productcommand.idempotency;
+
+/**
+ * What an IdempotencyStore knows about one idempotency key: a fingerprint of the request
+ * that first used it and, once that request has finished, the HTTP status it was answered with.
+ */
+public class IdempotencyRecord {
+
+    private static final int PENDING = 0;
+
+    private final String fingerprint;
+    private final int status;
+    private final long createdAt;
+
+    public IdempotencyRecord(String fingerprint, int status, long createdAt) {
+        this.fingerprint = fingerprint;
+        this.status = status;
+        this.createdAt = createdAt;
+    }
+
+    public static IdempotencyRecord pending(String fingerprint) {
+        return new IdempotencyRecord(fingerprint, PENDING, System.currentTimeMillis());
+    }
+
+    /**
+     * @param status
+     * @return a copy of this record holding the result. It keeps the original creation time, so the
+     * key expires a fixed time after it was first used.
+     */
+    public IdempotencyRecord completedWith(int status) {
+        return new IdempotencyRecord(fingerprint, status, createdAt);
+    }
+
+    public boolean isPending() {
+        return status == PENDING;
+    }
+
+    public boolean isExpired(long now, long ttlMillis) {
+        return createdAt + ttlMillis <= now;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
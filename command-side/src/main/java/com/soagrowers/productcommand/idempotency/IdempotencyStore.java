@@ -0,0 +1,29 @@
+package com.soagrowers.productcommand.idempotency;
+
+/**
+ * Remembers idempotency keys for a limited time. Instances that share a store share their
+ * keys, so a retry is recognised whichever command-side instance it lands on.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * Claims the key for a new request.
+     *
+     * @param key
+     * @param record
+     * @return null if the key was free and now holds the record, otherwise the record already held.
+     */
+    IdempotencyRecord putIfAbsent(String key, IdempotencyRecord record);
+
+    /**
+     * Replaces the record of a key that was claimed earlier.
+     */
+    void put(String key, IdempotencyRecord record);
+
+    void remove(String key);
+
+    /**
+     * @return the number of keys held, or -1 if the store can't tell cheaply.
+     */
+    long size();
+}
@@ -0,0 +1,63 @@
+package com.soagrowers.productcommand.idempotency;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The default IdempotencyStore. Keys are held in this instance only, bounded by count (the
+ * oldest key goes first) and by time to live.
+ * <p/>
+ * Keys are kept in the order they were first used and all share the same time to live, so
+ * the expired keys are always at the head of the map and purging them is cheap.
+ */
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final long ttlMillis;
+    private final Map<String, IdempotencyRecord> records;
+
+    public InMemoryIdempotencyStore(final int maxKeys, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.records = new LinkedHashMap<String, IdempotencyRecord>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    @Override
+    public synchronized IdempotencyRecord putIfAbsent(String key, IdempotencyRecord record) {
+        purgeExpired();
+        IdempotencyRecord existing = records.get(key);
+        if (null != existing) {
+            return existing;
+        }
+        records.put(key, record);
+        return null;
+    }
+
+    @Override
+    public synchronized void put(String key, IdempotencyRecord record) {
+        records.put(key, record);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        records.remove(key);
+    }
+
+    @Override
+    public synchronized long size() {
+        purgeExpired();
+        return records.size();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<IdempotencyRecord> oldestFirst = records.values().iterator();
+        while (oldestFirst.hasNext() && oldestFirst.next().isExpired(now, ttlMillis)) {
+            oldestFirst.remove();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.soagrowers.productcommand.idempotency;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+
+import java.util.Date;
+
+/**
+ * An IdempotencyStore that keeps the keys in a MongoDB collection, so that all the
+ * command-side instances share them. The unique _id makes the claim atomic, and a TTL index
+ * removes old keys. Mongo only purges once a minute, so expiry is checked on read as well.
+ */
+public class MongoIdempotencyStore implements IdempotencyStore {
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String STATUS = "status";
+    private static final String CREATED_AT = "createdAt";
+
+    private final DBCollection collection;
+    private final long ttlMillis;
+
+    public MongoIdempotencyStore(DBCollection collection, long ttlSeconds) {
+        this.collection = collection;
+        this.ttlMillis = ttlSeconds * 1000;
+        collection.createIndex(new BasicDBObject(CREATED_AT, 1), new BasicDBObject("expireAfterSeconds", ttlSeconds));
+    }
+
+    @Override
+    public IdempotencyRecord putIfAbsent(String key, IdempotencyRecord record) {
+        try {
+            collection.insert(toDocument(key, record));
+            return null;
+        } catch (DuplicateKeyException e) {
+            IdempotencyRecord existing = find(key);
+            if (null == existing) {
+                // Removed in the meantime, try again.
+                return putIfAbsent(key, record);
+            }
+            if (existing.isExpired(System.currentTimeMillis(), ttlMillis)) {
+                collection.remove(new BasicDBObject("_id", key).append(CREATED_AT, new Date(existing.getCreatedAt())));
+                return putIfAbsent(key, record);
+            }
+            return existing;
+        }
+    }
+
+    @Override
+    public void put(String key, IdempotencyRecord record) {
+        collection.save(toDocument(key, record));
+    }
+
+    @Override
+    public void remove(String key) {
+        collection.remove(new BasicDBObject("_id", key));
+    }
+
+    @Override
+    public long size() {
+        return collection.count();
+    }
+
+    private IdempotencyRecord find(String key) {
+        DBObject document = collection.findOne(new BasicDBObject("_id", key));
+        if (null == document) {
+            return null;
+        }
+        return new IdempotencyRecord((String) document.get(FINGERPRINT),
+                ((Number) document.get(STATUS)).intValue(),
+                ((Date) document.get(CREATED_AT)).getTime());
+    }
+
+    private DBObject toDocument(String key, IdempotencyRecord record) {
+        return new BasicDBObject("_id", key)
+                .append(FINGERPRINT, record.getFingerprint())
+                .append(STATUS, record.getStatus())
+                .append(CREATED_AT, new Date(record.getCreatedAt()));
+    }
+}
@@ -0,0 +1,130 @@
+package com.soagrowers.productcommand.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter for Strings. mightContain() never returns false for a value
+ * that was put, but may return true for a value that wasn't (a false positive). The
+ * chance of that stays close to the configured rate as long as no more than the expected
+ * number of values are put.
+ * <p/>
+ * The bits are held in an AtomicLongArray, so puts and reads never block each other.
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final AtomicLong insertions = new AtomicLong();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive: " + expectedInsertions);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        int words = (int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64);
+        this.words = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * LN2));
+    }
+
+    /**
+     * @param value
+     * @return true if the filter changed, i.e. the value definitely wasn't in it before.
+     */
+    public boolean put(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        boolean changed = false;
+        for (int i = 0; i < hashFunctions; i++) {
+            changed |= setBit(index(hash1, hash2, i));
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * @param value
+     * @return false if the value has definitely never been put, true if it probably has.
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = index(hash1, hash2, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * @return how many distinct values have been put (values that collided with earlier ones aren't counted).
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * @return the false positive rate to expect for the number of values put so far.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashFunctions * (double) insertions.get() / bitCount), hashFunctions);
+    }
+
+    private long index(long hash1, long hash2, int i) {
+        return ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+    }
+
+    private boolean setBit(long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+        return true;
+    }
+
+    /**
+     * FNV-1a over the chars of the value, finished with the MurmurHash3 mixer so that
+     * ids which only differ in their last few characters still spread over the whole filter.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
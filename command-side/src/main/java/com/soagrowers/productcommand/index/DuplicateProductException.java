@@ -0,0 +1,12 @@
+package com.soagrowers.productcommand.index;
+
+/**
+ * Raised when an AddProductCommand is turned away because the ProductIdIndex knows that the
+ * product exists already. The command was never dispatched.
+ */
+public class DuplicateProductException extends RuntimeException {
+
+    public DuplicateProductException(String id) {
+        super("A product with the id [" + id + "] already exists");
+    }
+}
@@ -0,0 +1,73 @@
+package com.soagrowers.productcommand.index;
+
+import com.soagrowers.productcommand.commands.AddProductCommand;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CommandGateway that asks the ProductIdIndex about each AddProductCommand before sending
+ * it. A known id fails straight away with a DuplicateProductException, and an id that is
+ * added successfully is put in the index. Other commands are passed straight through.
+ * <p/>
+ * It sits behind the AdmissionControlledCommandGateway, so the event store read that the
+ * index may need is only made by commands that hold a permit.
+ */
+public class ProductIdCheckingCommandGateway implements CommandGateway {
+
+    private final CommandGateway delegate;
+    private final ProductIdIndex productIdIndex;
+
+    public ProductIdCheckingCommandGateway(CommandGateway delegate, ProductIdIndex productIdIndex) {
+        this.delegate = delegate;
+        this.productIdIndex = productIdIndex;
+    }
+
+    @Override
+    public <R> void send(Object command, final CommandCallback<R> callback) {
+        if (!(command instanceof AddProductCommand)) {
+            delegate.send(command, callback);
+            return;
+        }
+
+        final String id = ((AddProductCommand) command).getId();
+        if (productIdIndex.isExistingProduct(id)) {
+            callback.onFailure(new DuplicateProductException(id));
+            return;
+        }
+
+        delegate.send(command, new CommandCallback<R>() {
+            @Override
+            public void onSuccess(R result) {
+                productIdIndex.add(id);
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                callback.onFailure(cause);
+            }
+        });
+    }
+
+    @Override
+    public <R> R sendAndWait(Object command) {
+        FutureCallback<R> callback = new FutureCallback<R>();
+        send(command, callback);
+        return callback.getResult();
+    }
+
+    @Override
+    public <R> R sendAndWait(Object command, long timeout, TimeUnit unit) {
+        FutureCallback<R> callback = new FutureCallback<R>();
+        send(command, callback);
+        return callback.getResult(timeout, unit);
+    }
+
+    @Override
+    public void send(Object command) {
+        send(command, new FutureCallback<Object>());
+    }
+}
@@ -0,0 +1,149 @@
+package com.soagrowers.productcommand.index;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.eventstore.EventStore;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory index of the product ids that exist in the event store, used to turn
+ * duplicate AddProductCommands away before they are dispatched.
+ * <p/>
+ * The ids are held in a BloomFilter. If the filter says an id has never been seen it
+ * definitely hasn't, and the command goes straight to the bus. If the filter says it
+ * might have been seen, the event store is asked, and only a product that really exists
+ * is reported as a duplicate. False positives therefore cost one read, never a wrong 409.
+ * <p/>
+ * Until the index has been warmed from the event store every id is reported as new, so the
+ * ConcurrencyException raised by the event store remains the safety net. The same goes for
+ * products added by another instance that this instance hasn't heard about yet.
+ */
+public class ProductIdIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductIdIndex.class);
+
+    static final String SEQUENCE_NUMBER = "sequenceNumber";
+
+    private final BloomFilter filter;
+    private final EventStore eventStore;
+    private final String typeIdentifier;
+
+    private volatile boolean warm = false;
+
+    private final AtomicLong definitelyNew = new AtomicLong();
+    private final AtomicLong confirmedDuplicates = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public ProductIdIndex(BloomFilter filter, EventStore eventStore, String typeIdentifier) {
+        this.filter = filter;
+        this.eventStore = eventStore;
+        this.typeIdentifier = typeIdentifier;
+    }
+
+    /**
+     * Adds the id of every aggregate in the event store to the index. Only the first event
+     * of each aggregate is needed, so the event store is asked for the events with sequence
+     * number 0 alone, and their payloads are never deserialized.
+     *
+     * @param management
+     */
+    public void warm(EventStoreManagement management) {
+        long start = System.currentTimeMillis();
+        Criteria firstEvents = management.newCriteriaBuilder().property(SEQUENCE_NUMBER).is(0L);
+        management.visitEvents(firstEvents, new EventVisitor() {
+            @Override
+            public void doWithEvent(DomainEventMessage domainEvent) {
+                filter.put(domainEvent.getAggregateIdentifier().toString());
+            }
+        });
+        warm = true;
+        LOG.info("Product id index warmed with {} ids in {}ms", filter.getInsertions(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Warms the index on its own thread, so that startup isn't held up by a large event store.
+     *
+     * @param management
+     */
+    public void warmInBackground(final EventStoreManagement management) {
+        Thread warmer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warm(management);
+                } catch (RuntimeException e) {
+                    LOG.error("Product id index could not be warmed, duplicate ids will be caught by the event store.", e);
+                }
+            }
+        }, "product-id-index-warmer");
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
+    @EventHandler
+    public void on(ProductAddedEvent event) {
+        add(event.getId());
+    }
+
+    public void add(String id) {
+        filter.put(id);
+    }
+
+    /**
+     * @param id
+     * @return true only if a product with this id is known to exist already.
+     */
+    public boolean isExistingProduct(String id) {
+        if (!warm) {
+            return false;
+        }
+        if (!filter.mightContain(id)) {
+            definitelyNew.incrementAndGet();
+            return false;
+        }
+        if (existsInEventStore(id)) {
+            confirmedDuplicates.incrementAndGet();
+            return true;
+        }
+        falsePositives.incrementAndGet();
+        return false;
+    }
+
+    private boolean existsInEventStore(String id) {
+        try {
+            DomainEventStream events = eventStore.readEvents(typeIdentifier, id);
+            return events.hasNext();
+        } catch (EventStreamNotFoundException e) {
+            return false;
+        }
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    public long getDefinitelyNewCount() {
+        return definitelyNew.get();
+    }
+
+    public long getConfirmedDuplicateCount() {
+        return confirmedDuplicates.get();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.get();
+    }
+}
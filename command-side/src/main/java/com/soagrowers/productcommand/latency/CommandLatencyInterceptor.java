@@ -0,0 +1,76 @@
+package com.soagrowers.productcommand.latency;
+
+import org.axonframework.commandhandling.CommandDispatchInterceptor;
+import org.axonframework.commandhandling.CommandHandlerInterceptor;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.InterceptorChain;
+import org.axonframework.domain.AggregateRoot;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Times every command, by command type and by phase, into a CommandLatencyRecorder.
+ * <p/>
+ * As a dispatch interceptor it stamps the command with the time it was dispatched. As a
+ * handler interceptor it times the handler and registers a listener on the unit of work
+ * to time the commit. The aggregate load and the event store append are timed by the
+ * TimedRepository and TimedEventStore, which add to the CommandTiming of the unit of work.
+ * <p/>
+ * Phases that happen outside the unit of work (the append and publish done by the
+ * DisruptorCommandBus's publisher threads) aren't recorded.
+ */
+public class CommandLatencyInterceptor implements CommandDispatchInterceptor, CommandHandlerInterceptor {
+
+    static final String DISPATCHED_AT = "dispatchedAtNanos";
+
+    private final CommandLatencyRecorder recorder;
+
+    public CommandLatencyInterceptor(CommandLatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public CommandMessage<?> handle(CommandMessage<?> commandMessage) {
+        return commandMessage.andMetaData(Collections.singletonMap(DISPATCHED_AT, System.nanoTime()));
+    }
+
+    @Override
+    public Object handle(CommandMessage<?> commandMessage, UnitOfWork unitOfWork, InterceptorChain interceptorChain) throws Throwable {
+        final long start = System.nanoTime();
+        final String commandName = commandMessage.getPayloadType().getSimpleName();
+        final Object dispatched = commandMessage.getMetaData().get(DISPATCHED_AT);
+        final long dispatchedAt = dispatched instanceof Long ? (Long) dispatched : start;
+        recorder.record(commandName, CommandPhase.QUEUE, start - dispatchedAt);
+
+        final CommandTiming timing = new CommandTiming();
+        unitOfWork.attachResource(CommandTiming.RESOURCE_NAME, timing);
+        unitOfWork.registerListener(new UnitOfWorkListenerAdapter() {
+            @Override
+            public void onPrepareCommit(UnitOfWork unitOfWork, Set<AggregateRoot> aggregateRoots, List<EventMessage> events) {
+                timing.prepareCommitAt = System.nanoTime();
+            }
+
+            @Override
+            public void afterCommit(UnitOfWork unitOfWork) {
+                long now = System.nanoTime();
+                if (timing.prepareCommitAt > 0) {
+                    recorder.record(commandName, CommandPhase.APPEND, timing.appendNanos);
+                    recorder.record(commandName, CommandPhase.PUBLISH, now - timing.prepareCommitAt - timing.appendNanos);
+                }
+                recorder.record(commandName, CommandPhase.TOTAL, now - dispatchedAt);
+            }
+        });
+
+        try {
+            return interceptorChain.proceed();
+        } finally {
+            recorder.record(commandName, CommandPhase.LOAD, timing.loadNanos);
+            recorder.record(commandName, CommandPhase.HANDLE, System.nanoTime() - start - timing.loadNanos);
+        }
+    }
+}
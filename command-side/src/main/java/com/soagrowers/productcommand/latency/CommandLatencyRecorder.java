@@ -0,0 +1,90 @@
+package com.soagrowers.productcommand.latency;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds an HdrHistogram Recorder of latencies (in microseconds) for every command type and
+ * phase. Recording is wait-free, so it can be called on the command threads.
+ * <p/>
+ * The latencies are published by interval rather than since the service started: once an
+ * interval has passed, the next snapshot swaps each recorder's histogram for an empty one,
+ * and the swapped out histograms are what every snapshot returns until the next interval
+ * has passed. So a scrape always sees the last complete interval, scrapes within the same
+ * interval see the same numbers, and nothing is copied per scrape.
+ * <p/>
+ * The histograms resize themselves, so they only take the memory their range of values
+ * needs. Two significant digits gives a 1% resolution, which is plenty for percentiles.
+ */
+public class CommandLatencyRecorder {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final ConcurrentMap<String, Map<CommandPhase, Recorder>> recorders = new ConcurrentHashMap<String, Map<CommandPhase, Recorder>>();
+
+    private final long intervalMillis;
+
+    private Map<String, Map<CommandPhase, Histogram>> lastInterval = Collections.emptyMap();
+
+    private long intervalStartMillis = System.currentTimeMillis();
+
+    /**
+     * @param intervalMillis how long each published interval is. 0 starts a new interval on
+     *                       every snapshot.
+     */
+    public CommandLatencyRecorder(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void record(String commandName, CommandPhase phase, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        recordersFor(commandName).get(phase).recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * The returned histograms aren't recorded into any more, so they can be read without copying.
+     *
+     * @return the histograms of the last complete interval, by command name and phase.
+     */
+    public synchronized Map<String, Map<CommandPhase, Histogram>> snapshot() {
+        long now = System.currentTimeMillis();
+        if (now - intervalStartMillis >= intervalMillis) {
+            Map<String, Map<CommandPhase, Histogram>> interval = new TreeMap<String, Map<CommandPhase, Histogram>>();
+            for (Map.Entry<String, Map<CommandPhase, Recorder>> command : recorders.entrySet()) {
+                Map<CommandPhase, Histogram> phases = new EnumMap<CommandPhase, Histogram>(CommandPhase.class);
+                for (Map.Entry<CommandPhase, Recorder> phase : command.getValue().entrySet()) {
+                    phases.put(phase.getKey(), phase.getValue().getIntervalHistogram());
+                }
+                interval.put(command.getKey(), Collections.unmodifiableMap(phases));
+            }
+            lastInterval = Collections.unmodifiableMap(interval);
+            intervalStartMillis = now;
+        }
+        return lastInterval;
+    }
+
+    private Map<CommandPhase, Recorder> recordersFor(String commandName) {
+        Map<CommandPhase, Recorder> phases = recorders.get(commandName);
+        if (null == phases) {
+            phases = new EnumMap<CommandPhase, Recorder>(CommandPhase.class);
+            for (CommandPhase phase : CommandPhase.values()) {
+                phases.put(phase, new Recorder(SIGNIFICANT_DIGITS));
+            }
+            Map<CommandPhase, Recorder> existing = recorders.putIfAbsent(commandName, phases);
+            if (null != existing) {
+                phases = existing;
+            }
+        }
+        return phases;
+    }
+}
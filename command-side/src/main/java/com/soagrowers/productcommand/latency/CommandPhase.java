@@ -0,0 +1,53 @@
+package com.soagrowers.productcommand.latency;
+
+/**
+ * The parts of a command's life that are timed separately.
+ */
+public enum CommandPhase {
+
+    /**
+     * Checking the request parameters in the REST controllers, before the command is
+     * dispatched. Only requests that pass are timed, as a rejected one has no command.
+     */
+    VALIDATE("validate"),
+
+    /**
+     * From dispatch until a handler thread picks the command up.
+     */
+    QUEUE("queue"),
+
+    /**
+     * Loading the aggregate from the cache or the event store.
+     */
+    LOAD("load"),
+
+    /**
+     * The command handler itself, not counting the load.
+     */
+    HANDLE("handle"),
+
+    /**
+     * Appending the new events to the event store.
+     */
+    APPEND("append"),
+
+    /**
+     * Publishing the new events on the event bus (AMQP).
+     */
+    PUBLISH("publish"),
+
+    /**
+     * From dispatch until the unit of work has committed.
+     */
+    TOTAL("total");
+
+    private final String metricName;
+
+    CommandPhase(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
@@ -0,0 +1,28 @@
+package com.soagrowers.productcommand.latency;
+
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+
+/**
+ * The time spent in each phase of one command, attached to the command's unit of work so
+ * that the repository and event store can add to it.
+ */
+class CommandTiming {
+
+    static final String RESOURCE_NAME = CommandTiming.class.getName();
+
+    long loadNanos;
+    long appendNanos;
+    long prepareCommitAt;
+
+    /**
+     * @return the timing of the command being handled on this thread, or null if there is none.
+     */
+    static CommandTiming current() {
+        if (!CurrentUnitOfWork.isStarted()) {
+            return null;
+        }
+        UnitOfWork unitOfWork = CurrentUnitOfWork.get();
+        return unitOfWork.getResource(RESOURCE_NAME);
+    }
+}
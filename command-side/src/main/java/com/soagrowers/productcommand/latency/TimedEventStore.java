@@ -0,0 +1,64 @@
+package com.soagrowers.productcommand.latency;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.SnapshotEventStore;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.CriteriaBuilder;
+import org.axonframework.eventstore.management.EventStoreManagement;
+
+/**
+ * Adds the time taken to append events to the CommandTiming of the current command.
+ * Everything else goes straight to the wrapped event store.
+ */
+public class TimedEventStore implements SnapshotEventStore, EventStoreManagement {
+
+    private final SnapshotEventStore delegate;
+
+    public <S extends SnapshotEventStore & EventStoreManagement> TimedEventStore(S delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void appendEvents(String type, DomainEventStream events) {
+        long start = System.nanoTime();
+        try {
+            delegate.appendEvents(type, events);
+        } finally {
+            CommandTiming timing = CommandTiming.current();
+            if (null != timing) {
+                timing.appendNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    @Override
+    public DomainEventStream readEvents(String type, Object identifier) {
+        return delegate.readEvents(type, identifier);
+    }
+
+    @Override
+    public void appendSnapshotEvent(String type, DomainEventMessage snapshotEvent) {
+        delegate.appendSnapshotEvent(type, snapshotEvent);
+    }
+
+    @Override
+    public void visitEvents(EventVisitor visitor) {
+        management().visitEvents(visitor);
+    }
+
+    @Override
+    public void visitEvents(Criteria criteria, EventVisitor visitor) {
+        management().visitEvents(criteria, visitor);
+    }
+
+    @Override
+    public CriteriaBuilder newCriteriaBuilder() {
+        return management().newCriteriaBuilder();
+    }
+
+    private EventStoreManagement management() {
+        return (EventStoreManagement) delegate;
+    }
+}
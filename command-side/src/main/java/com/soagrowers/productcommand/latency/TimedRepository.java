@@ -0,0 +1,49 @@
+package com.soagrowers.productcommand.latency;
+
+import org.axonframework.repository.Repository;
+
+/**
+ * Adds the time taken to load an aggregate to the CommandTiming of the current command.
+ *
+ * @param <T>
+ */
+public class TimedRepository<T> implements Repository<T> {
+
+    private final Repository<T> delegate;
+
+    public TimedRepository(Repository<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public T load(Object aggregateIdentifier, Long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.load(aggregateIdentifier, expectedVersion);
+        } finally {
+            addLoadTime(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public T load(Object aggregateIdentifier) {
+        long start = System.nanoTime();
+        try {
+            return delegate.load(aggregateIdentifier);
+        } finally {
+            addLoadTime(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void add(T aggregate) {
+        delegate.add(aggregate);
+    }
+
+    private void addLoadTime(long nanos) {
+        CommandTiming timing = CommandTiming.current();
+        if (null != timing) {
+            timing.loadNanos += nanos;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.soagrowers.productcommand.locking;
+
+import org.axonframework.common.lock.IllegalLockUsageException;
+import org.axonframework.domain.AggregateRoot;
+import org.axonframework.repository.LockManager;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pessimistic LockManager that maps every aggregate identifier onto one of a fixed set of
+ * locks (stripes), instead of creating and disposing of a lock per identifier like Axon's
+ * PessimisticLockManager does. There's no shared map to contend on and nothing to clean up,
+ * however many distinct products pass through.
+ * <p/>
+ * Two products that land on the same stripe are serialized with each other, so the stripe
+ * count should be well above the number of command threads. The locks are reentrant, so a
+ * thread can hold two products that share a stripe. Unlike the PessimisticLockManager there's
+ * no deadlock detection, which is fine as long as each command loads a single aggregate.
+ */
+public class StripedLockManager implements LockManager {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes the number of locks, rounded up to a power of two.
+     */
+    public StripedLockManager(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("The number of stripes must be positive: " + stripes);
+        }
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    @Override
+    public boolean validateLock(AggregateRoot aggregate) {
+        Object identifier = aggregate.getIdentifier();
+        return null == identifier || stripeFor(identifier).isHeldByCurrentThread();
+    }
+
+    @Override
+    public void obtainLock(Object aggregateIdentifier) {
+        stripeFor(aggregateIdentifier).lock();
+    }
+
+    @Override
+    public void releaseLock(Object aggregateIdentifier) {
+        ReentrantLock lock = stripeFor(aggregateIdentifier);
+        if (!lock.isHeldByCurrentThread()) {
+            throw new IllegalLockUsageException("No lock for aggregate [" + aggregateIdentifier + "] is held by this thread");
+        }
+        lock.unlock();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Spreads the hash (as HashMap does, plus a multiply) so that ids which differ only in
+     * their high bits don't all share a stripe.
+     */
+    int stripeIndexFor(Object aggregateIdentifier) {
+        int hash = aggregateIdentifier.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private ReentrantLock stripeFor(Object aggregateIdentifier) {
+        return stripes[stripeIndexFor(aggregateIdentifier)];
+    }
+}
@@ -0,0 +1,54 @@
+package com.soagrowers.productcommand.locking;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.axonframework.domain.AggregateRoot;
+import org.axonframework.repository.LockManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each obtainLock call takes (in microseconds) before handing over to the
+ * wrapped LockManager. An uncontended lock shows up as a zero, so the upper percentiles are
+ * where lock contention between commands becomes visible.
+ * <p/>
+ * Wraps any LockManager, so the default and the striped lock managers can be compared on
+ * the same numbers.
+ */
+public class TimedLockManager implements LockManager {
+
+    private final LockManager delegate;
+    private final Histogram waitMicros = new ConcurrentHistogram(2);
+
+    public TimedLockManager(LockManager delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean validateLock(AggregateRoot aggregate) {
+        return delegate.validateLock(aggregate);
+    }
+
+    @Override
+    public void obtainLock(Object aggregateIdentifier) {
+        long start = System.nanoTime();
+        delegate.obtainLock(aggregateIdentifier);
+        waitMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    @Override
+    public void releaseLock(Object aggregateIdentifier) {
+        delegate.releaseLock(aggregateIdentifier);
+    }
+
+    public LockManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return a copy of the lock wait times so far, in microseconds.
+     */
+    public Histogram getWaitMicros() {
+        return waitMicros.copy();
+    }
+}
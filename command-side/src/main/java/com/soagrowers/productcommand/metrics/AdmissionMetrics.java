@@ -0,0 +1,35 @@
+package com.soagrowers.productcommand.metrics;
+
+import com.soagrowers.productcommand.admission.AdmissionController;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the admission controller's current limit, the commands in flight and how many
+ * commands have been accepted and rejected on the actuator's /metrics endpoint.
+ */
+public class AdmissionMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "admission.";
+
+    private final AdmissionController admissionController;
+
+    public AdmissionMetrics(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>(PREFIX + "limit", admissionController.getLimit()));
+        metrics.add(new Metric<Integer>(PREFIX + "inFlight", admissionController.getInFlight()));
+        metrics.add(new Metric<Long>(PREFIX + "noLoadLatencyMicros", admissionController.getNoLoadLatencyMicros()));
+        metrics.add(new Metric<Long>(PREFIX + "accepted", admissionController.getAcceptedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "rejected", admissionController.getRejectedCount()));
+        return metrics;
+    }
+}
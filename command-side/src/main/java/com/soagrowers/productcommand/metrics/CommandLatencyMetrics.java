@@ -0,0 +1,50 @@
+package com.soagrowers.productcommand.metrics;
+
+import com.soagrowers.productcommand.latency.CommandLatencyRecorder;
+import com.soagrowers.productcommand.latency.CommandPhase;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes the command latency percentiles on the actuator's /metrics endpoint, as
+ * commands.{CommandName}.{phase}.{count|mean|p50|p90|p99|p999|max}. Latencies are
+ * in microseconds, and cover the last complete interval (see CommandLatencyRecorder).
+ */
+public class CommandLatencyMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "commands.";
+
+    private final CommandLatencyRecorder recorder;
+
+    public CommandLatencyMetrics(CommandLatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        for (Map.Entry<String, Map<CommandPhase, Histogram>> command : recorder.snapshot().entrySet()) {
+            for (Map.Entry<CommandPhase, Histogram> phase : command.getValue().entrySet()) {
+                Histogram histogram = phase.getValue();
+                if (histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                String name = PREFIX + command.getKey() + "." + phase.getKey().getMetricName() + ".";
+                metrics.add(new Metric<Long>(name + "count", histogram.getTotalCount()));
+                metrics.add(new Metric<Double>(name + "mean", histogram.getMean()));
+                metrics.add(new Metric<Long>(name + "p50", histogram.getValueAtPercentile(50)));
+                metrics.add(new Metric<Long>(name + "p90", histogram.getValueAtPercentile(90)));
+                metrics.add(new Metric<Long>(name + "p99", histogram.getValueAtPercentile(99)));
+                metrics.add(new Metric<Long>(name + "p999", histogram.getValueAtPercentile(99.9)));
+                metrics.add(new Metric<Long>(name + "max", histogram.getMaxValue()));
+            }
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,35 @@
+package com.soagrowers.productcommand.metrics;
+
+import com.soagrowers.productcommand.idempotency.CommandDeduplicator;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes how many keyed commands were dispatched and how many repeats were answered from
+ * the idempotency store on the actuator's /metrics endpoint.
+ */
+public class IdempotencyMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "idempotency.";
+
+    private final CommandDeduplicator deduplicator;
+
+    public IdempotencyMetrics(CommandDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Long>(PREFIX + "keys", deduplicator.getStore().size()));
+        metrics.add(new Metric<Long>(PREFIX + "executed", deduplicator.getExecutedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "replayed", deduplicator.getReplayedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "inProgressElsewhere", deduplicator.getInProgressElsewhereCount()));
+        metrics.add(new Metric<Long>(PREFIX + "mismatched", deduplicator.getMismatchedCount()));
+        return metrics;
+    }
+}
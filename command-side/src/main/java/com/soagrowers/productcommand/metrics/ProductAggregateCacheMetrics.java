@@ -0,0 +1,38 @@
+package com.soagrowers.productcommand.metrics;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.statistics.StatisticsGateway;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the statistics of the ProductAggregate cache on the actuator's /metrics endpoint
+ * so that the hit rate of the cache can be watched while it's in production.
+ */
+public class ProductAggregateCacheMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "cache.productAggregates.";
+
+    private final Ehcache cache;
+
+    public ProductAggregateCacheMetrics(Ehcache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        StatisticsGateway statistics = cache.getStatistics();
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Long>(PREFIX + "size", statistics.getSize()));
+        metrics.add(new Metric<Long>(PREFIX + "hits", statistics.cacheHitCount()));
+        metrics.add(new Metric<Long>(PREFIX + "misses", statistics.cacheMissCount()));
+        metrics.add(new Metric<Long>(PREFIX + "evictions", statistics.cacheEvictedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "expirations", statistics.cacheExpiredCount()));
+        metrics.add(new Metric<Long>(PREFIX + "removals", statistics.cacheRemoveCount()));
+        return metrics;
+    }
+}
@@ -0,0 +1,39 @@
+package com.soagrowers.productcommand.metrics;
+
+import com.soagrowers.productcommand.index.BloomFilter;
+import com.soagrowers.productcommand.index.ProductIdIndex;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the state of the product id index on the actuator's /metrics endpoint. A rising
+ * expectedFalsePositiveRate means the index is fuller than it was sized for.
+ */
+public class ProductIdIndexMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "index.productIds.";
+
+    private final ProductIdIndex index;
+
+    public ProductIdIndexMetrics(ProductIdIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        BloomFilter filter = index.getFilter();
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>(PREFIX + "warm", index.isWarm() ? 1 : 0));
+        metrics.add(new Metric<Long>(PREFIX + "ids", filter.getInsertions()));
+        metrics.add(new Metric<Long>(PREFIX + "bits", filter.getBitCount()));
+        metrics.add(new Metric<Double>(PREFIX + "expectedFalsePositiveRate", filter.getExpectedFalsePositiveRate()));
+        metrics.add(new Metric<Long>(PREFIX + "definitelyNew", index.getDefinitelyNewCount()));
+        metrics.add(new Metric<Long>(PREFIX + "confirmedDuplicates", index.getConfirmedDuplicateCount()));
+        metrics.add(new Metric<Long>(PREFIX + "falsePositives", index.getFalsePositiveCount()));
+        return metrics;
+    }
+}
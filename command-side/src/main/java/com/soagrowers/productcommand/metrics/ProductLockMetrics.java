@@ -0,0 +1,43 @@
+package com.soagrowers.productcommand.metrics;
+
+import com.soagrowers.productcommand.locking.StripedLockManager;
+import com.soagrowers.productcommand.locking.TimedLockManager;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes how long commands wait for the product aggregate locks (in microseconds) on
+ * the actuator's /metrics endpoint. With the striped lock manager, the number of stripes
+ * is published too.
+ */
+public class ProductLockMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "locks.productAggregates.";
+
+    private final TimedLockManager lockManager;
+
+    public ProductLockMetrics(TimedLockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Histogram wait = lockManager.getWaitMicros();
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        if (lockManager.getDelegate() instanceof StripedLockManager) {
+            metrics.add(new Metric<Integer>(PREFIX + "stripes", ((StripedLockManager) lockManager.getDelegate()).getStripeCount()));
+        }
+        metrics.add(new Metric<Long>(PREFIX + "acquisitions", wait.getTotalCount()));
+        metrics.add(new Metric<Double>(PREFIX + "wait.mean", wait.getMean()));
+        metrics.add(new Metric<Long>(PREFIX + "wait.p50", wait.getValueAtPercentile(50)));
+        metrics.add(new Metric<Long>(PREFIX + "wait.p99", wait.getValueAtPercentile(99)));
+        metrics.add(new Metric<Long>(PREFIX + "wait.p999", wait.getValueAtPercentile(99.9)));
+        metrics.add(new Metric<Long>(PREFIX + "wait.max", wait.getMaxValue()));
+        return metrics;
+    }
+}
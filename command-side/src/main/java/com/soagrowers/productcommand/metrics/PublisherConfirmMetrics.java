@@ -0,0 +1,40 @@
+package com.soagrowers.productcommand.metrics;
+
+import com.soagrowers.productcommand.amqp.PublisherConfirmAMQPTerminal;
+import org.axonframework.eventhandling.EventBusTerminal;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the publisher-confirm counters of the event terminal on the actuator's /metrics endpoint.
+ * Nothing is published while the terminal is running in transactional mode.
+ */
+public class PublisherConfirmMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "amqp.publisher.";
+
+    private final EventBusTerminal eventBusTerminal;
+
+    public PublisherConfirmMetrics(EventBusTerminal eventBusTerminal) {
+        this.eventBusTerminal = eventBusTerminal;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        if (!(eventBusTerminal instanceof PublisherConfirmAMQPTerminal)) {
+            return metrics;
+        }
+
+        PublisherConfirmAMQPTerminal terminal = (PublisherConfirmAMQPTerminal) eventBusTerminal;
+        metrics.add(new Metric<Integer>(PREFIX + "outstanding", terminal.getOutstandingConfirms()));
+        metrics.add(new Metric<Long>(PREFIX + "confirmed", terminal.getConfirmedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "nacked", terminal.getNackedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "failed", terminal.getFailedCount()));
+        return metrics;
+    }
+}
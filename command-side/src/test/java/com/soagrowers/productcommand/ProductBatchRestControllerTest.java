@@ -0,0 +1,149 @@
+package com.soagrowers.productcommand;
+
+import com.soagrowers.productcommand.batch.ProductBatchEntry;
+import com.soagrowers.productcommand.batch.ProductBatchResult;
+import com.soagrowers.productcommand.commands.MarkProductAsUnsaleableCommand;
+import com.soagrowers.productcommand.commands.AddProductCommand;
+import com.soagrowers.productcommand.index.DuplicateProductException;
+import com.soagrowers.productcommand.latency.CommandLatencyRecorder;
+import com.soagrowers.productcommand.latency.CommandPhase;
+import com.soagrowers.utils.Asserts;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.repository.ConcurrencyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ProductBatchRestControllerTest {
+
+    ProductBatchRestController controller;
+
+    @Mock
+    CommandGateway gateway;
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        Asserts.INSTANCE.setAssertsTo(true);
+        controller = new ProductBatchRestController();
+        controller.commandGateway = gateway;
+        controller.batchDispatchExecutor = executor;
+        controller.commandLatencyRecorder = new CommandLatencyRecorder(0);
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Object command = invocation.getArguments()[0];
+                CommandCallback<Object> callback = (CommandCallback<Object>) invocation.getArguments()[1];
+                if (command instanceof MarkProductAsUnsaleableCommand) {
+                    callback.onFailure(new ConcurrencyException("Conflict"));
+                } else if (command instanceof AddProductCommand && "product-5".equals(((AddProductCommand) command).getId())) {
+                    callback.onFailure(new DuplicateProductException("product-5"));
+                } else {
+                    callback.onSuccess(null);
+                }
+                return null;
+            }
+        }).when(gateway).send(any(), any(CommandCallback.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBatchReturnsOneStatusPerEntryInOrder() throws Exception {
+        List<ProductBatchEntry> entries = Arrays.asList(
+                new ProductBatchEntry(ProductBatchEntry.ADD, "product-1", "product name"),
+                new ProductBatchEntry(ProductBatchEntry.SALEABLE, "product-1", null),
+                new ProductBatchEntry(ProductBatchEntry.UNSALEABLE, "product-2", null),
+                new ProductBatchEntry(ProductBatchEntry.ADD, "product-3", ""),
+                new ProductBatchEntry("delete", "product-4", null),
+                new ProductBatchEntry(ProductBatchEntry.ADD, "product-5", "known product"));
+
+        ResponseEntity<List<ProductBatchResult>> response = controller.batch(entries).get();
+
+        verify(gateway, times(4)).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<ProductBatchResult> results = response.getBody();
+        assertEquals(6, results.size());
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertEquals(HttpStatus.OK.value(), results.get(1).getStatus());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(2).getStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(3).getStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(4).getStatus());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(5).getStatus());
+        assertEquals("product-3", results.get(3).getId());
+        assertEquals(2, controller.commandLatencyRecorder.snapshot()
+                .get("AddProductCommand").get(CommandPhase.VALIDATE).getTotalCount());
+    }
+
+    @Test
+    public void testNullEntriesAreBadRequests() throws Exception {
+        List<ProductBatchEntry> entries = Arrays.asList(
+                new ProductBatchEntry(ProductBatchEntry.SALEABLE, "product-1", null),
+                null,
+                new ProductBatchEntry(ProductBatchEntry.ADD, "product-3", "product name"));
+
+        ResponseEntity<List<ProductBatchResult>> response = controller.batch(entries).get();
+
+        verify(gateway, times(2)).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<ProductBatchResult> results = response.getBody();
+        assertEquals(3, results.size());
+        assertEquals(HttpStatus.OK.value(), results.get(0).getStatus());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(1).getStatus());
+        assertNull(results.get(1).getId());
+        assertEquals(HttpStatus.CREATED.value(), results.get(2).getStatus());
+    }
+
+    @Test
+    public void testOversizedBatchIsRejected() throws Exception {
+        controller.maxBatchSize = 1;
+        List<ProductBatchEntry> entries = new ArrayList<ProductBatchEntry>(Collections.nCopies(2,
+                new ProductBatchEntry(ProductBatchEntry.SALEABLE, "product-1", null)));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, controller.batch(entries).get().getStatusCode());
+    }
+
+    @Test
+    public void testMissingBatchIsABadRequest() throws Exception {
+        assertEquals(HttpStatus.BAD_REQUEST, controller.batch(null).get().getStatusCode());
+    }
+
+    @Test
+    public void testEntriesTheExecutorRejectsAreUnavailable() throws Exception {
+        executor.shutdownNow();
+        List<ProductBatchEntry> entries = Collections.singletonList(
+                new ProductBatchEntry(ProductBatchEntry.SALEABLE, "product-1", null));
+
+        ResponseEntity<List<ProductBatchResult>> response = controller.batch(entries).get();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getBody().get(0).getStatus());
+        assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+    }
+}
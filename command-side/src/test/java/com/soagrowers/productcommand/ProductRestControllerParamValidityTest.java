@@ -1,21 +1,34 @@
 package com.soagrowers.productcommand;
 
+import com.soagrowers.productcommand.admission.AdmissionRejectedException;
+import com.soagrowers.productcommand.idempotency.CommandDeduplicator;
+import com.soagrowers.productcommand.idempotency.InMemoryIdempotencyStore;
+import com.soagrowers.productcommand.index.DuplicateProductException;
+import com.soagrowers.productcommand.latency.CommandLatencyRecorder;
 import com.soagrowers.utils.Asserts;
+import org.axonframework.commandhandling.CommandCallback;
 import org.axonframework.commandhandling.CommandExecutionException;
 import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.repository.ConcurrencyException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.mock.web.MockHttpServletResponse;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
-import javax.servlet.http.HttpServletResponse;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
 /**
  * Created by ben on 02/03/16.
@@ -23,7 +36,6 @@ import static org.mockito.Mockito.when;
 public class ProductRestControllerParamValidityTest {
 
     ProductRestController controller;
-    MockHttpServletResponse mockHttpServletResponse;
 
     @Mock
     CommandGateway gateway;
@@ -33,65 +45,152 @@ public class ProductRestControllerParamValidityTest {
         MockitoAnnotations.initMocks(this);
         Asserts.INSTANCE.setAssertsTo(true);
         controller = new ProductRestController();
-        mockHttpServletResponse = new MockHttpServletResponse();
+        controller.commandDeduplicator = new CommandDeduplicator(new InMemoryIdempotencyStore(100, 60000));
+        controller.commandLatencyRecorder = new CommandLatencyRecorder(0);
     }
 
     @Test
-    public void testAddWithGoodRequestParams() {
+    public void testAddWithGoodRequestParams() throws Exception {
         // Arrange
         controller.commandGateway = gateway; //cheating a bit here, but mocking all the axon framework's beans is a pain.
-        when(gateway.sendAndWait(any())).thenReturn(null);
+        callbackWith(null);
 
         //Act
-        controller.add(UUID.randomUUID().toString(), "Test Add Product", mockHttpServletResponse);
+        CompletableFuture<ResponseEntity<Void>> result = controller.add(UUID.randomUUID().toString(), "Test Add Product", null);
 
         //Assert
-        verify(gateway).sendAndWait(any());
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_CREATED);
+        verify(gateway).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.CREATED, result.get().getStatusCode());
     }
 
     @Test
-    public void testFailedAddWithAssertionError() {
+    public void testAddOfAKnownProductIsAConflict() throws Exception {
+        // Arrange
+        controller.commandGateway = gateway;
+        callbackWith(new DuplicateProductException("known"));
+
+        //Act
+        CompletableFuture<ResponseEntity<Void>> result = controller.add("known", "Test Add Product", null);
+
+        //Assert
+        assertEquals(HttpStatus.CONFLICT, result.get().getStatusCode());
+    }
+
+    @Test
+    public void testFailedAddWithAssertionError() throws Exception {
         // Arrange
         controller.commandGateway = gateway; //cheating a bit here, but mocking all the axon framework's beans is a pain.
-        when(gateway.sendAndWait(any())).thenThrow(AssertionError.class);
+        callbackWith(new AssertionError());
 
         //Act
-        controller.add(UUID.randomUUID().toString(), "Test Add Product", mockHttpServletResponse);
+        CompletableFuture<ResponseEntity<Void>> result = controller.add(UUID.randomUUID().toString(), "Test Add Product", null);
 
         //Assert
-        verify(gateway).sendAndWait(any());
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_BAD_REQUEST);
+        verify(gateway).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.BAD_REQUEST, result.get().getStatusCode());
     }
 
     @Test
-    public void testFailedAddWithCommandExecutionException() {
+    public void testFailedAddWithCommandExecutionException() throws Exception {
         // Arrange
         controller.commandGateway = gateway; //cheating a bit here, but mocking all the axon framework's beans is a pain.
-        when(gateway.sendAndWait(any())).thenThrow(CommandExecutionException.class);
+        callbackWith(new CommandExecutionException("Failed", null));
 
         //Act
-        controller.add(UUID.randomUUID().toString(), "Test Add Product", mockHttpServletResponse);
+        CompletableFuture<ResponseEntity<Void>> result = controller.add(UUID.randomUUID().toString(), "Test Add Product", null);
 
         //Assert
-        verify(gateway).sendAndWait(any());
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_BAD_REQUEST);
+        verify(gateway).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.BAD_REQUEST, result.get().getStatusCode());
     }
 
     @Test
-    public void testAddWithBadRequestParams() {
+    public void testFailedAddWithConcurrencyException() throws Exception {
+        // Arrange
+        controller.commandGateway = gateway; //cheating a bit here, but mocking all the axon framework's beans is a pain.
+        callbackWith(new ConcurrencyException("Duplicate"));
 
-        controller.add(null, null, mockHttpServletResponse);
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_BAD_REQUEST);
+        //Act
+        CompletableFuture<ResponseEntity<Void>> result = controller.add(UUID.randomUUID().toString(), "Test Add Product", null);
+
+        //Assert
+        verify(gateway).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.CONFLICT, result.get().getStatusCode());
+    }
+
+    @Test
+    public void testRetriedAddWithTheSameIdempotencyKeyIsOnlyDispatchedOnce() throws Exception {
+        // Arrange
+        controller.commandGateway = gateway;
+        callbackWith(null);
+        String id = UUID.randomUUID().toString();
 
-        controller.add(UUID.randomUUID().toString(), null, new MockHttpServletResponse());
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_BAD_REQUEST);
+        //Act
+        CompletableFuture<ResponseEntity<Void>> first = controller.add(id, "Test Add Product", "key-1");
+        CompletableFuture<ResponseEntity<Void>> retry = controller.add(id, "Test Add Product", "key-1");
+        CompletableFuture<ResponseEntity<Void>> reused = controller.add(id, "Another Product", "key-1");
 
-        controller.add(UUID.randomUUID().toString(), "", new MockHttpServletResponse());
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_BAD_REQUEST);
+        //Assert
+        verify(gateway, times(1)).send(any(), any(CommandCallback.class));
+        assertEquals(HttpStatus.CREATED, first.get().getStatusCode());
+        assertEquals(HttpStatus.CREATED, retry.get().getStatusCode());
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.get().getStatusCode());
+    }
 
-        controller.add("", "", new MockHttpServletResponse());
-        assertTrue(mockHttpServletResponse.getStatus() == HttpServletResponse.SC_BAD_REQUEST);
+    @Test
+    public void testRejectedAddIsA503WithRetryAfter() throws Exception {
+        // Arrange
+        controller.commandGateway = gateway;
+        callbackWith(new AdmissionRejectedException(1));
+
+        //Act
+        ResponseEntity<Void> result = controller.add(UUID.randomUUID().toString(), "Test Add Product", "key-2").get();
+
+        //Assert
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, result.getStatusCode());
+        assertEquals("1", result.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(0, controller.commandDeduplicator.getStore().size());
+    }
+
+    @Test
+    public void testAddIsNotCompletedUntilTheCallbackFires() {
+        // Arrange
+        controller.commandGateway = gateway; //the mock never calls back
+
+        //Act
+        CompletableFuture<ResponseEntity<Void>> result = controller.add(UUID.randomUUID().toString(), "Test Add Product", null);
+
+        //Assert
+        verify(gateway).send(any(), any(CommandCallback.class));
+        assertFalse(result.isDone());
+    }
+
+    @Test
+    public void testAddWithBadRequestParams() throws Exception {
+
+        assertEquals(HttpStatus.BAD_REQUEST, controller.add(null, null, null).get().getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.add(UUID.randomUUID().toString(), null, null).get().getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.add(UUID.randomUUID().toString(), "", null).get().getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.add("", "", null).get().getStatusCode());
+    }
 
+    /**
+     * Makes the mocked gateway complete the command's callback straight away,
+     * either successfully (null) or with the given failure.
+     */
+    @SuppressWarnings("unchecked")
+    private void callbackWith(final Throwable failure) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                CommandCallback<Object> callback = (CommandCallback<Object>) invocation.getArguments()[1];
+                if (null == failure) {
+                    callback.onSuccess(null);
+                } else {
+                    callback.onFailure(failure);
+                }
+                return null;
+            }
+        }).when(gateway).send(any(), any(CommandCallback.class));
     }
 }
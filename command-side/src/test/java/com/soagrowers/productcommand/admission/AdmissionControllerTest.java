@@ -0,0 +1,106 @@
+package com.soagrowers.productcommand.admission;
+
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testCommandsOverTheLimitAreRejected() {
+        AdmissionController controller = new AdmissionController(2, 1, 10, 2.0);
+
+        AdmissionController.Permit first = controller.tryAcquire();
+        AdmissionController.Permit second = controller.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(controller.tryAcquire());
+        assertEquals(1, controller.getRejectedCount());
+
+        first.release();
+        first.release();
+        assertEquals(1, controller.getInFlight());
+        assertNotNull(controller.tryAcquire());
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyStaysLow() {
+        AdmissionController controller = new AdmissionController(4, 1, 100, 1000.0, 0.5, 1000);
+
+        for (int round = 0; round < 50; round++) {
+            List<AdmissionController.Permit> permits = new ArrayList<AdmissionController.Permit>();
+            AdmissionController.Permit permit;
+            while (null != (permit = controller.tryAcquire())) {
+                permits.add(permit);
+            }
+            for (AdmissionController.Permit acquired : permits) {
+                acquired.release();
+            }
+        }
+        assertTrue("Limit: " + controller.getLimit(), controller.getLimit() > 4);
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyRises() {
+        AdmissionController controller = new AdmissionController(8, 2, 100, 1.5, 0.5, 1000);
+        controller.onSample(1000, 1);
+        assertEquals(1, controller.getNoLoadLatencyMicros());
+
+        // at most one backoff per round of 'limit' samples
+        for (int i = 0; i < 6; i++) {
+            controller.onSample(10000, 1);
+        }
+        assertEquals(8, controller.getLimit());
+        controller.onSample(10000, 1);
+        assertEquals(4, controller.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            controller.onSample(10000, 1);
+        }
+        assertEquals(2, controller.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            controller.onSample(10000, 1);
+        }
+        assertEquals(2, controller.getLimit());
+    }
+
+    @Test
+    public void testLatencyWithinToleranceDoesNotShrinkTheLimit() {
+        AdmissionController controller = new AdmissionController(8, 2, 100, 1.5, 0.5, 1000);
+        controller.onSample(1000, 1);
+        for (int i = 0; i < 20; i++) {
+            controller.onSample(1400, 1);
+        }
+        assertEquals(8, controller.getLimit());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGatewayFailsRejectedCommandsWithoutSendingThem() throws Exception {
+        CommandGateway delegate = mock(CommandGateway.class);
+        AdmissionController controller = new AdmissionController(1, 1, 1, 2.0);
+        AdmissionControlledCommandGateway gateway = new AdmissionControlledCommandGateway(delegate, controller);
+
+        gateway.send("first", new FutureCallback<Object>());
+        FutureCallback<Object> rejected = new FutureCallback<Object>();
+        gateway.send("second", rejected);
+
+        verify(delegate, times(1)).send(any(), any(CommandCallback.class));
+        assertTrue(rejected.isDone());
+        try {
+            rejected.getResult();
+            fail("Expected the command to be rejected");
+        } catch (AdmissionRejectedException e) {
+            assertEquals(1, controller.getInFlight());
+        }
+    }
+}
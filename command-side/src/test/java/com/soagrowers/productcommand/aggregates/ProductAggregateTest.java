@@ -7,6 +7,10 @@ import com.soagrowers.productevents.events.AbstractEvent;
 import com.soagrowers.productevents.events.ProductAddedEvent;
 import com.soagrowers.productevents.events.ProductSaleableEvent;
 import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.json.JacksonSerializer;
 import org.axonframework.test.FixtureConfiguration;
 import org.axonframework.test.Fixtures;
 import org.junit.Before;
@@ -15,6 +19,9 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Created by Ben on 07/08/2015.
  */
@@ -63,4 +70,21 @@ public class ProductAggregateTest {
                 .when(new MarkProductAsUnsaleableCommand("product-3"))
                 .expectException(IllegalStateException.class);
     }
+
+    @Test
+    public void testSnapshotSerializationKeepsState() throws Exception {
+        ProductAggregate aggregate = new ProductAggregate();
+        aggregate.initializeState(new SimpleDomainEventStream(
+                new GenericDomainEventMessage<ProductAddedEvent>("product-4", 0, new ProductAddedEvent("product-4", "product name")),
+                new GenericDomainEventMessage<ProductSaleableEvent>("product-4", 1, new ProductSaleableEvent("product-4"))));
+
+        JacksonSerializer serializer = new JacksonSerializer();
+        SerializedObject<String> snapshot = serializer.serialize(aggregate, String.class);
+        ProductAggregate restored = serializer.deserialize(snapshot);
+
+        assertEquals("product-4", restored.getId());
+        assertEquals("product name", restored.getName());
+        assertTrue(restored.isSaleable());
+        assertEquals(0, restored.getUncommittedEventCount());
+    }
 }
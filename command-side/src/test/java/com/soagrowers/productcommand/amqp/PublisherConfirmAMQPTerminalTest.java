@@ -0,0 +1,156 @@
+package com.soagrowers.productcommand.amqp;
+
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericEventMessage;
+import org.axonframework.eventhandling.EventBusTerminal;
+import org.axonframework.eventhandling.amqp.AMQPMessage;
+import org.axonframework.eventhandling.amqp.AMQPMessageConverter;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PublisherConfirmAMQPTerminalTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Mock
+    RabbitTemplate rabbitTemplate;
+
+    @Mock
+    AMQPMessageConverter converter;
+
+    @Mock
+    EventBusTerminal consumerTerminal;
+
+    PublisherConfirmAMQPTerminal terminal;
+    RabbitTemplate.ConfirmCallback confirmCallback;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(converter.createAMQPMessage(any(EventMessage.class))).thenReturn(new AMQPMessage(new byte[]{1}, "key"));
+        terminal = new PublisherConfirmAMQPTerminal(consumerTerminal, rabbitTemplate, converter, "exchange", 1, DIRECT);
+        terminal.setMaxRetries(2);
+        terminal.setWindowTimeoutMillis(10);
+        terminal.setConfirmTimeoutMillis(10);
+
+        ArgumentCaptor<RabbitTemplate.ConfirmCallback> callback = ArgumentCaptor.forClass(RabbitTemplate.ConfirmCallback.class);
+        verify(rabbitTemplate).setConfirmCallback(callback.capture());
+        confirmCallback = callback.getValue();
+    }
+
+    @Test
+    public void testPublishReturnsOnceConfirmed() {
+        brokerAnswers(true);
+        terminal.publish(event(), event());
+
+        assertEquals(0, terminal.getOutstandingConfirms());
+        assertEquals(2, terminal.getConfirmedCount());
+    }
+
+    @Test
+    public void testNackIsRetried() {
+        brokerAnswers(false, true);
+        terminal.publish(event());
+
+        lastCorrelation(2);
+        assertEquals(1, terminal.getNackedCount());
+        assertEquals(1, terminal.getConfirmedCount());
+        assertEquals(0, terminal.getFailedCount());
+    }
+
+    @Test
+    public void testPublishFailsWhenNackedOnEveryAttempt() {
+        brokerAnswers(false, false);
+        try {
+            terminal.publish(event());
+            fail("A message nacked on every attempt should fail the publish");
+        } catch (AmqpException e) {
+            assertEquals(0, terminal.getOutstandingConfirms());
+            assertEquals(2, terminal.getNackedCount());
+            assertEquals(1, terminal.getFailedCount());
+        }
+    }
+
+    @Test
+    public void testPublishFailsWhenNotConfirmedInTime() {
+        try {
+            terminal.publish(event());
+            fail("An unconfirmed message should fail the publish");
+        } catch (AmqpException e) {
+            assertEquals(0, terminal.getOutstandingConfirms());
+            assertEquals(1, terminal.getFailedCount());
+        }
+
+        confirmCallback.confirm(lastCorrelation(1), true, null);
+        assertEquals(0, terminal.getConfirmedCount());
+
+        brokerAnswers(true);
+        terminal.publish(event());
+        assertEquals(1, terminal.getConfirmedCount());
+    }
+
+    @Test
+    public void testFullWindowTimesOut() {
+        terminal.setConfirmTimeoutMillis(1000);
+        try {
+            terminal.publish(event(), event());
+            fail("The second message should not get into a window of 1");
+        } catch (AmqpException e) {
+            assertEquals(0, terminal.getOutstandingConfirms());
+            assertEquals(0, terminal.getFailedCount());
+        }
+    }
+
+    /**
+     * Makes the broker confirm each message as it is sent, with the given acks in turn.
+     */
+    private void brokerAnswers(final boolean... acks) {
+        final AtomicInteger sends = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                int send = Math.min(sends.getAndIncrement(), acks.length - 1);
+                confirmCallback.confirm((CorrelationData) invocation.getArguments()[3], acks[send], acks[send] ? null : "nack");
+                return null;
+            }
+        }).when(rabbitTemplate).send(eq("exchange"), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private CorrelationData lastCorrelation(int sends) {
+        ArgumentCaptor<CorrelationData> correlation = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(sends)).send(eq("exchange"), anyString(), any(Message.class), correlation.capture());
+        return correlation.getValue();
+    }
+
+    private EventMessage event() {
+        return new GenericEventMessage<ProductSaleableEvent>(new ProductSaleableEvent("product-1"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.soagrowers.productcommand.eventstore;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.mongo.DocumentPerEventStorageStrategy;
+import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.axonframework.repository.ConcurrencyException;
+import org.axonframework.serializer.json.JacksonSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.*;
+
+public class BulkAppendMongoEventStoreTest {
+
+    @Mock
+    MongoTemplate template;
+
+    @Mock
+    DBCollection collection;
+
+    @Mock
+    BulkWriteOperation bulk;
+
+    BulkAppendMongoEventStore eventStore;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(template.domainEventCollection()).thenReturn(collection);
+        when(collection.initializeOrderedBulkOperation()).thenReturn(bulk);
+        eventStore = new BulkAppendMongoEventStore(template, new JacksonSerializer(), new DocumentPerEventStorageStrategy());
+    }
+
+    private SimpleDomainEventStream events(int count) {
+        GenericDomainEventMessage<?>[] messages = new GenericDomainEventMessage<?>[count];
+        messages[0] = new GenericDomainEventMessage<Object>("product-1", 0, new ProductAddedEvent("product-1", "name"));
+        for (int i = 1; i < count; i++) {
+            messages[i] = new GenericDomainEventMessage<Object>("product-1", i, new ProductSaleableEvent("product-1"));
+        }
+        return new SimpleDomainEventStream(messages);
+    }
+
+    @Test
+    public void testSingleEventIsAPlainInsert() {
+        eventStore.appendEvents("ProductAggregate", events(1));
+
+        verify(collection).insert((DBObject[]) anyVararg());
+        verify(collection, never()).initializeOrderedBulkOperation();
+    }
+
+    @Test
+    public void testEventsOfOneUnitOfWorkGoInOneBulkInsert() {
+        eventStore.appendEvents("ProductAggregate", events(3));
+
+        verify(bulk, times(3)).insert(any(DBObject.class));
+        verify(bulk).execute();
+        verify(collection, never()).insert((DBObject[]) anyVararg());
+    }
+
+    @Test
+    public void testDuplicateInBatchIsAConcurrencyException() {
+        BulkWriteException duplicate = mock(BulkWriteException.class);
+        when(duplicate.getWriteErrors()).thenReturn(Arrays.asList(new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 0)));
+        when(bulk.execute()).thenThrow(duplicate);
+
+        try {
+            eventStore.appendEvents("ProductAggregate", events(3));
+            fail("Expected a ConcurrencyException");
+        } catch (ConcurrencyException e) {
+            verify(collection, never()).remove(any(DBObject.class));
+        }
+    }
+
+    @Test
+    public void testOtherBulkWriteErrorsAreRethrown() {
+        BulkWriteException invalid = mock(BulkWriteException.class);
+        when(invalid.getWriteErrors()).thenReturn(Arrays.asList(new BulkWriteError(2, "bad value", new BasicDBObject(), 1)));
+        when(bulk.execute()).thenThrow(invalid);
+
+        try {
+            eventStore.appendEvents("ProductAggregate", events(3));
+            fail("Expected the BulkWriteException");
+        } catch (BulkWriteException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriteConcernProfilesByName() {
+        assertEquals(WriteConcernProfile.MAJORITY, WriteConcernProfile.forName("majority"));
+        try {
+            WriteConcernProfile.forName("unacknowledged");
+            fail("Unacknowledged writes can't detect concurrent changes");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.soagrowers.productcommand.idempotency;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class CommandDeduplicatorTest {
+
+    InMemoryIdempotencyStore store;
+    CommandDeduplicator deduplicator;
+    AtomicInteger dispatched;
+    CompletableFuture<HttpStatus> pending;
+
+    @Before
+    public void setup() {
+        store = new InMemoryIdempotencyStore(2, 60000);
+        deduplicator = new CommandDeduplicator(store);
+        dispatched = new AtomicInteger();
+        pending = new CompletableFuture<HttpStatus>();
+    }
+
+    private Supplier<CompletableFuture<HttpStatus>> command() {
+        return new Supplier<CompletableFuture<HttpStatus>>() {
+            @Override
+            public CompletableFuture<HttpStatus> get() {
+                dispatched.incrementAndGet();
+                return pending;
+            }
+        };
+    }
+
+    @Test
+    public void testRepeatWhileInProgressWaitsForTheFirstAttempt() throws Exception {
+        CompletableFuture<HttpStatus> first = deduplicator.execute("key", "add:1", command());
+        CompletableFuture<HttpStatus> repeat = deduplicator.execute("key", "add:1", command());
+        assertFalse(repeat.isDone());
+
+        pending.complete(HttpStatus.CREATED);
+
+        assertEquals(1, dispatched.get());
+        assertEquals(HttpStatus.CREATED, first.get());
+        assertEquals(HttpStatus.CREATED, repeat.get());
+        assertEquals(HttpStatus.CREATED, deduplicator.execute("key", "add:1", command()).get());
+        assertEquals(1, dispatched.get());
+        assertEquals(2, deduplicator.getReplayedCount());
+    }
+
+    @Test
+    public void testRequestsWithoutAKeyAreAlwaysDispatched() {
+        pending.complete(HttpStatus.CREATED);
+        deduplicator.execute(null, "add:1", command());
+        deduplicator.execute("", "add:1", command());
+        assertEquals(2, dispatched.get());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testKeyInProgressOnAnotherInstanceIsAConflict() throws Exception {
+        store.putIfAbsent("key", IdempotencyRecord.pending("add:1"));
+        assertEquals(HttpStatus.CONFLICT, deduplicator.execute("key", "add:1", command()).get());
+        assertEquals(0, dispatched.get());
+    }
+
+    @Test
+    public void testFailedAttemptReleasesTheKey() {
+        pending.completeExceptionally(new IllegalStateException("Boom"));
+        assertTrue(deduplicator.execute("key", "add:1", command()).isCompletedExceptionally());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testDispatchThatThrowsReleasesTheKey() throws Exception {
+        CompletableFuture<HttpStatus> failed = deduplicator.execute("key", "add:1", new Supplier<CompletableFuture<HttpStatus>>() {
+            @Override
+            public CompletableFuture<HttpStatus> get() {
+                throw new IllegalStateException("Event store unavailable");
+            }
+        });
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, store.size());
+
+        pending.complete(HttpStatus.CREATED);
+        assertEquals(HttpStatus.CREATED, deduplicator.execute("key", "add:1", command()).get());
+        assertEquals(1, dispatched.get());
+    }
+
+    @Test
+    public void testStoreIsBoundedAndExpiresKeys() {
+        store.putIfAbsent("a", IdempotencyRecord.pending("a"));
+        store.putIfAbsent("b", IdempotencyRecord.pending("b"));
+        store.putIfAbsent("c", IdempotencyRecord.pending("c"));
+        assertEquals(2, store.size());
+        assertNull(store.putIfAbsent("a", IdempotencyRecord.pending("a")));
+
+        InMemoryIdempotencyStore expiring = new InMemoryIdempotencyStore(10, 0);
+        expiring.putIfAbsent("a", IdempotencyRecord.pending("a"));
+        assertNull(expiring.putIfAbsent("a", IdempotencyRecord.pending("a")));
+    }
+}
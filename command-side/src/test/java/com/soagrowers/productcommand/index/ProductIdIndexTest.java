@@ -0,0 +1,168 @@
+package com.soagrowers.productcommand.index;
+
+import com.soagrowers.productcommand.commands.AddProductCommand;
+import com.soagrowers.productcommand.commands.MarkProductAsSaleableCommand;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.commandhandling.gateway.CommandGateway;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.EventStore;
+import org.axonframework.eventstore.EventStreamNotFoundException;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.CriteriaBuilder;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.axonframework.eventstore.management.Property;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ProductIdIndexTest {
+
+    @Mock
+    EventStore eventStore;
+
+    @Mock
+    EventStoreManagement management;
+
+    @Mock
+    CriteriaBuilder criteriaBuilder;
+
+    @Mock
+    Property sequenceNumber;
+
+    @Mock
+    Criteria firstEvents;
+
+    ProductIdIndex index;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        index = new ProductIdIndex(new BloomFilter(1000, 0.01), eventStore, "ProductAggregate");
+
+        when(management.newCriteriaBuilder()).thenReturn(criteriaBuilder);
+        when(criteriaBuilder.property(ProductIdIndex.SEQUENCE_NUMBER)).thenReturn(sequenceNumber);
+        when(sequenceNumber.is(0L)).thenReturn(firstEvents);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                EventVisitor visitor = (EventVisitor) invocation.getArguments()[1];
+                visitor.doWithEvent(new GenericDomainEventMessage<Object>("stored-1", 0, "added"));
+                visitor.doWithEvent(new GenericDomainEventMessage<Object>("stored-2", 0, "added"));
+                return null;
+            }
+        }).when(management).visitEvents(eq(firstEvents), any(EventVisitor.class));
+
+        doThrow(new EventStreamNotFoundException("ProductAggregate", "none")).when(eventStore).readEvents(anyString(), any());
+        doReturn(new SimpleDomainEventStream(new GenericDomainEventMessage<Object>("stored-1", 0, "added")))
+                .when(eventStore).readEvents("ProductAggregate", "stored-1");
+    }
+
+    @Test
+    public void testColdIndexTreatsEveryIdAsNew() {
+        index.add("stored-1");
+        assertFalse(index.isExistingProduct("stored-1"));
+        verifyZeroInteractions(eventStore);
+    }
+
+    @Test
+    public void testWarmedIndexConfirmsDuplicatesWithTheEventStore() {
+        index.warm(management);
+
+        assertTrue(index.isWarm());
+        verify(management, never()).visitEvents(any(EventVisitor.class));
+        assertEquals(2, index.getFilter().getInsertions());
+        assertTrue(index.isExistingProduct("stored-1"));
+        assertEquals(1, index.getConfirmedDuplicateCount());
+    }
+
+    @Test
+    public void testNewIdsSkipTheEventStore() {
+        index.warm(management);
+
+        assertFalse(index.isExistingProduct("new-product"));
+        assertEquals(1, index.getDefinitelyNewCount());
+        verify(eventStore, never()).readEvents(anyString(), any());
+    }
+
+    @Test
+    public void testFalsePositivesAreNotReportedAsDuplicates() {
+        index.warm(management);
+        index.add("added-but-not-stored");
+
+        assertFalse(index.isExistingProduct("added-but-not-stored"));
+        assertEquals(1, index.getFalsePositiveCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGatewayRejectsKnownIdsWithoutSendingThem() {
+        CommandGateway delegate = mock(CommandGateway.class);
+        ProductIdCheckingCommandGateway gateway = new ProductIdCheckingCommandGateway(delegate, index);
+        index.warm(management);
+
+        FutureCallback<Object> rejected = new FutureCallback<Object>();
+        gateway.send(new AddProductCommand("stored-1", "name"), rejected);
+
+        verify(delegate, never()).send(any(), any(CommandCallback.class));
+        try {
+            rejected.getResult();
+            fail("Expected the command to be rejected");
+        } catch (DuplicateProductException e) {
+            assertEquals(1, index.getConfirmedDuplicateCount());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGatewayIndexesIdsOnceTheyAreAdded() {
+        CommandGateway delegate = mock(CommandGateway.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((CommandCallback<Object>) invocation.getArguments()[1]).onSuccess(null);
+                return null;
+            }
+        }).when(delegate).send(any(), any(CommandCallback.class));
+        ProductIdCheckingCommandGateway gateway = new ProductIdCheckingCommandGateway(delegate, index);
+        index.warm(management);
+
+        gateway.send(new AddProductCommand("new-product", "name"), new FutureCallback<Object>());
+        gateway.send(new MarkProductAsSaleableCommand("other-product"), new FutureCallback<Object>());
+
+        verify(delegate, times(2)).send(any(), any(CommandCallback.class));
+        assertTrue(index.getFilter().mightContain("new-product"));
+        assertFalse(index.getFilter().mightContain("other-product"));
+    }
+
+    @Test
+    public void testBloomFilterHasNoFalseNegativesAndStaysNearItsRate() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("product-" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("product-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain("product-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 200);
+        assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+    }
+}
@@ -0,0 +1,98 @@
+package com.soagrowers.productcommand.latency;
+
+import com.soagrowers.productcommand.commands.MarkProductAsSaleableCommand;
+import com.soagrowers.productcommand.metrics.CommandLatencyMetrics;
+import org.HdrHistogram.Histogram;
+import org.axonframework.commandhandling.CommandDispatchInterceptor;
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.CommandHandlerInterceptor;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.callbacks.FutureCallback;
+import org.axonframework.repository.Repository;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.axonframework.commandhandling.GenericCommandMessage.asCommandMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class CommandLatencyInterceptorTest {
+
+    CommandLatencyRecorder recorder;
+    SimpleCommandBus commandBus;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        recorder = new CommandLatencyRecorder(0);
+        CommandLatencyInterceptor interceptor = new CommandLatencyInterceptor(recorder);
+        commandBus = new SimpleCommandBus();
+        commandBus.setDispatchInterceptors(Collections.<CommandDispatchInterceptor>singletonList(interceptor));
+        commandBus.setHandlerInterceptors(Collections.<CommandHandlerInterceptor>singletonList(interceptor));
+
+        final Repository<Object> repository = new TimedRepository<Object>(mock(Repository.class));
+        commandBus.subscribe(MarkProductAsSaleableCommand.class.getName(), new CommandHandler<Object>() {
+            @Override
+            public Object handle(CommandMessage<Object> commandMessage, UnitOfWork unitOfWork) throws Throwable {
+                repository.load("product-1");
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testEveryPhaseIsRecordedPerCommandType() throws Exception {
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        commandBus.dispatch(asCommandMessage(new MarkProductAsSaleableCommand("product-1")), callback);
+        callback.get();
+
+        Map<CommandPhase, Histogram> phases = recorder.snapshot().get("MarkProductAsSaleableCommand");
+        for (CommandPhase phase : CommandPhase.values()) {
+            if (CommandPhase.VALIDATE != phase) {
+                assertEquals(phase.name(), 1, phases.get(phase).getTotalCount());
+            }
+        }
+    }
+
+    @Test
+    public void testEachSnapshotOnlyCoversTheLastInterval() throws Exception {
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        commandBus.dispatch(asCommandMessage(new MarkProductAsSaleableCommand("product-1")), callback);
+        callback.get();
+        assertEquals(1, recorder.snapshot().get("MarkProductAsSaleableCommand").get(CommandPhase.TOTAL).getTotalCount());
+
+        assertEquals(0, recorder.snapshot().get("MarkProductAsSaleableCommand").get(CommandPhase.TOTAL).getTotalCount());
+    }
+
+    @Test
+    public void testSnapshotsWithinAnIntervalAreTheSame() throws Exception {
+        recorder = new CommandLatencyRecorder(60000);
+        recorder.record("MarkProductAsSaleableCommand", CommandPhase.TOTAL, 1000);
+
+        assertTrue(recorder.snapshot().isEmpty());
+        assertTrue(recorder.snapshot().isEmpty());
+    }
+
+    @Test
+    public void testPercentilesArePublishedOnTheActuator() throws Exception {
+        FutureCallback<Object> callback = new FutureCallback<Object>();
+        commandBus.dispatch(asCommandMessage(new MarkProductAsSaleableCommand("product-1")), callback);
+        callback.get();
+
+        Set<String> names = new HashSet<String>();
+        for (Metric<?> metric : new CommandLatencyMetrics(recorder).metrics()) {
+            names.add(metric.getName());
+        }
+        assertTrue(names.contains("commands.MarkProductAsSaleableCommand.total.p99"));
+        assertTrue(names.contains("commands.MarkProductAsSaleableCommand.load.p999"));
+    }
+}
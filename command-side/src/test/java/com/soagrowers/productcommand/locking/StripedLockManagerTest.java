@@ -0,0 +1,92 @@
+package com.soagrowers.productcommand.locking;
+
+import org.axonframework.common.lock.IllegalLockUsageException;
+import org.axonframework.domain.AggregateRoot;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StripedLockManagerTest {
+
+    @Test
+    public void testStripeCountIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new StripedLockManager(1).getStripeCount());
+        assertEquals(8, new StripedLockManager(5).getStripeCount());
+        assertEquals(1024, new StripedLockManager(1024).getStripeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStripesMustBePositive() {
+        new StripedLockManager(0);
+    }
+
+    @Test
+    public void testLockIsValidOnlyWhileHeld() {
+        StripedLockManager lockManager = new StripedLockManager(16);
+        String id = UUID.randomUUID().toString();
+        AggregateRoot aggregate = mock(AggregateRoot.class);
+        when(aggregate.getIdentifier()).thenReturn(id);
+
+        assertFalse(lockManager.validateLock(aggregate));
+        lockManager.obtainLock(id);
+        assertTrue(lockManager.validateLock(aggregate));
+        lockManager.releaseLock(id);
+        assertFalse(lockManager.validateLock(aggregate));
+    }
+
+    @Test
+    public void testProductsOnTheSameStripeCanBeHeldTogether() {
+        StripedLockManager lockManager = new StripedLockManager(1);
+
+        lockManager.obtainLock("product-1");
+        lockManager.obtainLock("product-2");
+        lockManager.releaseLock("product-2");
+        lockManager.releaseLock("product-1");
+    }
+
+    @Test(expected = IllegalLockUsageException.class)
+    public void testReleasingALockThatIsNotHeldFails() {
+        new StripedLockManager(16).releaseLock("product-1");
+    }
+
+    @Test
+    public void testAnotherThreadWaitsForTheStripe() throws Exception {
+        final StripedLockManager lockManager = new StripedLockManager(1);
+        final TimedLockManager timed = new TimedLockManager(lockManager);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final AtomicBoolean waited = new AtomicBoolean();
+
+        timed.obtainLock("product-1");
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                timed.obtainLock("product-2");
+                waited.set(true);
+                locked.countDown();
+                timed.releaseLock("product-2");
+            }
+        });
+        other.start();
+        while (Thread.State.WAITING != other.getState()) {
+            Thread.sleep(1);
+        }
+
+        assertFalse(locked.await(50, TimeUnit.MILLISECONDS));
+        timed.releaseLock("product-1");
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        other.join();
+
+        assertTrue(waited.get());
+        assertEquals(2, timed.getWaitMicros().getTotalCount());
+        assertTrue(timed.getWaitMicros().getMaxValue() >= TimeUnit.MILLISECONDS.toMicros(50));
+    }
+}
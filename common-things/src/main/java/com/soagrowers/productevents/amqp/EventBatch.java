@@ -0,0 +1,30 @@
+package com.soagrowers.productevents.amqp;
+
+import org.axonframework.domain.EventMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of events that travel to the consumers as a single AMQP message. An EventBatch
+ * only ever exists in memory: the EventBatchAMQPMessageConverter packs it into a
+ * compressed envelope, and the EventBatchUnpackingCluster hands the events it contains
+ * to the event listeners one by one.
+ */
+public class EventBatch {
+
+    private final List<EventMessage<?>> events;
+
+    public EventBatch(List<? extends EventMessage<?>> events) {
+        this.events = Collections.unmodifiableList(new ArrayList<EventMessage<?>>(events));
+    }
+
+    public List<EventMessage<?>> getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return events.size();
+    }
+}
@@ -0,0 +1,160 @@
+package com.soagrowers.productevents.amqp;
+
+import com.rabbitmq.client.AMQP;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericEventMessage;
+import org.axonframework.eventhandling.amqp.AMQPMessage;
+import org.axonframework.eventhandling.amqp.AMQPMessageConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An AMQPMessageConverter that understands EventBatch messages. A batch is written as one
+ * gzip compressed envelope holding the headers and body of each event, exactly as the
+ * delegate converter would have produced them. Any other message is passed straight
+ * through to the delegate, so a consumer using this converter reads both kinds.
+ */
+public class EventBatchAMQPMessageConverter implements AMQPMessageConverter {
+
+    public static final String BATCH_SIZE_HEADER = "x-event-batch-size";
+    private static final String GZIP = "gzip";
+
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte INTEGER = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte NULL = 4;
+
+    private final AMQPMessageConverter delegate;
+
+    public EventBatchAMQPMessageConverter(AMQPMessageConverter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public AMQPMessage createAMQPMessage(EventMessage eventMessage) {
+        if (!(eventMessage.getPayload() instanceof EventBatch)) {
+            return delegate.createAMQPMessage(eventMessage);
+        }
+
+        EventBatch batch = (EventBatch) eventMessage.getPayload();
+        AMQPMessage first = null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+            out.writeInt(batch.size());
+            for (EventMessage<?> event : batch.getEvents()) {
+                AMQPMessage message = delegate.createAMQPMessage(event);
+                if (null == first) {
+                    first = message;
+                }
+                writeHeaders(out, null == message.getProperties() ? null : message.getProperties().getHeaders());
+                out.writeInt(message.getBody().length);
+                out.write(message.getBody());
+            }
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write an event batch", e);
+        }
+
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put(BATCH_SIZE_HEADER, batch.size());
+        AMQP.BasicProperties.Builder properties = new AMQP.BasicProperties.Builder()
+                .messageId(UUID.randomUUID().toString())
+                .contentEncoding(GZIP)
+                .headers(headers);
+        if (null != first && null != first.getProperties()) {
+            properties.deliveryMode(first.getProperties().getDeliveryMode());
+        }
+        return new AMQPMessage(bytes.toByteArray(), null == first ? null : first.getRoutingKey(),
+                properties.build(), false, false);
+    }
+
+    @Override
+    public EventMessage readAMQPMessage(byte[] messageBody, Map<String, Object> headers) {
+        if (null == headers || !headers.containsKey(BATCH_SIZE_HEADER)) {
+            return delegate.readAMQPMessage(messageBody, headers);
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(messageBody)));
+            int size = in.readInt();
+            List<EventMessage<?>> events = new ArrayList<EventMessage<?>>(size);
+            for (int i = 0; i < size; i++) {
+                Map<String, Object> eventHeaders = readHeaders(in);
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                events.add(delegate.readAMQPMessage(body, eventHeaders));
+            }
+            in.close();
+            return new GenericEventMessage<EventBatch>(new EventBatch(events));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read an event batch", e);
+        }
+    }
+
+    private void writeHeaders(DataOutputStream out, Map<String, Object> headers) throws IOException {
+        if (null == headers) {
+            out.writeInt(0);
+            return;
+        }
+
+        out.writeInt(headers.size());
+        for (Map.Entry<String, Object> header : headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            Object value = header.getValue();
+            if (null == value) {
+                out.writeByte(NULL);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                out.writeByte(STRING);
+                out.writeUTF(value.toString());
+            }
+        }
+    }
+
+    private Map<String, Object> readHeaders(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> headers = new HashMap<String, Object>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            switch (type) {
+                case NULL:
+                    headers.put(key, null);
+                    break;
+                case LONG:
+                    headers.put(key, in.readLong());
+                    break;
+                case INTEGER:
+                    headers.put(key, in.readInt());
+                    break;
+                case BOOLEAN:
+                    headers.put(key, in.readBoolean());
+                    break;
+                default:
+                    headers.put(key, in.readUTF());
+            }
+        }
+        return headers;
+    }
+}
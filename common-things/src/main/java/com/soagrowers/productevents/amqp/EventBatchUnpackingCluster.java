@@ -0,0 +1,73 @@
+package com.soagrowers.productevents.amqp;
+
+import org.axonframework.domain.EventMessage;
+import org.axonframework.eventhandling.Cluster;
+import org.axonframework.eventhandling.ClusterMetaData;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.EventProcessingMonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wraps a Cluster so that its listeners never see an EventBatch. Each batch is replaced by
+ * the events it contains, in their original order, before the events are published to
+ * the wrapped cluster.
+ */
+public class EventBatchUnpackingCluster implements Cluster {
+
+    private final Cluster delegate;
+
+    public EventBatchUnpackingCluster(Cluster delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void publish(EventMessage... events) {
+        List<EventMessage> unpacked = new ArrayList<EventMessage>(events.length);
+        for (EventMessage event : events) {
+            if (event.getPayload() instanceof EventBatch) {
+                unpacked.addAll(((EventBatch) event.getPayload()).getEvents());
+            } else {
+                unpacked.add(event);
+            }
+        }
+        delegate.publish(unpacked.toArray(new EventMessage[unpacked.size()]));
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void subscribe(EventListener eventListener) {
+        delegate.subscribe(eventListener);
+    }
+
+    @Override
+    public void unsubscribe(EventListener eventListener) {
+        delegate.unsubscribe(eventListener);
+    }
+
+    @Override
+    public Set<EventListener> getMembers() {
+        return delegate.getMembers();
+    }
+
+    @Override
+    public ClusterMetaData getMetaData() {
+        return delegate.getMetaData();
+    }
+
+    @Override
+    public void subscribeEventProcessingMonitor(EventProcessingMonitor monitor) {
+        delegate.subscribeEventProcessingMonitor(monitor);
+    }
+
+    @Override
+    public void unsubscribeEventProcessingMonitor(EventProcessingMonitor monitor) {
+        delegate.unsubscribeEventProcessingMonitor(monitor);
+    }
+}
@@ -0,0 +1,237 @@
+package com.soagrowers.productevents.serializer;
+
+import com.soagrowers.productevents.events.AbstractEvent;
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import org.axonframework.serializer.ConverterFactory;
+import org.axonframework.serializer.SerializationException;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SerializedType;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.axonframework.serializer.SimpleSerializedType;
+import org.axonframework.serializer.UnknownSerializedTypeException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Serializer that writes the product events in a compact binary form: a short type tag
+ * instead of the class name, and varint-length prefixed UTF-8 strings instead of JSON.
+ * <p/>
+ * Compact payloads carry the revision {@link #REVISION}, and the payload starts with a
+ * format version byte. Anything without that revision (old JSON events, meta-data,
+ * aggregate snapshots) is handed to the fallback serializer, so existing events can still
+ * be read. With 'writeCompact' set to false this serializer only reads the compact
+ * form, which lets consumers be upgraded before the producers start writing it.
+ * <p/>
+ * byte[] is the native representation. When a String is asked for (as the Mongo event
+ * store does) the bytes are Base64 encoded.
+ */
+public class CompactEventSerializer implements Serializer {
+
+    public static final String REVISION = "compact-1";
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final String ADDED = "pa";
+    private static final String SALEABLE = "ps";
+    private static final String UNSALEABLE = "pu";
+
+    private static final Map<Class<?>, String> TAGS = new HashMap<Class<?>, String>();
+    private static final Map<String, Class<?>> CLASSES = new HashMap<String, Class<?>>();
+
+    static {
+        register(ProductAddedEvent.class, ADDED);
+        register(ProductSaleableEvent.class, SALEABLE);
+        register(ProductUnsaleableEvent.class, UNSALEABLE);
+    }
+
+    private final Serializer fallback;
+    private final boolean writeCompact;
+
+    public CompactEventSerializer(Serializer fallback) {
+        this(fallback, true);
+    }
+
+    public CompactEventSerializer(Serializer fallback, boolean writeCompact) {
+        this.fallback = fallback;
+        this.writeCompact = writeCompact;
+    }
+
+    private static void register(Class<?> type, String tag) {
+        TAGS.put(type, tag);
+        CLASSES.put(tag, type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+        String tag = null == object ? null : TAGS.get(object.getClass());
+        if (!writeCompact || null == tag) {
+            return fallback.serialize(object, expectedRepresentation);
+        }
+
+        byte[] bytes = write(tag, (AbstractEvent) object);
+        T data;
+        if (byte[].class.equals(expectedRepresentation)) {
+            data = (T) bytes;
+        } else if (String.class.equals(expectedRepresentation)) {
+            data = (T) Base64.getEncoder().encodeToString(bytes);
+        } else {
+            data = getConverterFactory().getConverter(byte[].class, expectedRepresentation).convert(bytes);
+        }
+        return new SimpleSerializedObject<T>(data, expectedRepresentation, new SimpleSerializedType(tag, REVISION));
+    }
+
+    @Override
+    public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+        boolean compactCan = byte[].class.equals(expectedRepresentation)
+                || String.class.equals(expectedRepresentation)
+                || getConverterFactory().hasConverter(byte[].class, expectedRepresentation);
+        return compactCan && fallback.canSerializeTo(expectedRepresentation);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+        if (!isCompact(serializedObject.getType())) {
+            return fallback.deserialize(serializedObject);
+        }
+
+        byte[] bytes;
+        if (String.class.equals(serializedObject.getContentType())) {
+            bytes = Base64.getDecoder().decode((String) serializedObject.getData());
+        } else if (byte[].class.equals(serializedObject.getContentType())) {
+            bytes = (byte[]) serializedObject.getData();
+        } else {
+            bytes = getConverterFactory().getConverter(serializedObject.getContentType(), byte[].class)
+                    .convert(serializedObject).getData();
+        }
+        return (T) read(serializedObject.getType(), bytes);
+    }
+
+    @Override
+    public Class classForType(SerializedType type) throws UnknownSerializedTypeException {
+        if (isCompact(type)) {
+            return CLASSES.get(type.getName());
+        }
+        return fallback.classForType(type);
+    }
+
+    @Override
+    public SerializedType typeForClass(Class type) {
+        String tag = TAGS.get(type);
+        if (!writeCompact || null == tag) {
+            return fallback.typeForClass(type);
+        }
+        return new SimpleSerializedType(tag, REVISION);
+    }
+
+    @Override
+    public ConverterFactory getConverterFactory() {
+        return fallback.getConverterFactory();
+    }
+
+    private boolean isCompact(SerializedType type) {
+        return REVISION.equals(type.getRevision()) && CLASSES.containsKey(type.getName());
+    }
+
+    private byte[] write(String tag, AbstractEvent event) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(FORMAT_VERSION);
+        writeString(out, event.getId());
+        if (ADDED.equals(tag)) {
+            writeString(out, ((ProductAddedEvent) event).getName());
+        }
+        return out.toByteArray();
+    }
+
+    private Object read(SerializedType type, byte[] bytes) {
+        Reader in = new Reader(bytes);
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new SerializationException("Unsupported compact event format version " + version + " for " + type);
+        }
+
+        String id = in.readString();
+        String tag = type.getName();
+        if (ADDED.equals(tag)) {
+            return new ProductAddedEvent(id, in.readString());
+        } else if (SALEABLE.equals(tag)) {
+            return new ProductSaleableEvent(id);
+        } else if (UNSALEABLE.equals(tag)) {
+            return new ProductUnsaleableEvent(id);
+        }
+        throw new UnknownSerializedTypeException(type);
+    }
+
+    /**
+     * Strings are written as a varint holding (length + 1), or 0 for null, followed by
+     * the UTF-8 bytes.
+     */
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (null == value) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf8.length + 1);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private byte readByte() {
+            if (position >= bytes.length) {
+                throw new SerializationException("Compact event is truncated");
+            }
+            return bytes[position++];
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Compact event has a malformed length");
+        }
+
+        private String readString() {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (length > bytes.length - position) {
+                throw new SerializationException("Compact event is truncated");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
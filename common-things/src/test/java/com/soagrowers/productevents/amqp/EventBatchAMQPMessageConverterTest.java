@@ -0,0 +1,86 @@
+package com.soagrowers.productevents.amqp;
+
+import com.rabbitmq.client.AMQP;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericEventMessage;
+import org.axonframework.eventhandling.amqp.AMQPMessage;
+import org.axonframework.eventhandling.amqp.AMQPMessageConverter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EventBatchAMQPMessageConverterTest {
+
+    private EventBatchAMQPMessageConverter converter;
+
+    @Before
+    public void setup() {
+        converter = new EventBatchAMQPMessageConverter(new IdOnlyConverter());
+    }
+
+    @Test
+    public void testSingleEventsPassThrough() {
+        AMQPMessage message = converter.createAMQPMessage(event("product-1", 1L));
+
+        assertNull(message.getProperties().getContentEncoding());
+        EventMessage read = converter.readAMQPMessage(message.getBody(), message.getProperties().getHeaders());
+        assertEquals("product-1", ((ProductSaleableEvent) read.getPayload()).getId());
+    }
+
+    @Test
+    public void testBatchRoundTrip() {
+        List<EventMessage<?>> events = new ArrayList<EventMessage<?>>();
+        for (long i = 0; i < 100; i++) {
+            events.add(event("product-" + i, i));
+        }
+
+        AMQPMessage message = converter.createAMQPMessage(new GenericEventMessage<EventBatch>(new EventBatch(events)));
+        assertEquals("gzip", message.getProperties().getContentEncoding());
+        assertEquals(100, message.getProperties().getHeaders().get(EventBatchAMQPMessageConverter.BATCH_SIZE_HEADER));
+
+        EventMessage read = converter.readAMQPMessage(message.getBody(), message.getProperties().getHeaders());
+        EventBatch batch = (EventBatch) read.getPayload();
+        assertEquals(100, batch.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("product-" + i, ((ProductSaleableEvent) batch.getEvents().get(i).getPayload()).getId());
+            assertEquals((long) i, batch.getEvents().get(i).getMetaData().get("seq"));
+        }
+    }
+
+    private EventMessage<?> event(String id, long seq) {
+        Map<String, Object> metaData = new HashMap<String, Object>();
+        metaData.put("seq", seq);
+        return new GenericEventMessage<ProductSaleableEvent>(new ProductSaleableEvent(id), metaData);
+    }
+
+    /**
+     * Writes the product id as the body and the 'seq' metadata as a header.
+     */
+    private static class IdOnlyConverter implements AMQPMessageConverter {
+
+        @Override
+        public AMQPMessage createAMQPMessage(EventMessage eventMessage) {
+            Map<String, Object> headers = new HashMap<String, Object>();
+            headers.put("seq", eventMessage.getMetaData().get("seq"));
+            String id = ((ProductSaleableEvent) eventMessage.getPayload()).getId();
+            return new AMQPMessage(id.getBytes(StandardCharsets.UTF_8), "key",
+                    new AMQP.BasicProperties.Builder().headers(headers).build(), false, false);
+        }
+
+        @Override
+        public EventMessage readAMQPMessage(byte[] messageBody, Map<String, Object> headers) {
+            Map<String, Object> metaData = new HashMap<String, Object>();
+            metaData.put("seq", headers.get("seq"));
+            return new GenericEventMessage<ProductSaleableEvent>(
+                    new ProductSaleableEvent(new String(messageBody, StandardCharsets.UTF_8)), metaData);
+        }
+    }
+}
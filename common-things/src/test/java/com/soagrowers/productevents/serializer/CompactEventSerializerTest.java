@@ -0,0 +1,71 @@
+package com.soagrowers.productevents.serializer;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.json.JacksonSerializer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactEventSerializerTest {
+
+    private JacksonSerializer json;
+    private CompactEventSerializer serializer;
+
+    @Before
+    public void setup() {
+        json = new JacksonSerializer();
+        serializer = new CompactEventSerializer(json);
+    }
+
+    @Test
+    public void testProductAddedEventRoundTrip() {
+        SerializedObject<byte[]> bytes = serializer.serialize(new ProductAddedEvent("product-1", "Ünïcödé name"), byte[].class);
+        assertEquals(CompactEventSerializer.REVISION, bytes.getType().getRevision());
+        assertEquals(ProductAddedEvent.class, serializer.classForType(bytes.getType()));
+
+        ProductAddedEvent event = serializer.deserialize(bytes);
+        assertEquals("product-1", event.getId());
+        assertEquals("Ünïcödé name", event.getName());
+    }
+
+    @Test
+    public void testStringRepresentationRoundTrip() {
+        SerializedObject<String> text = serializer.serialize(new ProductUnsaleableEvent("product-2"), String.class);
+        ProductUnsaleableEvent event = serializer.deserialize(text);
+        assertEquals("product-2", event.getId());
+
+        SerializedObject<String> nullName = serializer.serialize(new ProductAddedEvent("product-3", null), String.class);
+        assertNull(((ProductAddedEvent) serializer.deserialize(nullName)).getName());
+    }
+
+    @Test
+    public void testCompactIsSmallerThanJson() {
+        ProductAddedEvent event = new ProductAddedEvent("6f1c8f4e-5a0b-4b7c-9a8e-1d2f3a4b5c6d", "Everything Is Awesome");
+        SerializedObject<byte[]> compact = serializer.serialize(event, byte[].class);
+        SerializedObject<byte[]> legacy = json.serialize(event, byte[].class);
+
+        assertTrue(compact.getData().length < legacy.getData().length);
+        assertTrue(compact.getType().getName().length() < legacy.getType().getName().length());
+    }
+
+    @Test
+    public void testOldJsonEventsStillDeserialize() {
+        SerializedObject<String> legacy = json.serialize(new ProductSaleableEvent("product-4"), String.class);
+        ProductSaleableEvent event = serializer.deserialize(legacy);
+        assertEquals("product-4", event.getId());
+    }
+
+    @Test
+    public void testReadOnlyModeWritesJsonButReadsCompact() {
+        CompactEventSerializer readOnly = new CompactEventSerializer(json, false);
+        SerializedObject<byte[]> written = readOnly.serialize(new ProductSaleableEvent("product-5"), byte[].class);
+        assertNull(written.getType().getRevision());
+
+        SerializedObject<byte[]> compact = serializer.serialize(new ProductSaleableEvent("product-5"), byte[].class);
+        assertEquals("product-5", ((ProductSaleableEvent) readOnly.deserialize(compact)).getId());
+    }
+}
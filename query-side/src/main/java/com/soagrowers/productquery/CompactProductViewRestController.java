@@ -0,0 +1,133 @@
+package com.soagrowers.productquery;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soagrowers.productquery.compact.CompactProductView;
+import com.soagrowers.productquery.replay.ReplayProgress;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers the product queries from the CompactProductView: a product by id, the number of
+ * saleable (or unsaleable) products, and the list of them. The list is written straight
+ * from the view to the response with a JsonGenerator, so a catalogue of millions of
+ * products is never held as objects. Each request thread keeps one Row (a chunk of copied
+ * products) and reuses it, so a request doesn't allocate one either.
+ * <p/>
+ * Everything is a 404 while 'spring.application.compactView' is off, and a 503 until the
+ * view has been loaded from the database view, or while a replay is running (see
+ * CompactViewConfiguration).
+ */
+@RestController
+@RequestMapping("/compact/products")
+public class CompactProductViewRestController {
+
+    @Autowired
+    CompactProductView compactProductView;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ReplayProgress replayProgress;
+
+    @Value("${spring.application.compactView:false}")
+    boolean enabled;
+
+    private final ThreadLocal<CompactProductView.Row> rows = new ThreadLocal<CompactProductView.Row>() {
+        @Override
+        protected CompactProductView.Row initialValue() {
+            return new CompactProductView.Row();
+        }
+    };
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+    public void findOne(@PathVariable("id") String id, HttpServletResponse response) throws IOException {
+        if (unavailable(response)) {
+            return;
+        }
+        CompactProductView.Row row = rows.get();
+        if (!compactProductView.find(id, row)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        try (JsonGenerator json = jsonGenerator(response)) {
+            write(row, json);
+        }
+    }
+
+    @RequestMapping(value = "/count", method = RequestMethod.GET)
+    public void count(@RequestParam("saleable") boolean saleable, HttpServletResponse response) throws IOException {
+        if (unavailable(response)) {
+            return;
+        }
+        try (JsonGenerator json = jsonGenerator(response)) {
+            json.writeNumber(compactProductView.count(saleable));
+        }
+    }
+
+    @RequestMapping(value = "/search/findBySaleable", method = RequestMethod.GET)
+    public void findBySaleable(@RequestParam("saleable") boolean saleable, HttpServletResponse response) throws IOException {
+        if (unavailable(response)) {
+            return;
+        }
+        try (final JsonGenerator json = jsonGenerator(response)) {
+            json.writeStartArray();
+            compactProductView.forEach(saleable, rows.get(), new CompactProductView.Visitor() {
+                @Override
+                public void visit(CompactProductView.Row row) throws IOException {
+                    write(row, json);
+                }
+            });
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * Answers with a 404 if the view is off, or a 503 if it isn't ready yet.
+     *
+     * @param response
+     * @return true if the request has been answered.
+     */
+    private boolean unavailable(HttpServletResponse response) throws IOException {
+        if (!enabled) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return true;
+        }
+        if (!compactProductView.isLoaded() || ReplayProgress.State.RUNNING == replayProgress.getState()) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return true;
+        }
+        return false;
+    }
+
+    private JsonGenerator jsonGenerator(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        return objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+    }
+
+    private static void write(CompactProductView.Row row, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeFieldName("id");
+        json.writeString(row.getChars(), row.getIdOffset(), row.getIdLength());
+        json.writeFieldName("name");
+        if (row.hasName()) {
+            json.writeString(row.getChars(), row.getNameOffset(), row.getNameLength());
+        } else {
+            json.writeNull();
+        }
+        json.writeBooleanField("saleable", row.isSaleable());
+        json.writeEndObject();
+    }
+}
@@ -0,0 +1,227 @@
+package com.soagrowers.productquery;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The product queries as plain JSON, without the HAL links and wrappers that Spring Data
+ * REST renders on /products (which stays, for clients that navigate by links). A product
+ * is just {"id": ..., "name": ..., "saleable": ...}, written with a JsonGenerator.
+ * <ul>
+ * <li>/lean/products/{id}: one product.</li>
+ * <li>/lean/products?ids=a,b,c: the products with those ids, in that order. Unknown ids are
+ * left out. At most 'spring.application.leanMaxIds' ids per request.</li>
+ * <li>/lean/products/search/findBySaleable?saleable=true: the saleable (or unsaleable)
+ * products.</li>
+ * </ul>
+ * The queries go through the ProductRepository, so they are served from the
+ * ProductReadCache where they can be.
+ * <p/>
+ * Single products and multi-gets are written into a buffer that each request thread
+ * keeps and reuses, and sent with a Content-Length. A saleable list is loaded whole (it
+ * is cached that way) and written straight to the response, without the buffer. To walk
+ * a catalogue too big to load, page through /products/search/saleableFirst and
+ * saleableAfter, or use /export/products. If the client accepts gzip, responses of
+ * 'spring.application.leanGzipMinBytes' or more (and all the lists) are gzipped.
+ */
+@RestController
+@RequestMapping("/lean/products")
+public class LeanProductRestController {
+
+    private static final String GZIP = "gzip";
+
+    /**
+     * A thread doesn't keep a buffer that has grown bigger than this.
+     */
+    private static final int MAX_KEPT_BUFFER_BYTES = 1024 * 1024;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${spring.application.leanMaxIds:500}")
+    private int maxIds;
+
+    @Value("${spring.application.leanGzipMinBytes:1024}")
+    private int gzipMinBytes;
+
+    private final ThreadLocal<ResponseBuffer> buffers = new ThreadLocal<ResponseBuffer>() {
+        @Override
+        protected ResponseBuffer initialValue() {
+            return new ResponseBuffer();
+        }
+    };
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+    public void findOne(@PathVariable("id") String id,
+                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                        HttpServletResponse response) throws IOException {
+        Product product = productRepository.findOne(id);
+        if (null == product) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        ResponseBuffer buffer = buffers.get();
+        try (JsonGenerator json = jsonGenerator(buffer)) {
+            write(product, json);
+        }
+        send(buffer, acceptEncoding, response);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, params = "ids")
+    public void findAll(@RequestParam("ids") List<String> ids,
+                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                        HttpServletResponse response) throws IOException {
+        if (ids.size() > maxIds) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "No more than " + maxIds + " ids at a time");
+            return;
+        }
+
+        Map<String, Product> found = new HashMap<String, Product>();
+        for (Product product : productRepository.findAll(ids)) {
+            found.put(product.getId(), product);
+        }
+
+        ResponseBuffer buffer = buffers.get();
+        try (JsonGenerator json = jsonGenerator(buffer)) {
+            json.writeStartArray();
+            for (String id : ids) {
+                Product product = found.get(id);
+                if (null != product) {
+                    write(product, json);
+                }
+            }
+            json.writeEndArray();
+        }
+        send(buffer, acceptEncoding, response);
+    }
+
+    @RequestMapping(value = "/search/findBySaleable", method = RequestMethod.GET)
+    public void findBySaleable(@RequestParam("saleable") boolean saleable,
+                               @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                               HttpServletResponse response) throws IOException {
+        List<Product> products = productRepository.findBySaleable(saleable);
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        OutputStream out = response.getOutputStream();
+        if (acceptsGzip(acceptEncoding)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            out = new GZIPOutputStream(out, 8192);
+        }
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            for (Product product : products) {
+                write(product, json);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private JsonGenerator jsonGenerator(ResponseBuffer buffer) throws IOException {
+        buffer.reset();
+        return objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+    }
+
+    private void send(ResponseBuffer buffer, String acceptEncoding, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (buffer.size() >= gzipMinBytes && acceptsGzip(acceptEncoding)) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), 8192)) {
+                buffer.writeTo(gzip);
+            }
+        } else {
+            response.setContentLength(buffer.size());
+            buffer.writeTo(response.getOutputStream());
+        }
+
+        if (buffer.capacity() > MAX_KEPT_BUFFER_BYTES) {
+            buffers.remove();
+        }
+    }
+
+    /**
+     * @param acceptEncoding e.g. 'gzip, deflate' or 'br;q=1.0, gzip;q=0.5, *;q=0'.
+     * @return true if gzip (or '*', when gzip isn't listed) has a q-value above 0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (null == acceptEncoding) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return qValue(parameters) > 0;
+            }
+            if ("*".equals(name)) {
+                wildcard = qValue(parameters) > 0;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    /**
+     * @return the coding's q-value, 1 if it has none, or 0 if it can't be read.
+     */
+    private static double qValue(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static void write(Product product, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("id", product.getId());
+        json.writeStringField("name", product.getName());
+        json.writeBooleanField("saleable", product.isSaleable());
+        json.writeEndObject();
+    }
+
+    private static class ResponseBuffer extends ByteArrayOutputStream {
+
+        ResponseBuffer() {
+            super(4096);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
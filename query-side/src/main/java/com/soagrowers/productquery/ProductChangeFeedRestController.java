@@ -0,0 +1,187 @@
+package com.soagrowers.productquery;
+
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import com.soagrowers.productquery.feed.Subscription;
+import com.soagrowers.productquery.feed.WriteDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pushes product changes to clients, so that they don't have to poll /products.
+ * <ul>
+ * <li>GET /changes is a Server-Sent Events stream of 'product' events, one per change.</li>
+ * <li>GET /changes/poll is the long poll fallback. The first poll returns a subscription id
+ * straight away; poll again with '?subscription=...' to get the changes since the last
+ * poll, waiting up to 'spring.application.feedPollTimeout' ms for some to arrive.</li>
+ * </ul>
+ * A subscriber that falls too far behind is disconnected (see Subscription): a stream is
+ * sent a 'reset' event and closed, and a poll is answered with 410 Gone. Either way the
+ * client should subscribe again and read the products it cares about afresh. A stream
+ * whose client stops reading is closed once a write has blocked for
+ * 'spring.application.feedWriteTimeout' ms.
+ */
+@RestController
+@RequestMapping("/changes")
+public class ProductChangeFeedRestController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductChangeFeedRestController.class);
+
+    static final String EVENT_STREAM = "text/event-stream";
+
+    @Autowired
+    ProductChangeFeed productChangeFeed;
+
+    @Value("${spring.application.feedStreamTimeout:300000}")
+    private long streamTimeout;
+
+    @Value("${spring.application.feedPollTimeout:30000}")
+    private long pollTimeout;
+
+    @RequestMapping(method = RequestMethod.GET, produces = EVENT_STREAM)
+    public SseEmitter stream() {
+        final SseEmitter emitter = new SseEmitter(streamTimeout);
+        final Subscription subscription = productChangeFeed.subscribe(false);
+        Runnable unsubscribe = new Runnable() {
+            @Override
+            public void run() {
+                productChangeFeed.unsubscribe(subscription);
+            }
+        };
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        productChangeFeed.execute(new StreamWriter(emitter, subscription, productChangeFeed));
+        return emitter;
+    }
+
+    @RequestMapping(value = "/poll", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<ChangeBatch>> poll(@RequestParam(value = "subscription", required = false) String id) {
+        final DeferredResult<ResponseEntity<ChangeBatch>> result = new DeferredResult<ResponseEntity<ChangeBatch>>(pollTimeout);
+        if (null == id) {
+            result.setResult(ok(productChangeFeed.subscribe(true), Collections.<ProductChange>emptyList()));
+            return result;
+        }
+
+        final Subscription subscription = productChangeFeed.getSubscription(id);
+        if (null == subscription) {
+            result.setResult(new ResponseEntity<ChangeBatch>(HttpStatus.GONE));
+            return result;
+        }
+
+        final Subscription.Listener listener = new Subscription.Listener() {
+            @Override
+            public void changesAvailable() {
+                List<ProductChange> changes = subscription.drainOrListen(this);
+                if (null == changes) {
+                    result.setResult(new ResponseEntity<ChangeBatch>(HttpStatus.GONE));
+                } else if (!changes.isEmpty()) {
+                    result.setResult(ok(subscription, changes));
+                }
+            }
+        };
+        result.onTimeout(new Runnable() {
+            @Override
+            public void run() {
+                subscription.stopListening(listener);
+                result.setResult(ok(subscription, Collections.<ProductChange>emptyList()));
+            }
+        });
+        listener.changesAvailable();
+        return result;
+    }
+
+    private static ResponseEntity<ChangeBatch> ok(Subscription subscription, List<ProductChange> changes) {
+        return new ResponseEntity<ChangeBatch>(new ChangeBatch(subscription.getId(), changes), HttpStatus.OK);
+    }
+
+    /**
+     * Writes the subscription's changes to the stream, on one of the feed's threads, until
+     * there are none left. It then waits, as the subscription's listener, to be run again.
+     * Each batch of changes is written under a WriteDeadline, and a stream that misses it
+     * is closed.
+     */
+    private static class StreamWriter implements Runnable, Subscription.Listener {
+
+        private final SseEmitter emitter;
+        private final Subscription subscription;
+        private final ProductChangeFeed productChangeFeed;
+
+        StreamWriter(SseEmitter emitter, Subscription subscription, ProductChangeFeed productChangeFeed) {
+            this.emitter = emitter;
+            this.subscription = subscription;
+            this.productChangeFeed = productChangeFeed;
+        }
+
+        @Override
+        public void changesAvailable() {
+            productChangeFeed.execute(this);
+        }
+
+        @Override
+        public void run() {
+            WriteDeadline deadline = null;
+            try {
+                List<ProductChange> changes;
+                while (null != (changes = subscription.drainOrListen(this)) && !changes.isEmpty()) {
+                    deadline = productChangeFeed.startWrite();
+                    for (ProductChange change : changes) {
+                        emitter.send(SseEmitter.event().name("product").data(change));
+                    }
+                    if (deadline.finish()) {
+                        // the writes got through, but too slowly to keep the stream
+                        LOG.debug("Closing stream {}: its writes took too long", subscription.getId());
+                        emitter.completeWithError(new IOException("Write deadline passed"));
+                        productChangeFeed.unsubscribe(subscription);
+                        return;
+                    }
+                }
+                if (null == changes) {
+                    deadline = productChangeFeed.startWrite();
+                    emitter.send(SseEmitter.event().name("reset").data("Too far behind, subscribe again"));
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client has gone, it has stopped reading, or the stream has timed out
+                LOG.debug("Closing stream {}: {}", subscription.getId(), e.getMessage());
+                productChangeFeed.unsubscribe(subscription);
+            } finally {
+                if (null != deadline) {
+                    deadline.finish();
+                }
+            }
+        }
+    }
+
+    public static class ChangeBatch {
+
+        private final String subscription;
+        private final List<ProductChange> changes;
+
+        ChangeBatch(String subscription, List<ProductChange> changes) {
+            this.subscription = subscription;
+            this.changes = changes;
+        }
+
+        public String getSubscription() {
+            return subscription;
+        }
+
+        public List<ProductChange> getChanges() {
+            return changes;
+        }
+    }
+}
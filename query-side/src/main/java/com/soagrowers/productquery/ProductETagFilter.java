@@ -0,0 +1,124 @@
+package com.soagrowers.productquery;
+
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.handlers.ProductViewVersion;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conditional GETs for the product view, in HAL (/products) and plain JSON (/lean/products)
+ * alike, and for the export. The ETags come from versions the query side already keeps,
+ * so a request whose If-None-Match still matches is answered with a 304 before any product
+ * is loaded:
+ * <ul>
+ * <li>a single product is tagged with its sequence number, the number of the last event
+ * applied to it, and whether it has a name yet. A product added out of order gets its
+ * name without a new sequence number (see ProductViewEventHandler), so the sequence number
+ * alone would keep the unnamed copy fresh. With an If-None-Match, the product is read on
+ * its own with one primary key lookup. Without one, it's taken from the product as loaded
+ * through the ProductReadCache, which the resource then reads again from the cache, so an
+ * unconditional GET costs no extra query,</li>
+ * <li>the listings and searches are tagged with the ProductViewVersion, which moves on
+ * whenever the view changes.</li>
+ * </ul>
+ * The tag is taken before the response is built, so if the view changes in between, the
+ * response is newer than its tag and the client's next request simply misses.
+ * <p/>
+ * The tags are weak, as the same version is served gzipped and not.
+ */
+@Component
+public class ProductETagFilter extends OncePerRequestFilter {
+
+    private static final Pattern PRODUCT_VIEW = Pattern.compile("/(lean/|export/)?products(/.*)?");
+    private static final Pattern SINGLE_PRODUCT = Pattern.compile("/(lean/)?products/(?!search/)([^/]+)");
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    ProductViewVersion productViewVersion;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+        return !"GET".equals(request.getMethod())
+                || !PRODUCT_VIEW.matcher(urlPathHelper.getPathWithinApplication(request)).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String eTag;
+        Matcher product = SINGLE_PRODUCT.matcher(urlPathHelper.getPathWithinApplication(request));
+        if (product.matches()) {
+            eTag = productTag(product.group(2), request.getHeader(HttpHeaders.IF_NONE_MATCH));
+            if (null == eTag) {
+                chain.doFilter(request, response);
+                return;
+            }
+        } else {
+            eTag = "W/\"" + productViewVersion.getTag() + "\"";
+        }
+
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * @return the product's tag, or null if it's not in the view.
+     */
+    private String productTag(String id, String ifNoneMatch) {
+        if (null != ifNoneMatch) {
+            ProductChange change = productRepository.findChange(id);
+            return null == change ? null : productTag(change.getVersion(), null != change.getName());
+        }
+        Product product = productRepository.findOne(id);
+        return null == product ? null : productTag(product.getSequenceNumber(), null != product.getName());
+    }
+
+    /**
+     * @param sequenceNumber
+     * @param named
+     * @return e.g. 'W/"12"', or 'W/"12-unnamed"' for a product that has no name yet.
+     */
+    static String productTag(long sequenceNumber, boolean named) {
+        return "W/\"" + sequenceNumber + (named ? "" : "-unnamed") + "\"";
+    }
+
+    /**
+     * @param ifNoneMatch e.g. 'W/"12", "13"' or '*'.
+     * @param eTag
+     * @return true if one of the tags matches, comparing weakly.
+     */
+    static boolean matches(String ifNoneMatch, String eTag) {
+        if (null == ifNoneMatch) {
+            return false;
+        }
+        String opaqueTag = eTag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || opaqueTag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package com.soagrowers.productquery;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Exports the products as newline delimited JSON (one product per line), in id order. Pass
+ * 'saleable' to export just the saleable, or unsaleable, products. The rows are written to
+ * the response as they are read from the database, 'spring.application.exportFetchSize'
+ * at a time, so the export doesn't hold the catalogue in memory however big it gets.
+ * <p/>
+ * The export holds a database connection until the client has read it all.
+ */
+@RestController
+@RequestMapping("/export/products")
+public class ProductExportRestController {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    static final String SELECT_ALL = "select id, name, saleable from product order by id";
+    static final String SELECT_BY_SALEABLE = "select id, name, saleable from product where saleable = ? order by id";
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${spring.application.exportFetchSize:1000}")
+    private int exportFetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(exportFetchSize);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, produces = NDJSON)
+    public void export(@RequestParam(value = "saleable", required = false) Boolean saleable,
+                       HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        try (final JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            // one object per line, rather than separated by spaces
+            json.setRootValueSeparator(null);
+            RowCallbackHandler writer = new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    try {
+                        json.writeStartObject();
+                        json.writeStringField("id", rs.getString(1));
+                        json.writeStringField("name", rs.getString(2));
+                        json.writeBooleanField("saleable", rs.getBoolean(3));
+                        json.writeEndObject();
+                        json.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            try {
+                if (null == saleable) {
+                    jdbcTemplate.query(SELECT_ALL, writer);
+                } else {
+                    jdbcTemplate.query(SELECT_BY_SALEABLE, writer, saleable);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
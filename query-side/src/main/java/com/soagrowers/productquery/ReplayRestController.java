@@ -0,0 +1,33 @@
+package com.soagrowers.productquery;
+
+import com.soagrowers.productquery.replay.ProductViewReplayer;
+import com.soagrowers.productquery.replay.ReplayProgress;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Starts a replay of the product view (POST) and reports on its progress (GET). A POST
+ * while a replay is running is answered with a 409.
+ */
+@RestController
+@RequestMapping("/replay")
+public class ReplayRestController {
+
+    @Autowired
+    ProductViewReplayer productViewReplayer;
+
+    @RequestMapping(method = RequestMethod.POST)
+    public ResponseEntity<ReplayProgress> start() {
+        HttpStatus status = productViewReplayer.startReplay() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return new ResponseEntity<ReplayProgress>(productViewReplayer.getProgress(), status);
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    public ReplayProgress progress() {
+        return productViewReplayer.getProgress();
+    }
+}
@@ -0,0 +1,119 @@
+package com.soagrowers.productquery.cache;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-through cache in front of the ProductRepository's findOne (GET /products/{id}) and
+ * findBySaleable (/products/search/findBySaleable) queries. Entries never expire. Instead,
+ * the ProductViewEventHandler tells the cache which products have changed, and only those
+ * entries (and the saleable lists they are on) are evicted. The caches are bounded by the
+ * heap they may use, not by a count.
+ * <p/>
+ * Evictions happen once the transaction that changed the view has committed, so a read in
+ * between can't put the old row back. A read that overlaps with an eviction isn't cached
+ * at all: every eviction moves an epoch on, and a loaded value is only cached if the epoch
+ * hasn't moved since the load started. Nothing stale can stay in the cache.
+ */
+@Aspect
+public class ProductReadCache {
+
+    private final Ehcache products;
+    private final Ehcache saleableProducts;
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicLong uncachedLoads = new AtomicLong();
+
+    public ProductReadCache(Ehcache products, Ehcache saleableProducts) {
+        this.products = products;
+        this.saleableProducts = saleableProducts;
+    }
+
+    @Around("execution(* findOne(java.io.Serializable)) && target(com.soagrowers.productquery.repository.ProductRepository) && args(id)")
+    public Object findOne(ProceedingJoinPoint findOne, Object id) throws Throwable {
+        return readThrough(products, id, findOne);
+    }
+
+    @Around("execution(* findBySaleable(boolean)) && target(com.soagrowers.productquery.repository.ProductRepository) && args(saleable)")
+    public Object findBySaleable(ProceedingJoinPoint findBySaleable, boolean saleable) throws Throwable {
+        return readThrough(saleableProducts, saleable, findBySaleable);
+    }
+
+    private Object readThrough(Ehcache cache, Object key, ProceedingJoinPoint query) throws Throwable {
+        Element element = cache.get(key);
+        if (null != element) {
+            return element.getObjectValue();
+        }
+
+        long loadedAt = epoch.get();
+        Object value = query.proceed();
+        if (loadedAt != epoch.get()) {
+            uncachedLoads.incrementAndGet();
+        } else if (null != value) {
+            cache.put(new Element(key, value));
+        }
+        return value;
+    }
+
+    /**
+     * A new product is on the unsaleable list.
+     *
+     * @param id
+     */
+    public void productAdded(String id) {
+        evictAfterCommit(id, false);
+    }
+
+    /**
+     * The product has moved from one saleable list to the other.
+     *
+     * @param id
+     */
+    public void saleableChanged(String id) {
+        evictAfterCommit(id, true);
+    }
+
+    private void evictAfterCommit(final String id, final boolean bothLists) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(id, bothLists);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                evict(id, bothLists);
+            }
+        });
+    }
+
+    private void evict(String id, boolean bothLists) {
+        epoch.incrementAndGet();
+        products.remove(id);
+        saleableProducts.remove(false);
+        if (bothLists) {
+            saleableProducts.remove(true);
+        }
+    }
+
+    public Ehcache getProducts() {
+        return products;
+    }
+
+    public Ehcache getSaleableProducts() {
+        return saleableProducts;
+    }
+
+    /**
+     * @return the number of loads that weren't cached because the view changed meanwhile.
+     */
+    public long getUncachedLoadCount() {
+        return uncachedLoads.get();
+    }
+}
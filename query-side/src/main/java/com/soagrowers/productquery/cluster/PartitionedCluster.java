@@ -0,0 +1,290 @@
+package com.soagrowers.productquery.cluster;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.eventhandling.Cluster;
+import org.axonframework.eventhandling.ClusterMetaData;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.EventProcessingMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a Cluster so that its listeners run on a number of worker lanes instead of on the
+ * AMQP listener thread. Domain events are assigned a lane by their aggregate identifier, so
+ * the events of one product are always handled in order by the same lane, while different
+ * products are handled in parallel. Other events go to the first lane.
+ * <p/>
+ * Each lane handles whatever has queued up for it in one transaction, so the
+ * ProductViewBatchWriter still gets batches to write.
+ * <p/>
+ * The AMQP consumer's transaction doesn't commit (and so the messages aren't acknowledged)
+ * until the lanes have handled all of its events. If a lane fails, the consumer's
+ * transaction rolls back and the messages are redelivered. The parallelism is therefore
+ * bounded by the number of messages per consumer transaction
+ * ('spring.application.consumerTxSize').
+ */
+public class PartitionedCluster implements Cluster {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedCluster.class);
+
+    private final Cluster delegate;
+    private final Lane[] lanes;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * @param delegate           the cluster the events are published to, from the lanes.
+     * @param laneCount          the number of lanes (and threads).
+     * @param transactionManager the transaction each lane handles its events in.
+     */
+    public PartitionedCluster(Cluster delegate, int laneCount, PlatformTransactionManager transactionManager) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("The number of lanes must be positive: " + laneCount);
+        }
+        this.delegate = delegate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(delegate.getName() + "-lane-" + i);
+            lanes[i].start();
+        }
+    }
+
+    @Override
+    public void publish(EventMessage... events) {
+        if (events.length == 0) {
+            return;
+        }
+
+        Dispatch dispatch = new Dispatch(events.length);
+        for (EventMessage event : events) {
+            laneFor(event).submit(new Task(event, dispatch));
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            await(dispatch.done);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<CompletableFuture<Void>> pending = (List<CompletableFuture<Void>>) TransactionSynchronizationManager.getResource(this);
+        if (null == pending) {
+            pending = new ArrayList<CompletableFuture<Void>>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new AwaitLanesSynchronization());
+        }
+        pending.add(dispatch.done);
+    }
+
+    Lane laneFor(EventMessage event) {
+        if (event instanceof DomainEventMessage) {
+            int hash = ((DomainEventMessage) event).getAggregateIdentifier().hashCode();
+            return lanes[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes.length];
+        }
+        return lanes[0];
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @param lane
+     * @return the number of events queued for, or being handled by, the lane.
+     */
+    public long getBacklog(int lane) {
+        return lanes[lane].backlog.get();
+    }
+
+    /**
+     * @param lane
+     * @return the number of events the lane has handled so far.
+     */
+    public long getProcessedCount(int lane) {
+        return lanes[lane].processed.get();
+    }
+
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.interrupt();
+        }
+    }
+
+    private static void await(CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void subscribe(EventListener eventListener) {
+        delegate.subscribe(eventListener);
+    }
+
+    @Override
+    public void unsubscribe(EventListener eventListener) {
+        delegate.unsubscribe(eventListener);
+    }
+
+    @Override
+    public Set<EventListener> getMembers() {
+        return delegate.getMembers();
+    }
+
+    @Override
+    public ClusterMetaData getMetaData() {
+        return delegate.getMetaData();
+    }
+
+    @Override
+    public void subscribeEventProcessingMonitor(EventProcessingMonitor monitor) {
+        delegate.subscribeEventProcessingMonitor(monitor);
+    }
+
+    @Override
+    public void unsubscribeEventProcessingMonitor(EventProcessingMonitor monitor) {
+        delegate.unsubscribeEventProcessingMonitor(monitor);
+    }
+
+    /**
+     * Tracks the events of one publish call. Done when all of them are handled, or as soon
+     * as one of them fails.
+     */
+    private static class Dispatch {
+
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+        Dispatch(int events) {
+            this.remaining = new AtomicInteger(events);
+        }
+
+        void handled() {
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+
+        void failed(Throwable cause) {
+            done.completeExceptionally(cause);
+        }
+    }
+
+    private static class Task {
+
+        private final EventMessage event;
+        private final Dispatch dispatch;
+
+        Task(EventMessage event, Dispatch dispatch) {
+            this.event = event;
+            this.dispatch = dispatch;
+        }
+    }
+
+    private class Lane extends Thread {
+
+        private final BlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+        private final AtomicLong backlog = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+
+        Lane(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        void submit(Task task) {
+            backlog.incrementAndGet();
+            queue.add(task);
+        }
+
+        @Override
+        public void run() {
+            List<Task> tasks = new ArrayList<Task>();
+            while (!isInterrupted()) {
+                try {
+                    tasks.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(tasks);
+                handle(tasks);
+                backlog.addAndGet(-tasks.size());
+                tasks.clear();
+            }
+        }
+
+        private void handle(final List<Task> tasks) {
+            try {
+                transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        EventMessage[] events = new EventMessage[tasks.size()];
+                        for (int i = 0; i < events.length; i++) {
+                            events[i] = tasks.get(i).event;
+                        }
+                        delegate.publish(events);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                LOG.warn("{} failed to handle {} events: {}", getName(), tasks.size(), e.getMessage());
+                for (Task task : tasks) {
+                    task.dispatch.failed(e);
+                }
+                return;
+            }
+
+            processed.addAndGet(tasks.size());
+            for (Task task : tasks) {
+                task.dispatch.handled();
+            }
+        }
+    }
+
+    /**
+     * Holds the consumer's transaction back until the lanes have handled its events.
+     */
+    private class AwaitLanesSynchronization extends TransactionSynchronizationAdapter {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void beforeCommit(boolean readOnly) {
+            for (CompletableFuture<Void> done : (List<CompletableFuture<Void>>) TransactionSynchronizationManager.getResource(PartitionedCluster.this)) {
+                await(done);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(PartitionedCluster.this);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.soagrowers.productquery.compact;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory copy of the product view, for catalogues too big to query through JPA. There
+ * are no Product objects: each product is a row number, its id and name are interned into
+ * StringTables (products with the same name share it), its sequence number is in a long
+ * array and whether it is saleable is a bit in a BitSet. A product costs some 40 bytes
+ * plus its id, instead of an entity, two Strings and their char arrays.
+ * <p/>
+ * Queries read the rows a chunk at a time into a Row, which the caller keeps and reuses,
+ * and visit them from there. So listing the saleable products or counting them doesn't
+ * allocate anything per product, and the read lock is only held while a chunk is copied,
+ * not while the caller writes a response.
+ * <p/>
+ * The rules for applying events are those of the ProductViewEventHandler: events at or
+ * below a product's sequence number are skipped, a saleable / unsaleable event for an
+ * unknown product adds it without a name, and the added event then only names it.
+ * <p/>
+ * The view only hears about the events handled after it was created, so at startup it is
+ * filled from the database view with load(), and only then marked as loaded. Events that
+ * are handled in the meantime are kept: load() doesn't overwrite anything newer.
+ */
+public class CompactProductView {
+
+    static final int CHUNK_SIZE = 256;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * A product's row number is the handle of its id.
+     */
+    private final StringTable ids;
+    private final StringTable names;
+
+    private int[] nameOf;
+    private long[] sequenceNumbers;
+    private final BitSet saleable = new BitSet();
+    private int saleableCount;
+    private volatile boolean loaded;
+
+    public CompactProductView(int initialCapacity) {
+        this.ids = new StringTable(initialCapacity);
+        this.names = new StringTable(initialCapacity);
+        this.nameOf = new int[Math.max(16, initialCapacity)];
+        this.sequenceNumbers = new long[nameOf.length];
+    }
+
+    /**
+     * @return true if the product was added, or named if it was added without a name, false
+     * if it was already in the view.
+     */
+    public boolean add(String id, String name, long sequenceNumber) {
+        lock.writeLock().lock();
+        try {
+            int row = ids.find(id);
+            if (-1 == row) {
+                addRow(id, name, sequenceNumber);
+                return true;
+            }
+            if (-1 != nameOf[row] || null == name) {
+                return false;
+            }
+            nameOf[row] = names.intern(name);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the product was changed, or added without a name, false if the event
+     * is stale.
+     */
+    public boolean setSaleable(String id, boolean saleable, long sequenceNumber) {
+        lock.writeLock().lock();
+        try {
+            int row = ids.find(id);
+            if (-1 == row) {
+                row = addRow(id, null, sequenceNumber - 1);
+            }
+            if (sequenceNumber <= sequenceNumbers[row]) {
+                return false;
+            }
+            sequenceNumbers[row] = sequenceNumber;
+            setSaleableBit(row, saleable);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies a product from the database view. A product that is already in the compact
+     * view only takes the copy's flag if the copy is newer, and its name if it has none.
+     *
+     * @return true if the product was added or changed.
+     */
+    public boolean load(String id, String name, boolean saleable, long sequenceNumber) {
+        lock.writeLock().lock();
+        try {
+            int row = ids.find(id);
+            if (-1 == row) {
+                row = addRow(id, name, sequenceNumber);
+                setSaleableBit(row, saleable);
+                return true;
+            }
+            boolean changed = false;
+            if (-1 == nameOf[row] && null != name) {
+                nameOf[row] = names.intern(name);
+                changed = true;
+            }
+            if (sequenceNumber > sequenceNumbers[row]) {
+                sequenceNumbers[row] = sequenceNumber;
+                setSaleableBit(row, saleable);
+                changed = true;
+            }
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Called once the view has been filled from the database view.
+     */
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * @return true once the view has been filled from the database view.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private void setSaleableBit(int row, boolean saleable) {
+        if (this.saleable.get(row) != saleable) {
+            this.saleable.set(row, saleable);
+            saleableCount += saleable ? 1 : -1;
+        }
+    }
+
+    private int addRow(String id, String name, long sequenceNumber) {
+        int row = ids.intern(id);
+        if (row == nameOf.length) {
+            nameOf = Arrays.copyOf(nameOf, row * 2);
+            sequenceNumbers = Arrays.copyOf(sequenceNumbers, row * 2);
+        }
+        nameOf[row] = null == name ? -1 : names.intern(name);
+        sequenceNumbers[row] = sequenceNumber;
+        return row;
+    }
+
+    /**
+     * @return the number of products in the view.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param saleable
+     * @return the number of saleable, or unsaleable, products.
+     */
+    public int count(boolean saleable) {
+        lock.readLock().lock();
+        try {
+            return saleable ? saleableCount : ids.size() - saleableCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct product names.
+     */
+    public int nameCount() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads one product into the row.
+     *
+     * @param id
+     * @param row
+     * @return false if the product isn't in the view.
+     */
+    public boolean find(String id, Row row) {
+        row.clear();
+        lock.readLock().lock();
+        try {
+            int index = ids.find(id);
+            if (-1 == index) {
+                return false;
+            }
+            row.copy(this, index);
+        } finally {
+            lock.readLock().unlock();
+        }
+        row.next();
+        return true;
+    }
+
+    /**
+     * Visits the saleable, or unsaleable, products in the order they were added.
+     *
+     * @param saleable
+     * @param row      is reused for every product, so it mustn't be kept by the visitor.
+     * @param visitor
+     * @throws IOException if the visitor throws it, which stops the visit.
+     */
+    public void forEach(boolean saleable, Row row, Visitor visitor) throws IOException {
+        int from = 0;
+        while (from >= 0) {
+            row.clear();
+            lock.readLock().lock();
+            try {
+                int size = ids.size();
+                int index = saleable ? this.saleable.nextSetBit(from) : this.saleable.nextClearBit(from);
+                while (index >= 0 && index < size && row.count < CHUNK_SIZE) {
+                    row.copy(this, index);
+                    index = saleable ? this.saleable.nextSetBit(index + 1) : this.saleable.nextClearBit(index + 1);
+                }
+                from = index >= 0 && index < size ? index : -1;
+            } finally {
+                lock.readLock().unlock();
+            }
+            while (row.next()) {
+                visitor.visit(row);
+            }
+        }
+    }
+
+    /**
+     * @return roughly the number of bytes the view takes up.
+     */
+    public long heapBytes() {
+        lock.readLock().lock();
+        try {
+            return ids.heapBytes() + names.heapBytes() + 4L * nameOf.length + 8L * sequenceNumbers.length + saleable.size() / 8;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public interface Visitor {
+
+        void visit(Row row) throws IOException;
+    }
+
+    /**
+     * A cursor over a chunk of products copied out of the view. The id and name are also
+     * available as a range of a char array (e.g. for JsonGenerator.writeString(char[], int,
+     * int)), so that they can be written out without making Strings of them.
+     */
+    public static class Row {
+
+        private char[] chars = new char[CHUNK_SIZE * 64];
+        private int charCount;
+        private final int[] idStarts = new int[CHUNK_SIZE];
+        private final int[] nameStarts = new int[CHUNK_SIZE];
+        private final int[] nameEnds = new int[CHUNK_SIZE];
+        private final boolean[] named = new boolean[CHUNK_SIZE];
+        private final boolean[] saleable = new boolean[CHUNK_SIZE];
+        private final long[] sequenceNumbers = new long[CHUNK_SIZE];
+        private int count;
+        private int current = -1;
+
+        public String getId() {
+            return new String(chars, getIdOffset(), getIdLength());
+        }
+
+        public char[] getChars() {
+            return chars;
+        }
+
+        public int getIdOffset() {
+            return idStarts[current];
+        }
+
+        public int getIdLength() {
+            return nameStarts[current] - idStarts[current];
+        }
+
+        /**
+         * @return the name, or null if the product was added without one.
+         */
+        public String getName() {
+            return hasName() ? new String(chars, getNameOffset(), getNameLength()) : null;
+        }
+
+        public boolean hasName() {
+            return named[current];
+        }
+
+        public int getNameOffset() {
+            return nameStarts[current];
+        }
+
+        public int getNameLength() {
+            return nameEnds[current] - nameStarts[current];
+        }
+
+        public boolean isSaleable() {
+            return saleable[current];
+        }
+
+        public long getSequenceNumber() {
+            return sequenceNumbers[current];
+        }
+
+        private void clear() {
+            charCount = 0;
+            count = 0;
+            current = -1;
+        }
+
+        private boolean next() {
+            return ++current < count;
+        }
+
+        private void copy(CompactProductView view, int index) {
+            int name = view.nameOf[index];
+            int idLength = view.ids.length(index);
+            int nameLength = -1 == name ? 0 : view.names.length(name);
+            if (charCount + idLength + nameLength > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + idLength + nameLength));
+            }
+
+            idStarts[count] = charCount;
+            System.arraycopy(view.ids.chars(), view.ids.offset(index), chars, charCount, idLength);
+            charCount += idLength;
+            nameStarts[count] = charCount;
+            if (-1 != name) {
+                System.arraycopy(view.names.chars(), view.names.offset(name), chars, charCount, nameLength);
+                charCount += nameLength;
+            }
+            nameEnds[count] = charCount;
+            named[count] = -1 != name;
+            saleable[count] = view.saleable.get(index);
+            sequenceNumbers[count] = view.sequenceNumbers[index];
+            count++;
+        }
+    }
+}
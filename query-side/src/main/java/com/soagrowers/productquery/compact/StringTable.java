@@ -0,0 +1,154 @@
+package com.soagrowers.productquery.compact;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings into one shared char array. Each distinct string is stored once and is
+ * known by its handle, the order in which it was first added (0, 1, 2...). Lookups go
+ * through an open addressing table of handles, so neither adding nor finding a string
+ * allocates anything per entry, beyond the occasional growth of the arrays.
+ * <p/>
+ * Not thread safe, see CompactProductView.
+ */
+class StringTable {
+
+    private static final int EMPTY = -1;
+
+    private char[] chars;
+    private int charCount;
+
+    /**
+     * The offset of string h is starts[h], its length starts[h + 1] - starts[h].
+     */
+    private int[] starts;
+    private int[] hashes;
+    private int size;
+
+    private int[] slots;
+
+    StringTable(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.chars = new char[capacity * 16];
+        this.starts = new int[capacity + 1];
+        this.hashes = new int[capacity];
+        this.slots = newSlots(Integer.highestOneBit(capacity * 2 - 1) << 1);
+    }
+
+    /**
+     * @param s
+     * @return the handle of the string, or -1 if it isn't in the table.
+     */
+    int find(String s) {
+        int hash = hash(s);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int h = slots[i];
+            if (EMPTY == h) {
+                return EMPTY;
+            }
+            if (hashes[h] == hash && matches(h, s)) {
+                return h;
+            }
+        }
+    }
+
+    /**
+     * @param s
+     * @return the handle of the string, which is added if it isn't in the table yet.
+     */
+    int intern(String s) {
+        int hash = hash(s);
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        for (; EMPTY != slots[i]; i = (i + 1) & mask) {
+            int h = slots[i];
+            if (hashes[h] == hash && matches(h, s)) {
+                return h;
+            }
+        }
+
+        int h = size;
+        if (h == hashes.length) {
+            starts = Arrays.copyOf(starts, h * 2 + 1);
+            hashes = Arrays.copyOf(hashes, h * 2);
+        }
+        if (charCount + s.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + s.length()));
+        }
+        s.getChars(0, s.length(), chars, charCount);
+        starts[h] = charCount;
+        charCount += s.length();
+        starts[h + 1] = charCount;
+        hashes[h] = hash;
+        size++;
+
+        // at most half full, so that probe sequences stay short
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            slots[i] = h;
+        }
+        return h;
+    }
+
+    int size() {
+        return size;
+    }
+
+    char[] chars() {
+        return chars;
+    }
+
+    int offset(int h) {
+        return starts[h];
+    }
+
+    int length(int h) {
+        return starts[h + 1] - starts[h];
+    }
+
+    /**
+     * @return roughly the number of bytes the table's arrays take up.
+     */
+    long heapBytes() {
+        return 2L * chars.length + 4L * (starts.length + hashes.length + slots.length);
+    }
+
+    private boolean matches(int h, String s) {
+        int offset = starts[h];
+        int length = starts[h + 1] - offset;
+        if (length != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int slotCount) {
+        slots = newSlots(slotCount);
+        int mask = slotCount - 1;
+        for (int h = 0; h < size; h++) {
+            int i = hashes[h] & mask;
+            while (EMPTY != slots[i]) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = h;
+        }
+    }
+
+    private static int[] newSlots(int slotCount) {
+        int[] slots = new int[slotCount];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    private static int hash(String s) {
+        // String caches its hash code; spread it, as the low bits pick the slot
+        int hash = s.hashCode();
+        return (hash ^ (hash >>> 16)) & Integer.MAX_VALUE;
+    }
+}
@@ -1,18 +1,35 @@
 package com.soagrowers.productquery.configuration;
 
+import com.soagrowers.productevents.amqp.EventBatchAMQPMessageConverter;
+import com.soagrowers.productevents.amqp.EventBatchUnpackingCluster;
+import com.soagrowers.productevents.serializer.CompactEventSerializer;
+import com.soagrowers.productquery.cache.ProductReadCache;
+import com.soagrowers.productquery.cluster.PartitionedCluster;
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import com.soagrowers.productquery.handlers.ProductViewBatchWriter;
+import com.soagrowers.productquery.handlers.ProductViewVersion;
+import com.soagrowers.productquery.metrics.PartitionedClusterMetrics;
 import org.axonframework.contextsupport.spring.AnnotationDriven;
 import org.axonframework.eventhandling.*;
+import org.axonframework.eventhandling.amqp.AMQPMessageConverter;
+import org.axonframework.eventhandling.amqp.DefaultAMQPMessageConverter;
+import org.axonframework.eventhandling.amqp.PackageRoutingKeyResolver;
 import org.axonframework.eventhandling.amqp.spring.ListenerContainerLifecycleManager;
 import org.axonframework.eventhandling.amqp.spring.SpringAMQPConsumerConfiguration;
 import org.axonframework.eventhandling.amqp.spring.SpringAMQPTerminal;
+import org.axonframework.eventhandling.replay.ReplayingCluster;
+import org.axonframework.serializer.Serializer;
 import org.axonframework.serializer.json.JacksonSerializer;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import javax.sql.DataSource;
+
 /**
  * Created by ben on 18/02/16.
  */
@@ -21,6 +38,7 @@ import org.springframework.transaction.PlatformTransactionManager;
 class AxonConfiguration {
 
     private static final String AMQP_CONFIG_KEY = "AMQP.Config";
+    private static final String COMPACT_SERIALIZER = "compact";
 
     @Autowired
     public ConnectionFactory connectionFactory;
@@ -31,9 +49,27 @@ class AxonConfiguration {
     @Autowired
     public String uniqueQueueName;
 
+    @Autowired
+    public DataSource dataSource;
+
+    @Autowired
+    public ProductReadCache productReadCache;
+
+    @Autowired
+    public ProductChangeFeed productChangeFeed;
+
     @Value("${spring.application.terminal}")
     private String terminalName;
 
+    @Value("${spring.application.eventSerializer:json}")
+    private String eventSerializerType;
+
+    @Value("${spring.application.consumerTxSize:10}")
+    private int consumerTxSize;
+
+    @Value("${spring.application.consumerLanes:1}")
+    private int consumerLanes;
+
 
     /*
     @Value("${spring.application.queue}")
@@ -50,6 +86,45 @@ class AxonConfiguration {
         return new JacksonSerializer();
     }
 
+    /**
+     * Reads both JSON and compact binary events. Set 'spring.application.eventSerializer'
+     * to 'compact' to write product events in the compact form too.
+     *
+     * @return
+     */
+    @Bean
+    Serializer eventSerializer() {
+        return new CompactEventSerializer(axonJsonSerializer(), COMPACT_SERIALIZER.equalsIgnoreCase(eventSerializerType));
+    }
+
+    /**
+     * Reads single events as well as the compressed EventBatch envelopes that the
+     * command-side sends when event batching is switched on.
+     *
+     * @return
+     */
+    @Bean
+    AMQPMessageConverter amqpMessageConverter() {
+        return new EventBatchAMQPMessageConverter(
+                new DefaultAMQPMessageConverter(eventSerializer(), new PackageRoutingKeyResolver(), true));
+    }
+
+    /**
+     * Used by the ProductViewEventHandler when 'spring.application.projectionBatching' is on.
+     * The batches are as big as the consumer's transactions ('spring.application.consumerTxSize').
+     *
+     * @return
+     */
+    @Bean
+    ProductViewBatchWriter productViewBatchWriter() {
+        return new ProductViewBatchWriter(dataSource, productReadCache, productViewVersion(), productChangeFeed);
+    }
+
+    @Bean
+    ProductViewVersion productViewVersion() {
+        return new ProductViewVersion();
+    }
+
     @Bean
     ListenerContainerLifecycleManager listenerContainerLifecycleManager() {
         ListenerContainerLifecycleManager listenerContainerLifecycleManager = new ListenerContainerLifecycleManager();
@@ -60,7 +135,7 @@ class AxonConfiguration {
     @Bean
     SpringAMQPConsumerConfiguration springAMQPConsumerConfiguration() {
         SpringAMQPConsumerConfiguration amqpConsumerConfiguration = new SpringAMQPConsumerConfiguration();
-        amqpConsumerConfiguration.setTxSize(10);
+        amqpConsumerConfiguration.setTxSize(consumerTxSize);
         amqpConsumerConfiguration.setTransactionManager(transactionManager);
         amqpConsumerConfiguration.setQueueName(uniqueQueueName);
         return amqpConsumerConfiguration;
@@ -74,12 +149,35 @@ class AxonConfiguration {
         return simpleCluster;
     }
 
+    /**
+     * With 'spring.application.consumerLanes' above 1, the events are handled on that many
+     * lanes, partitioned by product id (see PartitionedCluster). Otherwise they're handled
+     * on the AMQP listener thread. The lanes are stopped through Spring's inferred
+     * 'shutdown' destroy method.
+     *
+     * @param simpleCluster
+     * @return
+     */
+    @Bean
+    Cluster projectionCluster(SimpleCluster simpleCluster) {
+        if (consumerLanes > 1) {
+            return new PartitionedCluster(simpleCluster, consumerLanes, transactionManager);
+        }
+        return simpleCluster;
+    }
+
+    @Bean
+    PartitionedClusterMetrics partitionedClusterMetrics(@Qualifier("projectionCluster") Cluster projectionCluster) {
+        return new PartitionedClusterMetrics(projectionCluster);
+    }
+
     @Bean
     EventBusTerminal terminal() {
         SpringAMQPTerminal terminal = new SpringAMQPTerminal();
         terminal.setConnectionFactory(connectionFactory);
         //terminal.setSerializer(xmlSerializer());
-        terminal.setSerializer(axonJsonSerializer());
+        terminal.setSerializer(eventSerializer());
+        terminal.setMessageConverter(amqpMessageConverter());
         terminal.setExchangeName(terminalName);
         terminal.setListenerContainerLifecycleManager(listenerContainerLifecycleManager());
         terminal.setDurable(true);
@@ -88,8 +186,7 @@ class AxonConfiguration {
     }
 
     @Bean
-    EventBus eventBus(SimpleCluster simpleCluster) {
-        return new ClusteringEventBus(new DefaultClusterSelector(simpleCluster), terminal());
+    EventBus eventBus(ReplayingCluster replayingCluster) {
+        return new ClusteringEventBus(new DefaultClusterSelector(new EventBatchUnpackingCluster(replayingCluster)), terminal());
     }
-
 }
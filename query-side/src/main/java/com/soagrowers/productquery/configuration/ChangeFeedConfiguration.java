@@ -0,0 +1,40 @@
+package com.soagrowers.productquery.configuration;
+
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import com.soagrowers.productquery.metrics.ChangeFeedMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The change feed on /changes. Each subscriber can fall 'spring.application.feedBufferSize'
+ * products behind before it's disconnected, and the streams are written by
+ * 'spring.application.feedThreads' threads. A stream whose client doesn't take a batch of
+ * changes within 'spring.application.feedWriteTimeout' ms is closed, so that it gives its
+ * thread back.
+ */
+@Configuration
+public class ChangeFeedConfiguration {
+
+    @Value("${spring.application.feedBufferSize:1000}")
+    private int feedBufferSize;
+
+    @Value("${spring.application.feedThreads:2}")
+    private int feedThreads;
+
+    @Value("${spring.application.feedIdleTimeout:60000}")
+    private long feedIdleTimeout;
+
+    @Value("${spring.application.feedWriteTimeout:10000}")
+    private long feedWriteTimeout;
+
+    @Bean(destroyMethod = "shutdown")
+    ProductChangeFeed productChangeFeed() {
+        return new ProductChangeFeed(feedBufferSize, feedThreads, feedIdleTimeout, feedWriteTimeout);
+    }
+
+    @Bean
+    ChangeFeedMetrics changeFeedMetrics() {
+        return new ChangeFeedMetrics(productChangeFeed());
+    }
+}
@@ -0,0 +1,83 @@
+package com.soagrowers.productquery.configuration;
+
+import com.soagrowers.productquery.compact.CompactProductView;
+import com.soagrowers.productquery.handlers.CompactProductViewLoader;
+import com.soagrowers.productquery.metrics.CompactProductViewMetrics;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The CompactProductView is only filled, and only answers on /compact/products, when
+ * 'spring.application.compactView' is on. 'spring.application.compactViewCapacity' is the
+ * number of products it has room for before its arrays have to grow, so set it to about
+ * the size of the catalogue.
+ * <p/>
+ * The compact view only hears about the events handled after startup, so once the
+ * application is ready it is filled from the database view, on a background thread.
+ * Until that has finished, and while a replay is running (the database view may still be
+ * empty), /compact/products answers with a 503 rather than with missing products and
+ * wrong counts.
+ */
+@Configuration
+public class CompactViewConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactViewConfiguration.class);
+
+    @Autowired
+    public ProductRepository productRepository;
+
+    @Value("${spring.application.compactView:false}")
+    private boolean enabled;
+
+    @Value("${spring.application.compactViewLoadPageSize:1000}")
+    private int compactViewLoadPageSize;
+
+    @Value("${spring.application.compactViewCapacity:1024}")
+    private int compactViewCapacity;
+
+    @Bean
+    CompactProductView compactProductView() {
+        return new CompactProductView(compactViewCapacity);
+    }
+
+    @Bean
+    CompactProductViewLoader compactProductViewLoader() {
+        return new CompactProductViewLoader(productRepository, compactProductView(), compactViewLoadPageSize);
+    }
+
+    @Bean
+    ApplicationListener<ApplicationReadyEvent> loadCompactViewOnStartup() {
+        return new ApplicationListener<ApplicationReadyEvent>() {
+            @Override
+            public void onApplicationEvent(ApplicationReadyEvent event) {
+                if (!enabled) {
+                    return;
+                }
+                Thread load = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            compactProductViewLoader().load();
+                        } catch (RuntimeException e) {
+                            LOG.error("Loading the compact product view FAILED, it won't answer until the service is restarted", e);
+                        }
+                    }
+                }, "compact-view-load");
+                load.setDaemon(true);
+                load.start();
+            }
+        };
+    }
+
+    @Bean
+    CompactProductViewMetrics compactProductViewMetrics() {
+        return new CompactProductViewMetrics(compactProductView());
+    }
+}
@@ -0,0 +1,50 @@
+package com.soagrowers.productquery.configuration;
+
+import com.soagrowers.productquery.cache.ProductReadCache;
+import com.soagrowers.productquery.metrics.ProductReadCacheMetrics;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.MemoryUnit;
+import net.sf.ehcache.config.SizeOfPolicyConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The read caches for single products and for the saleable lists share one pool of heap,
+ * 'spring.application.readCacheMegabytes' in size. Least recently used entries make way
+ * when it's full. Entries don't expire, the ProductViewEventHandler evicts them when the
+ * products change.
+ */
+@Configuration
+public class ProductCacheConfiguration {
+
+    @Value("${spring.application.readCacheMegabytes:64}")
+    private long readCacheMegabytes;
+
+    @Bean(destroyMethod = "shutdown")
+    CacheManager readCacheManager() {
+        return new CacheManager(new net.sf.ehcache.config.Configuration()
+                .name("product-query-side")
+                .maxBytesLocalHeap(readCacheMegabytes, MemoryUnit.MEGABYTES)
+                // the saleable lists hold many products, so let the sizing walk all of them
+                .sizeOfPolicy(new SizeOfPolicyConfiguration().maxDepth(Integer.MAX_VALUE)));
+    }
+
+    @Bean
+    ProductReadCache productReadCache() {
+        return new ProductReadCache(cache("products"), cache("saleableProducts"));
+    }
+
+    @Bean
+    ProductReadCacheMetrics productReadCacheMetrics() {
+        return new ProductReadCacheMetrics(productReadCache());
+    }
+
+    private Ehcache cache(String name) {
+        net.sf.ehcache.Cache cache = new net.sf.ehcache.Cache(new CacheConfiguration().name(name).eternal(true));
+        readCacheManager().addCache(cache);
+        return cache;
+    }
+}
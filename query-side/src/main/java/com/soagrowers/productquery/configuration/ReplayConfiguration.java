@@ -0,0 +1,136 @@
+package com.soagrowers.productquery.configuration;
+
+import com.mongodb.Mongo;
+import com.soagrowers.productquery.metrics.ReplayMetrics;
+import com.soagrowers.productquery.replay.ProductViewReplayer;
+import com.soagrowers.productquery.replay.ProgressReportingEventStore;
+import com.soagrowers.productquery.replay.ReplayProgress;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.axonframework.eventhandling.Cluster;
+import org.axonframework.eventhandling.replay.BackloggingIncomingMessageHandler;
+import org.axonframework.eventhandling.replay.ReplayingCluster;
+import org.axonframework.eventstore.mongo.DefaultMongoTemplate;
+import org.axonframework.eventstore.mongo.DocumentPerEventStorageStrategy;
+import org.axonframework.eventstore.mongo.MongoEventStore;
+import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.unitofwork.SpringTransactionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Rebuilds the product view from the command side's Mongo event store. A replay can be
+ * started with a POST to /replay, and runs by itself at startup when the product table
+ * is empty (as the in-memory view always is after a restart), unless
+ * 'spring.application.replayOnStartup' is set to false.
+ * <p/>
+ * The replay goes through the projection cluster, so its events are only spread over
+ * parallel lanes when 'spring.application.consumerLanes' is above 1 (see AxonConfiguration).
+ * With the default of 1 a replay, bulk loaded or not, runs on a single thread.
+ * <p/>
+ * The event store is only read, never written to.
+ */
+@Configuration
+public class ReplayConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayConfiguration.class);
+
+    @Autowired
+    public Mongo mongo;
+
+    @Autowired
+    public PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("eventSerializer")
+    public Serializer eventSerializer;
+
+    @Autowired
+    public ProductRepository productRepository;
+
+    @Value("${spring.application.databaseName:products}")
+    private String databaseName;
+
+    @Value("${spring.application.eventsCollectionName:events}")
+    private String eventsCollectionName;
+
+    @Value("${spring.application.snapshotCollectionName:snapshots}")
+    private String snapshotCollectionName;
+
+    @Value("${spring.application.replayOnStartup:true}")
+    private boolean replayOnStartup;
+
+    @Value("${spring.application.replayCommitThreshold:1000}")
+    private int replayCommitThreshold;
+
+    @Value("${spring.application.replayProgressInterval:10000}")
+    private long replayProgressInterval;
+
+    @Bean
+    MongoTemplate replayMongoTemplate() {
+        return new DefaultMongoTemplate(mongo, databaseName, eventsCollectionName, snapshotCollectionName, null, null);
+    }
+
+    @Bean
+    ReplayProgress replayProgress() {
+        return new ReplayProgress();
+    }
+
+    /**
+     * Sits between the event bus and the projection cluster. Outside a replay it passes the
+     * events straight on. During a replay, live events are backlogged until the history
+     * has been replayed, and the replay commits every 'spring.application.replayCommitThreshold'
+     * events (which is also the size of the bulk load batches).
+     *
+     * @param projectionCluster
+     * @return
+     */
+    @Bean
+    ReplayingCluster replayingCluster(@Qualifier("projectionCluster") Cluster projectionCluster) {
+        MongoEventStore eventStore = new MongoEventStore(replayMongoTemplate(), eventSerializer, new DocumentPerEventStorageStrategy());
+        return new ReplayingCluster(projectionCluster,
+                new ProgressReportingEventStore(eventStore, replayProgress(), replayProgressInterval),
+                new SpringTransactionManager(transactionManager),
+                replayCommitThreshold,
+                new BackloggingIncomingMessageHandler());
+    }
+
+    @Bean
+    ProductViewReplayer productViewReplayer(ReplayingCluster replayingCluster) {
+        return new ProductViewReplayer(replayingCluster, replayMongoTemplate().domainEventCollection(), replayProgress());
+    }
+
+    @Bean
+    ReplayMetrics replayMetrics() {
+        return new ReplayMetrics(replayProgress());
+    }
+
+    /**
+     * Replays once the application is ready, i.e. once the AMQP listener is consuming, so
+     * that events published during the replay are caught in the backlog. A view that
+     * already holds products (e.g. one kept in a file based database) isn't replayed.
+     *
+     * @param productViewReplayer
+     * @return
+     */
+    @Bean
+    ApplicationListener<ApplicationReadyEvent> replayOnStartup(final ProductViewReplayer productViewReplayer) {
+        return new ApplicationListener<ApplicationReadyEvent>() {
+            @Override
+            public void onApplicationEvent(ApplicationReadyEvent event) {
+                if (replayOnStartup && 0 == productRepository.count()) {
+                    LOG.info("The product view is empty, rebuilding it from the event store...");
+                    productViewReplayer.startReplay();
+                }
+            }
+        };
+    }
+}
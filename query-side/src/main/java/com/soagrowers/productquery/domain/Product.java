@@ -3,28 +3,51 @@ package com.soagrowers.productquery.domain;
 
 //import org.springframework.data.annotation.Id;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 /**
  * Created by ben on 07/10/15.
  */
 @Entity
+@Table(indexes = @Index(name = Product.SALEABLE_INDEX, columnList = "saleable, id"))
 public class Product {
 
+    /**
+     * On (saleable, id), so that the saleable products can be listed, and paged through,
+     * in id order straight from the index.
+     */
+    public static final String SALEABLE_INDEX = "product_saleable_idx";
+
     @Id
     private String id;
 
     private String name;
     private boolean saleable;
 
+    /**
+     * The sequence number of the last event of this product that was applied to the view.
+     * Events with a sequence number at or below it are stale or duplicates.
+     */
+    @JsonIgnore
+    private long sequenceNumber;
+
     public Product() {
     }
 
     public Product(String id, String name, boolean saleable) {
+        this(id, name, saleable, 0);
+    }
+
+    public Product(String id, String name, boolean saleable, long sequenceNumber) {
         this.id = id;
         this.name = name;
         this.saleable = saleable;
+        this.sequenceNumber = sequenceNumber;
     }
 
     public String getId() {
@@ -50,4 +73,12 @@ public class Product {
     public void setSaleable(boolean saleable) {
         this.saleable = saleable;
     }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
 }
@@ -0,0 +1,61 @@
+package com.soagrowers.productquery.feed;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A product's state after a change to the view. The version is the sequence number of the
+ * event that made the change (as in the product's ETag). The name is only known when the
+ * product was added, or when the change comes from the ProductViewBatchWriter.
+ * <p/>
+ * A product that was added out of order is first published without a name, and its name
+ * is published when the added event comes, with the version the product already had (the
+ * added event's flag is older). So subscribers that skip versions they've seen should
+ * still take a change that carries a name they didn't have.
+ */
+public class ProductChange {
+
+    private final String id;
+    private final String name;
+    private final boolean saleable;
+    private final long version;
+
+    public ProductChange(String id, String name, boolean saleable, long version) {
+        this.id = id;
+        this.name = name;
+        this.saleable = saleable;
+        this.version = version;
+    }
+
+    /**
+     * @param newer a later change to the same product.
+     * @return the two changes as one.
+     */
+    ProductChange coalesce(ProductChange newer) {
+        return new ProductChange(id, null == newer.name ? name : newer.name, newer.saleable, newer.version);
+    }
+
+    /**
+     * @param name
+     * @return this change, with the name filled in.
+     */
+    ProductChange named(String name) {
+        return new ProductChange(id, name, saleable, version);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getName() {
+        return name;
+    }
+
+    public boolean isSaleable() {
+        return saleable;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,228 @@
+package com.soagrowers.productquery.feed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes the changes to the product view to its subscribers (see ProductChangeFeedRestController).
+ * The ProductViewEventHandler (and the ProductViewBatchWriter) report each change, and the
+ * changes are handed to the subscribers once the transaction that made them has committed,
+ * so a subscriber never sees a change that is then rolled back.
+ * <p/>
+ * Publishing never waits for a subscriber: it only adds to the subscriber's buffer and, if
+ * the subscriber was waiting, wakes it up. The changes are then written to the subscriber
+ * by one of the feed's threads (for streams) or by the container (for long polls).
+ * <p/>
+ * Writing to a stream blocks while the client isn't reading, so each batch of writes has a
+ * deadline of 'writeTimeoutMillis' (see WriteDeadline). Without one, a few clients that
+ * stop reading would hold every feed thread, and the other streams would fall behind
+ * until they were disconnected. The deadlines are kept by a watchdog thread of their own.
+ * <p/>
+ * Long poll subscriptions that nobody polls for 'idleMillis' are dropped.
+ */
+public class ProductChangeFeed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductChangeFeed.class);
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+    private final int bufferSize;
+    private final long idleMillis;
+    private final long writeTimeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    /**
+     * @param bufferSize the number of products a subscriber can fall behind by.
+     * @param threads    the number of threads that write to streaming subscribers.
+     * @param idleMillis how long a long poll subscription lasts without being polled.
+     * @param writeTimeoutMillis how long a stream's batch of writes may block for.
+     */
+    public ProductChangeFeed(int bufferSize, int threads, long idleMillis, long writeTimeoutMillis) {
+        this.bufferSize = bufferSize;
+        this.idleMillis = idleMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "product-change-feed-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "product-change-feed-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.watchdog.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                dropIdleSubscriptions();
+            }
+        }, idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the change once the current transaction commits (or straight away, without
+     * a transaction).
+     *
+     * @param change
+     */
+    public void changed(ProductChange change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(Collections.singletonList(change));
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<ProductChange> changes = (List<ProductChange>) TransactionSynchronizationManager.getResource(this);
+        if (null == changes) {
+            changes = new ArrayList<ProductChange>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new PublishSynchronization());
+        }
+        changes.add(change);
+    }
+
+    void publish(List<ProductChange> changes) {
+        published.addAndGet(changes.size());
+        for (Subscription subscription : subscriptions.values()) {
+            for (ProductChange change : changes) {
+                Subscription.Offer offer = subscription.offer(change);
+                if (Subscription.Offer.COALESCED == offer) {
+                    coalesced.incrementAndGet();
+                } else if (Subscription.Offer.OVERFLOWED == offer) {
+                    LOG.info("Subscriber {} has fallen more than {} products behind; disconnecting it", subscription.getId(), bufferSize);
+                    disconnected.incrementAndGet();
+                    subscriptions.remove(subscription.getId());
+                    break;
+                }
+            }
+
+            Subscription.Listener listener = subscription.takeListener();
+            if (null != listener) {
+                listener.changesAvailable();
+            }
+        }
+    }
+
+    /**
+     * @param expires true for a long poll subscription, which is dropped when it's not polled.
+     * @return a new subscription, which gets the changes from now on.
+     */
+    public Subscription subscribe(boolean expires) {
+        Subscription subscription = new Subscription(UUID.randomUUID().toString(), bufferSize, expires);
+        subscriptions.put(subscription.getId(), subscription);
+        return subscription;
+    }
+
+    /**
+     * @param id
+     * @return the subscription, or null if it has been closed or dropped.
+     */
+    public Subscription getSubscription(String id) {
+        return subscriptions.get(id);
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription.getId());
+        subscription.close();
+    }
+
+    /**
+     * Runs the task on one of the feed's threads.
+     *
+     * @param task
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Starts the deadline for a batch of writes on the current thread, which has to finish
+     * it when the writes are done.
+     *
+     * @return the deadline.
+     */
+    public WriteDeadline startWrite() {
+        WriteDeadline deadline = new WriteDeadline();
+        deadline.schedule(watchdog, writeTimeoutMillis);
+        return deadline;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private void dropIdleSubscriptions() {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.isIdle(now, idleMillis)) {
+                LOG.debug("Dropping idle subscription {}", subscription.getId());
+                unsubscribe(subscription);
+            }
+        }
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return the number of changes merged into a change that was still pending.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of subscribers disconnected for being too slow.
+     */
+    public long getDisconnectedCount() {
+        return disconnected.get();
+    }
+
+    private class PublishSynchronization extends TransactionSynchronizationAdapter {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void afterCommit() {
+            publish((List<ProductChange>) TransactionSynchronizationManager.getResource(ProductChangeFeed.this));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ProductChangeFeed.this);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.soagrowers.productquery.feed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One subscriber's changes that haven't been delivered yet. There is at most one pending
+ * change per product: a newer change to a product that is still pending is merged into
+ * it, so a subscriber that falls behind gets the latest state rather than every step.
+ * An older or repeated change is dropped, unless it fills in the name of a product that
+ * is pending without one (see ProductChange).
+ * <p/>
+ * The buffer holds at most 'capacity' products. A subscriber that lets more products than
+ * that pile up is too slow to keep up, and is closed. It has to read the view again (and
+ * subscribe again) to catch up.
+ * <p/>
+ * Whoever delivers the changes takes them with drainOrListen(). If there are none, the
+ * listener is kept and told (once) when there are.
+ */
+public class Subscription {
+
+    public interface Listener {
+
+        void changesAvailable();
+    }
+
+    enum Offer {
+        ADDED, COALESCED, STALE, OVERFLOWED, CLOSED
+    }
+
+    private final String id;
+    private final int capacity;
+    private final boolean expires;
+    private final Map<String, ProductChange> pending = new LinkedHashMap<String, ProductChange>();
+    private Listener listener;
+    private boolean closed;
+    private volatile long lastActiveMillis = System.currentTimeMillis();
+
+    Subscription(String id, int capacity, boolean expires) {
+        this.id = id;
+        this.capacity = capacity;
+        this.expires = expires;
+    }
+
+    synchronized Offer offer(ProductChange change) {
+        if (closed) {
+            return Offer.CLOSED;
+        }
+
+        ProductChange previous = pending.get(change.getId());
+        if (null != previous) {
+            if (change.getVersion() <= previous.getVersion()) {
+                if (null != previous.getName() || null == change.getName()) {
+                    return Offer.STALE;
+                }
+                pending.put(change.getId(), previous.named(change.getName()));
+                return Offer.COALESCED;
+            }
+            pending.put(change.getId(), previous.coalesce(change));
+            return Offer.COALESCED;
+        }
+        if (pending.size() >= capacity) {
+            closed = true;
+            pending.clear();
+            return Offer.OVERFLOWED;
+        }
+        pending.put(change.getId(), change);
+        return Offer.ADDED;
+    }
+
+    /**
+     * @return the listener, if one was waiting for changes. It won't be returned again.
+     */
+    synchronized Listener takeListener() {
+        Listener waiting = listener;
+        listener = null;
+        return waiting;
+    }
+
+    /**
+     * Takes the pending changes, or if there are none, keeps the listener until there are.
+     *
+     * @param listener
+     * @return the changes, in the order the products first changed; an empty list if there
+     * were none; null if the subscription is closed.
+     */
+    public synchronized List<ProductChange> drainOrListen(Listener listener) {
+        lastActiveMillis = System.currentTimeMillis();
+        if (closed) {
+            return null;
+        }
+        if (pending.isEmpty()) {
+            this.listener = listener;
+            return Collections.emptyList();
+        }
+        List<ProductChange> changes = new ArrayList<ProductChange>(pending.values());
+        pending.clear();
+        this.listener = null;
+        return changes;
+    }
+
+    /**
+     * Forgets the listener if it is still waiting, e.g. when a long poll times out.
+     *
+     * @param listener
+     */
+    public synchronized void stopListening(Listener listener) {
+        lastActiveMillis = System.currentTimeMillis();
+        if (this.listener == listener) {
+            this.listener = null;
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        pending.clear();
+        listener = null;
+    }
+
+    /**
+     * @param nowMillis
+     * @param idleMillis
+     * @return true for a long poll subscription that nobody has polled for idleMillis.
+     */
+    synchronized boolean isIdle(long nowMillis, long idleMillis) {
+        return expires && null == listener && nowMillis - lastActiveMillis > idleMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
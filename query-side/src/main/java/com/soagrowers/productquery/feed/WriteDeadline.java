@@ -0,0 +1,48 @@
+package com.soagrowers.productquery.feed;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the blocking writes to a client on one of the feed's threads (see
+ * ProductChangeFeed.startWrite()). If the writes haven't finished when the deadline
+ * passes, the thread is interrupted, and the blocking write gives up with an
+ * InterruptedIOException, so a client that stops reading can't hold on to the thread.
+ * <p/>
+ * Finishing clears the interrupt, if there was one, so the thread goes back to the pool
+ * as it came.
+ */
+public class WriteDeadline implements Runnable {
+
+    private final Thread writer = Thread.currentThread();
+    private ScheduledFuture<?> timeout;
+    private boolean finished;
+    private boolean expired;
+
+    synchronized void schedule(ScheduledExecutorService scheduler, long timeoutMillis) {
+        timeout = scheduler.schedule(this, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void run() {
+        if (!finished) {
+            expired = true;
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * @return true if the deadline passed before the writes were finished.
+     */
+    public synchronized boolean finish() {
+        finished = true;
+        if (null != timeout) {
+            timeout.cancel(false);
+        }
+        if (expired) {
+            Thread.interrupted();
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,55 @@
+package com.soagrowers.productquery.handlers;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import com.soagrowers.productquery.compact.CompactProductView;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.eventhandling.annotation.SequenceNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the CompactProductView up to date when 'spring.application.compactView' is on.
+ * It gets the same events as the ProductViewEventHandler, replays included. The products
+ * already in the database view at startup are copied in by the CompactProductViewLoader.
+ * <p/>
+ * The compact view isn't part of the AMQP consumer's transaction, so it can be ahead of
+ * the database view if that transaction rolls back. The redelivered events are then
+ * skipped by their sequence numbers, and the two views agree again.
+ */
+@Component
+public class CompactProductViewEventHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactProductViewEventHandler.class);
+
+    @Autowired
+    private CompactProductView compactProductView;
+
+    @Value("${spring.application.compactView:false}")
+    private boolean enabled;
+
+    @EventHandler
+    public void handle(ProductAddedEvent event, @SequenceNumber Long sequenceNumber) {
+        if (enabled && !compactProductView.add(event.getId(), event.getName(), sequenceNumber)) {
+            LOG.debug("Skipped a duplicate ProductAddedEvent: [{}]", event.getId());
+        }
+    }
+
+    @EventHandler
+    public void handle(ProductSaleableEvent event, @SequenceNumber Long sequenceNumber) {
+        if (enabled && !compactProductView.setSaleable(event.getId(), true, sequenceNumber)) {
+            LOG.debug("Skipped a stale ProductSaleableEvent: [{}] #{}", event.getId(), sequenceNumber);
+        }
+    }
+
+    @EventHandler
+    public void handle(ProductUnsaleableEvent event, @SequenceNumber Long sequenceNumber) {
+        if (enabled && !compactProductView.setSaleable(event.getId(), false, sequenceNumber)) {
+            LOG.debug("Skipped a stale ProductUnsaleableEvent: [{}] #{}", event.getId(), sequenceNumber);
+        }
+    }
+}
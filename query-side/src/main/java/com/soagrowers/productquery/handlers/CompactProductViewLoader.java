@@ -0,0 +1,53 @@
+package com.soagrowers.productquery.handlers;
+
+import com.soagrowers.productquery.compact.CompactProductView;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+/**
+ * Fills the CompactProductView from the database view, a page of products at a time in id
+ * order (the same keyset paging as /products/search/after), and then marks it as loaded.
+ * The CompactProductViewEventHandler keeps applying events while this runs, and the load
+ * never overwrites a newer state, so the two can run side by side.
+ */
+public class CompactProductViewLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactProductViewLoader.class);
+
+    private final ProductRepository productRepository;
+    private final CompactProductView compactProductView;
+    private final int pageSize;
+
+    public CompactProductViewLoader(ProductRepository productRepository, CompactProductView compactProductView, int pageSize) {
+        this.productRepository = productRepository;
+        this.compactProductView = compactProductView;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the number of products read from the database view.
+     */
+    public long load() {
+        long start = System.currentTimeMillis();
+        long read = 0;
+        List<Product> page = productRepository.findFirstPage(new PageRequest(0, pageSize));
+        while (!page.isEmpty()) {
+            for (Product product : page) {
+                compactProductView.load(product.getId(), product.getName(), product.isSaleable(), product.getSequenceNumber());
+            }
+            read += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            page = productRepository.findAfter(page.get(page.size() - 1).getId(), new PageRequest(0, pageSize));
+        }
+        compactProductView.markLoaded();
+        LOG.info("Loaded {} products into the compact view in {}ms", read, System.currentTimeMillis() - start);
+        return read;
+    }
+}
@@ -0,0 +1,261 @@
+package com.soagrowers.productquery.handlers;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import com.soagrowers.productquery.cache.ProductReadCache;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Writes the product view in batches. Events are collected for as long as the current
+ * transaction runs (the AMQP consumer commits every 'txSize' messages) and written just
+ * before it commits:
+ * <ol>
+ * <li>the rows of every product in the batch are loaded with one 'in' query,</li>
+ * <li>the events are applied to those rows in memory, in the order they arrived,</li>
+ * <li>new and changed rows are written with one JDBC batch insert and one batch update.</li>
+ * </ol>
+ * A product touched many times in a batch is written once. Without a transaction every
+ * event is written straight away.
+ * <p/>
+ * The rules are those of the ProductViewEventHandler: events at or below a product's
+ * sequence number are skipped, a saleable / unsaleable event for an unknown product adds
+ * it without a name, and an added event for a product that exists only names it, if it
+ * has no name yet.
+ */
+public class ProductViewBatchWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductViewBatchWriter.class);
+
+    static final String SELECT_PRODUCTS = "select id, name, saleable, sequence_number from product where id in (:ids)";
+    static final String INSERT_PRODUCT = "insert into product (id, name, saleable, sequence_number) values (?, ?, ?, ?)";
+    static final String UPDATE_PRODUCT = "update product set name = ?, saleable = ?, sequence_number = ? where id = ? and sequence_number <= ?";
+    static final String DROP_SALEABLE_INDEX = "drop index if exists " + Product.SALEABLE_INDEX;
+    static final String CREATE_SALEABLE_INDEX = "create index if not exists " + Product.SALEABLE_INDEX + " on product (saleable, id)";
+
+    private final DataSource dataSource;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final ProductReadCache productReadCache;
+
+    private final ProductViewVersion productViewVersion;
+
+    private final ProductChangeFeed productChangeFeed;
+
+    public ProductViewBatchWriter(DataSource dataSource, ProductReadCache productReadCache,
+                                  ProductViewVersion productViewVersion, ProductChangeFeed productChangeFeed) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.productReadCache = productReadCache;
+        this.productViewVersion = productViewVersion;
+        this.productChangeFeed = productChangeFeed;
+    }
+
+    /**
+     * Adds the event to the current transaction's batch.
+     *
+     * @param event          a ProductAddedEvent, ProductSaleableEvent or ProductUnsaleableEvent.
+     * @param sequenceNumber the event's sequence number in its product's event stream.
+     */
+    public void add(Object event, long sequenceNumber) {
+        SequencedEvent sequenced = new SequencedEvent(event, sequenceNumber);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(Collections.singletonList(sequenced));
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<SequencedEvent> batch = (List<SequencedEvent>) TransactionSynchronizationManager.getResource(this);
+        if (null == batch) {
+            batch = new ArrayList<SequencedEvent>();
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(new BatchSynchronization());
+        }
+        batch.add(sequenced);
+    }
+
+    /**
+     * Applies the events, in order, and writes the result.
+     *
+     * @param events
+     */
+    void write(List<SequencedEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Set<String> ids = new LinkedHashSet<String>();
+        for (SequencedEvent event : events) {
+            ids.add(idOf(event.event));
+        }
+
+        final Map<String, Product> stored = new HashMap<String, Product>();
+        jdbcTemplate.query(SELECT_PRODUCTS, Collections.singletonMap("ids", ids), new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                stored.put(rs.getString(1), new Product(rs.getString(1), rs.getString(2), rs.getBoolean(3), rs.getLong(4)));
+            }
+        });
+
+        Map<String, Product> rows = new LinkedHashMap<String, Product>();
+        for (Product product : stored.values()) {
+            rows.put(product.getId(), new Product(product.getId(), product.getName(), product.isSaleable(), product.getSequenceNumber()));
+        }
+        for (SequencedEvent event : events) {
+            apply(event, rows);
+        }
+
+        List<Object[]> inserts = new ArrayList<Object[]>();
+        List<Object[]> updates = new ArrayList<Object[]>();
+        List<ProductChange> changes = new ArrayList<ProductChange>();
+        for (Product row : rows.values()) {
+            Product before = stored.get(row.getId());
+            if (null == before) {
+                inserts.add(new Object[]{row.getId(), row.getName(), row.isSaleable(), row.getSequenceNumber()});
+            } else if (before.getSequenceNumber() != row.getSequenceNumber() || null == before.getName() && null != row.getName()) {
+                updates.add(new Object[]{row.getName(), row.isSaleable(), row.getSequenceNumber(), row.getId(), row.getSequenceNumber()});
+            } else {
+                continue;
+            }
+            changes.add(new ProductChange(row.getId(), row.getName(), row.isSaleable(), row.getSequenceNumber()));
+        }
+
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.getJdbcOperations().batchUpdate(INSERT_PRODUCT, inserts);
+            for (Object[] insert : inserts) {
+                if ((Boolean) insert[2]) {
+                    productReadCache.saleableChanged((String) insert[0]);
+                } else {
+                    productReadCache.productAdded((String) insert[0]);
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.getJdbcOperations().batchUpdate(UPDATE_PRODUCT, updates);
+            for (Object[] update : updates) {
+                productReadCache.saleableChanged((String) update[3]);
+            }
+        }
+        if (!changes.isEmpty()) {
+            productViewVersion.changed();
+        }
+        for (ProductChange change : changes) {
+            productChangeFeed.changed(change);
+        }
+        LOG.debug("Wrote a batch of {} events for {} products ({} inserts, {} updates)",
+                events.size(), ids.size(), inserts.size(), updates.size());
+    }
+
+    /**
+     * Drops the indexes that only serve queries, so that a bulk load doesn't maintain them
+     * row by row. See createSecondaryIndexes().
+     */
+    public void dropSecondaryIndexes() {
+        executeOutsideTransaction(DROP_SALEABLE_INDEX);
+    }
+
+    public void createSecondaryIndexes() {
+        executeOutsideTransaction(CREATE_SALEABLE_INDEX);
+    }
+
+    /**
+     * Runs the statement on a connection of its own, committed straight away, so that it
+     * doesn't hold locks in a transaction that other threads (e.g. the projection lanes)
+     * are waiting on.
+     */
+    private void executeOutsideTransaction(String sql) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException("executeOutsideTransaction", sql, e);
+        }
+        LOG.debug("Executed '{}'", sql);
+    }
+
+    private static void apply(SequencedEvent sequenced, Map<String, Product> rows) {
+        Object event = sequenced.event;
+        if (event instanceof ProductAddedEvent) {
+            ProductAddedEvent added = (ProductAddedEvent) event;
+            Product row = rows.get(added.getId());
+            if (null == row) {
+                rows.put(added.getId(), new Product(added.getId(), added.getName(), false, sequenced.sequenceNumber));
+            } else if (null == row.getName()) {
+                row.setName(added.getName());
+            }
+            return;
+        }
+
+        Product row = rows.get(idOf(event));
+        if (null == row) {
+            rows.put(idOf(event), new Product(idOf(event), null, event instanceof ProductSaleableEvent, sequenced.sequenceNumber));
+            return;
+        }
+        if (sequenced.sequenceNumber <= row.getSequenceNumber()) {
+            return;
+        }
+        row.setSaleable(event instanceof ProductSaleableEvent);
+        row.setSequenceNumber(sequenced.sequenceNumber);
+    }
+
+    private static String idOf(Object event) {
+        if (event instanceof ProductAddedEvent) {
+            return ((ProductAddedEvent) event).getId();
+        }
+        if (event instanceof ProductSaleableEvent) {
+            return ((ProductSaleableEvent) event).getId();
+        }
+        if (event instanceof ProductUnsaleableEvent) {
+            return ((ProductUnsaleableEvent) event).getId();
+        }
+        throw new IllegalArgumentException("Not a product view event: " + event);
+    }
+
+    private static class SequencedEvent {
+
+        private final Object event;
+        private final long sequenceNumber;
+
+        SequencedEvent(Object event, long sequenceNumber) {
+            this.event = event;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    /**
+     * Writes the batch before the transaction commits, so a failed write rolls the
+     * transaction back and the AMQP messages are redelivered.
+     */
+    private class BatchSynchronization extends TransactionSynchronizationAdapter {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void beforeCommit(boolean readOnly) {
+            write((List<SequencedEvent>) TransactionSynchronizationManager.getResource(ProductViewBatchWriter.this));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ProductViewBatchWriter.this);
+        }
+    }
+}
@@ -3,16 +3,43 @@ package com.soagrowers.productquery.handlers;
 import com.soagrowers.productevents.events.ProductAddedEvent;
 import com.soagrowers.productevents.events.ProductSaleableEvent;
 import com.soagrowers.productevents.events.ProductUnsaleableEvent;
-import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.cache.ProductReadCache;
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.feed.ProductChangeFeed;
 import com.soagrowers.productquery.repository.ProductRepository;
 import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.eventhandling.annotation.SequenceNumber;
 import org.axonframework.eventhandling.replay.ReplayAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
+ * With 'spring.application.projectionBatching' switched on, the events are handed to the
+ * ProductViewBatchWriter and written once per AMQP transaction, instead of being saved
+ * through the repository one by one.
+ * <p/>
+ * Each product's row remembers the sequence number of the last event applied to it, and
+ * events at or below that number are skipped. So redelivered events aren't applied twice,
+ * and a replay (see ProductViewReplayer) can run over the existing view without clearing
+ * it first.
+ * <p/>
+ * Events for a product can arrive out of order (e.g. on redelivery). A saleable or
+ * unsaleable event for a product that isn't in the view yet adds it without a name, and
+ * the added event, when it comes, only fills the name in: the flag it would set is older
+ * than the one already there.
+ * <p/>
+ * Every change is passed on to the ProductReadCache, which evicts just the entries that
+ * changed once the transaction commits, moves the ProductViewVersion on, and pushes the
+ * change to the subscribers of the ProductChangeFeed.
+ * <p/>
+ * With 'spring.application.replayBulkLoad' on (the default), replayed events are always
+ * written in batches, and the secondary indexes are dropped for the replay and built again
+ * at the end. The batches are only written by parallel lanes when
+ * 'spring.application.consumerLanes' is above 1 (it's 1 by default).
+ * <p/>
  * Created by Ben on 10/08/2015.
  */
 @Component
@@ -23,46 +50,101 @@ public class ProductViewEventHandler implements ReplayAware {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductViewBatchWriter productViewBatchWriter;
+
+    @Autowired
+    private ProductReadCache productReadCache;
+
+    @Autowired
+    private ProductViewVersion productViewVersion;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Value("${spring.application.projectionBatching:false}")
+    private boolean batching;
+
+    @Value("${spring.application.replayBulkLoad:true}")
+    private boolean bulkLoad;
+
+    private volatile boolean bulkLoading;
+
     @EventHandler
-    public void handle(ProductAddedEvent event) {
-        LOG.info("ProductAddedEvent: [{}] '{}'", event.getId(), event.getName());
-        productRepository.save(new Product(event.getId(), event.getName(), false));
+    public void handle(ProductAddedEvent event, @SequenceNumber Long sequenceNumber) {
+        LOG.info("ProductAddedEvent: [{}] '{}' #{}", event.getId(), event.getName(), sequenceNumber);
+        if (batching || bulkLoading) {
+            productViewBatchWriter.add(event, sequenceNumber);
+            return;
+        }
+        if (1 == productRepository.addIfAbsent(event.getId(), event.getName(), sequenceNumber)) {
+            productReadCache.productAdded(event.getId());
+            productViewVersion.changed();
+            productChangeFeed.changed(new ProductChange(event.getId(), event.getName(), false, sequenceNumber));
+            return;
+        }
+        if (null == event.getName() || 0 == productRepository.nameIfUnnamed(event.getId(), event.getName())) {
+            LOG.debug("Skipped a duplicate ProductAddedEvent: [{}]", event.getId());
+            return;
+        }
+        productReadCache.saleableChanged(event.getId());
+        productViewVersion.changed();
+        productChangeFeed.changed(productRepository.findChange(event.getId()));
     }
 
     @EventHandler
-    public void handle(ProductSaleableEvent event) {
-        LOG.info("ProductSaleableEvent: [{}]", event.getId());
-        if (productRepository.exists(event.getId())) {
-            Product product = productRepository.findOne(event.getId());
-            if (!product.isSaleable()) {
-                product.setSaleable(true);
-                productRepository.save(product);
-            }
+    public void handle(ProductSaleableEvent event, @SequenceNumber Long sequenceNumber) {
+        LOG.info("ProductSaleableEvent: [{}] #{}", event.getId(), sequenceNumber);
+        if (batching || bulkLoading) {
+            productViewBatchWriter.add(event, sequenceNumber);
+            return;
         }
+        setSaleable(event.getId(), true, sequenceNumber);
     }
 
     @EventHandler
-    public void handle(ProductUnsaleableEvent event) {
-        LOG.info("ProductUnsaleableEvent: [{}]", event.getId());
-
-        if (productRepository.exists(event.getId())) {
-            Product product = productRepository.findOne(event.getId());
-            if (product.isSaleable()) {
-                product.setSaleable(false);
-                productRepository.save(product);
-            }
+    public void handle(ProductUnsaleableEvent event, @SequenceNumber Long sequenceNumber) {
+        LOG.info("ProductUnsaleableEvent: [{}] #{}", event.getId(), sequenceNumber);
+        if (batching || bulkLoading) {
+            productViewBatchWriter.add(event, sequenceNumber);
+            return;
+        }
+        setSaleable(event.getId(), false, sequenceNumber);
+    }
+
+    private void setSaleable(String id, boolean saleable, long sequenceNumber) {
+        if (0 == productRepository.updateSaleableIfNewer(id, saleable, sequenceNumber)
+                && 0 == productRepository.addUnnamedIfAbsent(id, saleable, sequenceNumber)) {
+            LOG.debug("Skipped a stale {}: [{}] #{}", saleable ? "ProductSaleableEvent" : "ProductUnsaleableEvent", id, sequenceNumber);
+            return;
         }
+        productReadCache.saleableChanged(id);
+        productViewVersion.changed();
+        productChangeFeed.changed(new ProductChange(id, null, saleable, sequenceNumber));
     }
 
     public void beforeReplay() {
-        LOG.info("Event Replay is about to START. Clearing the View...");
+        LOG.info("Event Replay is about to START.");
+        if (bulkLoad) {
+            productViewBatchWriter.dropSecondaryIndexes();
+            bulkLoading = true;
+        }
     }
 
     public void afterReplay() {
         LOG.info("Event Replay has FINISHED.");
+        endBulkLoad();
     }
 
     public void onReplayFailed(Throwable cause) {
         LOG.error("Event Replay has FAILED.");
+        endBulkLoad();
+    }
+
+    private void endBulkLoad() {
+        if (bulkLoading) {
+            bulkLoading = false;
+            productViewBatchWriter.createSecondaryIndexes();
+        }
     }
 }
@@ -0,0 +1,58 @@
+package com.soagrowers.productquery.handlers;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The version of the product view as a whole, which moves on whenever a transaction that
+ * changed the view commits. The ProductViewEventHandler (and the ProductViewBatchWriter)
+ * report the changes. Used for the ETags of the product listings, see ProductETagFilter.
+ * <p/>
+ * The version starts again at 0 when the query side restarts, so the tag includes the
+ * time this instance started, and tags from before a restart never match.
+ */
+public class ProductViewVersion {
+
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Moves the version on once the current transaction commits (or straight away, without
+     * a transaction). Moving it on before the commit would let a client tag the old view
+     * with the new version.
+     */
+    public void changed() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            version.incrementAndGet();
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ProductViewVersion.this);
+                }
+            });
+        }
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return the version, qualified by when this instance started.
+     */
+    public String getTag() {
+        return startedAtMillis + "-" + version.get();
+    }
+}
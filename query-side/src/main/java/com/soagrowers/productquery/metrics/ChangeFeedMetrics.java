@@ -0,0 +1,34 @@
+package com.soagrowers.productquery.metrics;
+
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the state of the change feed on the actuator's /metrics endpoint: how many
+ * subscribers there are, and how many were disconnected for falling behind.
+ */
+public class ChangeFeedMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "changes.";
+
+    private final ProductChangeFeed feed;
+
+    public ChangeFeedMetrics(ProductChangeFeed feed) {
+        this.feed = feed;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>(PREFIX + "subscriptions", feed.getSubscriptionCount()));
+        metrics.add(new Metric<Long>(PREFIX + "published", feed.getPublishedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "coalesced", feed.getCoalescedCount()));
+        metrics.add(new Metric<Long>(PREFIX + "disconnected", feed.getDisconnectedCount()));
+        return metrics;
+    }
+}
@@ -0,0 +1,33 @@
+package com.soagrowers.productquery.metrics;
+
+import com.soagrowers.productquery.compact.CompactProductView;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the size of the CompactProductView on the actuator's /metrics endpoint.
+ */
+public class CompactProductViewMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "compactView.";
+
+    private final CompactProductView view;
+
+    public CompactProductViewMetrics(CompactProductView view) {
+        this.view = view;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>(PREFIX + "products", view.size()));
+        metrics.add(new Metric<Integer>(PREFIX + "saleable", view.count(true)));
+        metrics.add(new Metric<Integer>(PREFIX + "names", view.nameCount()));
+        metrics.add(new Metric<Long>(PREFIX + "heapBytes", view.heapBytes()));
+        return metrics;
+    }
+}
@@ -0,0 +1,48 @@
+package com.soagrowers.productquery.metrics;
+
+import com.soagrowers.productquery.cluster.PartitionedCluster;
+import org.axonframework.eventhandling.Cluster;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Publishes the backlog (events queued or being handled) and the number of handled events
+ * of every projection lane on the actuator's /metrics endpoint. A lane with a much bigger
+ * backlog than the others is stuck on a few busy products. Nothing is published unless the
+ * consumer is partitioned.
+ */
+public class PartitionedClusterMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "projection.lanes.";
+
+    private final Cluster cluster;
+
+    public PartitionedClusterMetrics(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        if (!(cluster instanceof PartitionedCluster)) {
+            return Collections.emptyList();
+        }
+
+        PartitionedCluster partitioned = (PartitionedCluster) cluster;
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        long totalBacklog = 0;
+        for (int lane = 0; lane < partitioned.getLaneCount(); lane++) {
+            long backlog = partitioned.getBacklog(lane);
+            totalBacklog += backlog;
+            metrics.add(new Metric<Long>(PREFIX + lane + ".backlog", backlog));
+            metrics.add(new Metric<Long>(PREFIX + lane + ".processed", partitioned.getProcessedCount(lane)));
+        }
+        metrics.add(new Metric<Integer>(PREFIX + "count", partitioned.getLaneCount()));
+        metrics.add(new Metric<Long>(PREFIX + "backlog", totalBacklog));
+        return metrics;
+    }
+}
@@ -0,0 +1,49 @@
+package com.soagrowers.productquery.metrics;
+
+import com.soagrowers.productquery.cache.ProductReadCache;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.statistics.StatisticsGateway;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the statistics of the product read caches on the actuator's /metrics endpoint:
+ * the hit rate, and the heap the cached products and saleable lists take up.
+ */
+public class ProductReadCacheMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "cache.";
+
+    private final ProductReadCache cache;
+
+    public ProductReadCacheMetrics(ProductReadCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        addMetrics(metrics, cache.getProducts());
+        addMetrics(metrics, cache.getSaleableProducts());
+        metrics.add(new Metric<Long>(PREFIX + "products.uncachedLoads", cache.getUncachedLoadCount()));
+        return metrics;
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, Ehcache ehcache) {
+        String prefix = PREFIX + ehcache.getName() + ".";
+        StatisticsGateway statistics = ehcache.getStatistics();
+        long hits = statistics.cacheHitCount();
+        long misses = statistics.cacheMissCount();
+        metrics.add(new Metric<Long>(prefix + "size", statistics.getSize()));
+        metrics.add(new Metric<Long>(prefix + "heapBytes", statistics.getLocalHeapSizeInBytes()));
+        metrics.add(new Metric<Long>(prefix + "hits", hits));
+        metrics.add(new Metric<Long>(prefix + "misses", misses));
+        metrics.add(new Metric<Double>(prefix + "hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses)));
+        metrics.add(new Metric<Long>(prefix + "evictions", statistics.cacheEvictedCount()));
+        metrics.add(new Metric<Long>(prefix + "removals", statistics.cacheRemoveCount()));
+    }
+}
@@ -0,0 +1,37 @@
+package com.soagrowers.productquery.metrics;
+
+import com.soagrowers.productquery.replay.ReplayProgress;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the progress of the current (or last) replay of the product view on the
+ * actuator's /metrics endpoint. 'replay.running' is 1 while a replay is under way.
+ */
+public class ReplayMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "replay.";
+
+    private final ReplayProgress progress;
+
+    public ReplayMetrics(ReplayProgress progress) {
+        this.progress = progress;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Integer>(PREFIX + "running", ReplayProgress.State.RUNNING == progress.getState() ? 1 : 0));
+        metrics.add(new Metric<Integer>(PREFIX + "failed", ReplayProgress.State.FAILED == progress.getState() ? 1 : 0));
+        metrics.add(new Metric<Long>(PREFIX + "total", progress.getTotal()));
+        metrics.add(new Metric<Long>(PREFIX + "replayed", progress.getReplayed()));
+        metrics.add(new Metric<Double>(PREFIX + "percentComplete", progress.getPercentComplete()));
+        metrics.add(new Metric<Double>(PREFIX + "eventsPerSecond", progress.getEventsPerSecond()));
+        metrics.add(new Metric<Long>(PREFIX + "remainingSeconds", progress.getRemainingSeconds()));
+        return metrics;
+    }
+}
@@ -0,0 +1,64 @@
+package com.soagrowers.productquery.replay;
+
+import com.mongodb.DBCollection;
+import org.axonframework.eventhandling.replay.ReplayingCluster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the product view from the command side's event store, on a background thread.
+ * <p/>
+ * The ReplayingCluster keeps consuming live events from the queue while the replay runs.
+ * They are held back in a backlog (see BackloggingIncomingMessageHandler): any that turn
+ * up in the replayed history are dropped from the backlog, and the rest are handled once
+ * the replay has finished. So the view switches over to the live events without gaps and
+ * without applying any event twice.
+ */
+public class ProductViewReplayer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductViewReplayer.class);
+
+    private final ReplayingCluster replayingCluster;
+    private final DBCollection eventCollection;
+    private final ReplayProgress progress;
+
+    public ProductViewReplayer(ReplayingCluster replayingCluster, DBCollection eventCollection, ReplayProgress progress) {
+        this.replayingCluster = replayingCluster;
+        this.eventCollection = eventCollection;
+        this.progress = progress;
+    }
+
+    /**
+     * Starts a replay, unless one is already running.
+     *
+     * @return false if a replay is already running.
+     */
+    public boolean startReplay() {
+        if (!progress.start(eventCollection.count())) {
+            return false;
+        }
+
+        LOG.info("Starting a replay of ~{} events into the product view", progress.getTotal());
+        Thread replay = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replayingCluster.startReplay();
+                    progress.finished();
+                    LOG.info("Replayed {} events into the product view in {}ms",
+                            progress.getReplayed(), progress.getElapsedMillis());
+                } catch (RuntimeException e) {
+                    progress.failed(e);
+                    LOG.error("The product view replay FAILED after {} events", progress.getReplayed(), e);
+                }
+            }
+        }, "product-view-replay");
+        replay.setDaemon(true);
+        replay.start();
+        return true;
+    }
+
+    public ReplayProgress getProgress() {
+        return progress;
+    }
+}
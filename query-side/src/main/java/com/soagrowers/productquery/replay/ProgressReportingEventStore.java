@@ -0,0 +1,57 @@
+package com.soagrowers.productquery.replay;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.CriteriaBuilder;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the events a replay visits into the ReplayProgress, and logs how far the replay
+ * has got every 'logInterval' events.
+ */
+public class ProgressReportingEventStore implements EventStoreManagement {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProgressReportingEventStore.class);
+
+    private final EventStoreManagement delegate;
+    private final ReplayProgress progress;
+    private final long logInterval;
+
+    public ProgressReportingEventStore(EventStoreManagement delegate, ReplayProgress progress, long logInterval) {
+        this.delegate = delegate;
+        this.progress = progress;
+        this.logInterval = logInterval;
+    }
+
+    @Override
+    public void visitEvents(EventVisitor visitor) {
+        delegate.visitEvents(counting(visitor));
+    }
+
+    @Override
+    public void visitEvents(Criteria criteria, EventVisitor visitor) {
+        delegate.visitEvents(criteria, counting(visitor));
+    }
+
+    @Override
+    public CriteriaBuilder newCriteriaBuilder() {
+        return delegate.newCriteriaBuilder();
+    }
+
+    private EventVisitor counting(final EventVisitor visitor) {
+        return new EventVisitor() {
+            @Override
+            public void doWithEvent(DomainEventMessage event) {
+                visitor.doWithEvent(event);
+                if (progress.replayed() % logInterval == 0) {
+                    LOG.info("Replayed {} of ~{} events ({}%, {} events/s, ~{}s to go)",
+                            progress.getReplayed(), progress.getTotal(), Math.round(progress.getPercentComplete()),
+                            Math.round(progress.getEventsPerSecond()), progress.getRemainingSeconds());
+                }
+            }
+        };
+    }
+}
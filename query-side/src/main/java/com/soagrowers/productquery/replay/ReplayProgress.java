@@ -0,0 +1,101 @@
+package com.soagrowers.productquery.replay;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How far the current (or last) replay of the product view has got. The total is the size
+ * of the event store when the replay started, so it's an estimate while commands are
+ * still being handled.
+ */
+public class ReplayProgress {
+
+    public enum State {
+        IDLE, RUNNING, FINISHED, FAILED
+    }
+
+    private volatile State state = State.IDLE;
+    private volatile long total;
+    private volatile long startedAtMillis;
+    private volatile long finishedAtMillis;
+    private volatile String failure;
+    private final AtomicLong replayed = new AtomicLong();
+
+    /**
+     * @param total the number of events expected.
+     * @return false if a replay is already running.
+     */
+    synchronized boolean start(long total) {
+        if (State.RUNNING == state) {
+            return false;
+        }
+        this.state = State.RUNNING;
+        this.total = total;
+        this.replayed.set(0);
+        this.startedAtMillis = System.currentTimeMillis();
+        this.finishedAtMillis = 0;
+        this.failure = null;
+        return true;
+    }
+
+    long replayed() {
+        return replayed.incrementAndGet();
+    }
+
+    synchronized void finished() {
+        this.state = State.FINISHED;
+        this.finishedAtMillis = System.currentTimeMillis();
+    }
+
+    synchronized void failed(Throwable cause) {
+        this.state = State.FAILED;
+        this.finishedAtMillis = System.currentTimeMillis();
+        this.failure = cause.getClass().getName() + ": " + cause.getMessage();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public double getPercentComplete() {
+        if (State.FINISHED == state) {
+            return 100.0;
+        }
+        return total == 0 ? 0.0 : Math.min(100.0, 100.0 * replayed.get() / total);
+    }
+
+    public long getElapsedMillis() {
+        if (0 == startedAtMillis) {
+            return 0;
+        }
+        return (0 == finishedAtMillis ? System.currentTimeMillis() : finishedAtMillis) - startedAtMillis;
+    }
+
+    public double getEventsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0.0 : replayed.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return the estimated time left, in seconds, or -1 if it can't be estimated yet.
+     */
+    public long getRemainingSeconds() {
+        double rate = getEventsPerSecond();
+        if (State.RUNNING != state || rate == 0.0) {
+            return -1;
+        }
+        return TimeUnit.MILLISECONDS.toSeconds((long) (Math.max(0, total - replayed.get()) * 1000.0 / rate));
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+}
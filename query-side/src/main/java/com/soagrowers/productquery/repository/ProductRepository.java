@@ -2,16 +2,111 @@ package com.soagrowers.productquery.repository;
 
 
 import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 /**
+ * The modifying queries are used by the ProductViewEventHandler. Each is a single
+ * statement that only changes the view if the event is newer than what the view already
+ * holds, so stale and duplicate events are skipped without reading the product first.
+ * The inserts are standard SQL ('select ... having count(*) = 0' over the product's own
+ * row), so they don't need the 'dual' table that H2 and Oracle provide.
+ * <p/>
+ * The 'first' and 'after' searches page through the products by id (keyset pagination)
+ * instead of by offset, so a deep page costs no more than the first: ask for the first
+ * page, then pass the last id of each page as 'after' to get the next one. 'size' sets
+ * the page size; leave 'page' at 0. The first page has a query of its own: folding it
+ * into the 'after' query (':after is null or p.id > :after') would keep the database
+ * from seeking straight to 'after' in the id (or saleable) index.
+ * <p/>
  * Created by ben on 07/10/15.
  */
 @SuppressWarnings("unchecked")
 @RepositoryRestResource(collectionResourceRel = "products", path = "products")
 public interface ProductRepository extends ReadOnlyPagingAndSortingRepository {
     public List<Product> findBySaleable(@Param("saleable") boolean saleable);
-}
\ No newline at end of file
+
+    @RestResource(path = "first", rel = "first")
+    @Query("select p from Product p order by p.id")
+    List<Product> findFirstPage(Pageable pageable);
+
+    @RestResource(path = "after", rel = "after")
+    @Query("select p from Product p where p.id > :after order by p.id")
+    List<Product> findAfter(@Param("after") String after, Pageable pageable);
+
+    @RestResource(path = "saleableFirst", rel = "saleableFirst")
+    @Query("select p from Product p where p.saleable = :saleable order by p.id")
+    List<Product> findFirstPageBySaleable(@Param("saleable") boolean saleable, Pageable pageable);
+
+    @RestResource(path = "saleableAfter", rel = "saleableAfter")
+    @Query("select p from Product p where p.saleable = :saleable and p.id > :after order by p.id")
+    List<Product> findBySaleableAfter(@Param("saleable") boolean saleable, @Param("after") String after, Pageable pageable);
+
+    /**
+     * @return the product's sequence number (its version), or null if it's not in the view.
+     */
+    @RestResource(exported = false)
+    @Query("select p.sequenceNumber from Product p where p.id = :id")
+    Long findSequenceNumber(@Param("id") String id);
+
+    /**
+     * @return the product's current state, read past the ProductReadCache.
+     */
+    @RestResource(exported = false)
+    @Query("select new com.soagrowers.productquery.feed.ProductChange(p.id, p.name, p.saleable, p.sequenceNumber) " +
+            "from Product p where p.id = :id")
+    ProductChange findChange(@Param("id") String id);
+
+    /**
+     * @return 1 if the product was added, 0 if it was already in the view.
+     */
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query(value = "insert into product (id, name, saleable, sequence_number) " +
+            "select :id, :name, false, :sequenceNumber from product where id = :id having count(*) = 0", nativeQuery = true)
+    int addIfAbsent(@Param("id") String id, @Param("name") String name, @Param("sequenceNumber") long sequenceNumber);
+
+    /**
+     * Adds a product, without a name, for a saleable or unsaleable event that has arrived
+     * before the product's added event. See nameIfUnnamed().
+     *
+     * @return 1 if the product was added, 0 if it was already in the view.
+     */
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query(value = "insert into product (id, name, saleable, sequence_number) " +
+            "select :id, null, :saleable, :sequenceNumber from product where id = :id having count(*) = 0", nativeQuery = true)
+    int addUnnamedIfAbsent(@Param("id") String id, @Param("saleable") boolean saleable, @Param("sequenceNumber") long sequenceNumber);
+
+    /**
+     * Names a product added by addUnnamedIfAbsent(). Its saleable flag and sequence number
+     * come from a later event than the added event, so they are left as they are.
+     *
+     * @return 1 if the product was named, 0 if it's unknown or already has a name.
+     */
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query("update Product p set p.name = :name where p.id = :id and p.name is null")
+    int nameIfUnnamed(@Param("id") String id, @Param("name") String name);
+
+    /**
+     * @return 1 if the product was changed, 0 if it's unknown or the event is stale.
+     */
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query("update Product p set p.saleable = :saleable, p.sequenceNumber = :sequenceNumber " +
+            "where p.id = :id and p.sequenceNumber < :sequenceNumber")
+    int updateSaleableIfNewer(@Param("id") String id, @Param("saleable") boolean saleable, @Param("sequenceNumber") long sequenceNumber);
+}
@@ -0,0 +1,80 @@
+package com.soagrowers.productquery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soagrowers.productquery.compact.CompactProductView;
+import com.soagrowers.productquery.replay.ReplayProgress;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+public class CompactProductViewRestControllerTest {
+
+    @Mock
+    ReplayProgress replayProgress;
+
+    CompactProductView view = new CompactProductView(4);
+    CompactProductViewRestController controller;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        controller = new CompactProductViewRestController();
+        controller.compactProductView = view;
+        controller.objectMapper = new ObjectMapper();
+        controller.replayProgress = replayProgress;
+        controller.enabled = true;
+        when(replayProgress.getState()).thenReturn(ReplayProgress.State.FINISHED);
+        view.add("product-1", "one", 1);
+    }
+
+    @Test
+    public void testLoadedViewAnswers() throws Exception {
+        view.markLoaded();
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.findOne("product-1", response);
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals("{\"id\":\"product-1\",\"name\":\"one\",\"saleable\":false}", response.getContentAsString());
+
+        response = new MockHttpServletResponse();
+        controller.count(false, response);
+        assertEquals("1", response.getContentAsString());
+    }
+
+    @Test
+    public void testViewIsUnavailableUntilLoaded() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.count(true, response);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+
+        response = new MockHttpServletResponse();
+        controller.findOne("product-1", response);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+    }
+
+    @Test
+    public void testViewIsUnavailableDuringAReplay() throws Exception {
+        view.markLoaded();
+        when(replayProgress.getState()).thenReturn(ReplayProgress.State.RUNNING);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.findBySaleable(false, response);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+    }
+
+    @Test
+    public void testDisabledViewIsNotFound() throws Exception {
+        controller.enabled = false;
+        view.markLoaded();
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.findOne("product-1", response);
+        assertEquals(HttpStatus.NOT_FOUND.value(), response.getStatus());
+    }
+}
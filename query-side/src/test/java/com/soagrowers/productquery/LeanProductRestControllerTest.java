@@ -0,0 +1,92 @@
+package com.soagrowers.productquery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+public class LeanProductRestControllerTest {
+
+    static final String SALEABLE = "[{\"id\":\"product-1\",\"name\":\"one\",\"saleable\":true}]";
+
+    @Mock
+    ProductRepository productRepository;
+
+    LeanProductRestController controller;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        controller = new LeanProductRestController();
+        controller.productRepository = productRepository;
+        controller.objectMapper = new ObjectMapper();
+        when(productRepository.findBySaleable(true)).thenReturn(Arrays.asList(new Product("product-1", "one", true, 1)));
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(LeanProductRestController.acceptsGzip("gzip"));
+        assertTrue(LeanProductRestController.acceptsGzip("deflate, GZIP"));
+        assertTrue(LeanProductRestController.acceptsGzip("br;q=1.0, gzip;q=0.5"));
+        assertTrue(LeanProductRestController.acceptsGzip("gzip ; q=0.001"));
+        assertTrue(LeanProductRestController.acceptsGzip("x-gzip"));
+        assertTrue(LeanProductRestController.acceptsGzip("*"));
+    }
+
+    @Test
+    public void testRefusesGzip() {
+        assertFalse(LeanProductRestController.acceptsGzip(null));
+        assertFalse(LeanProductRestController.acceptsGzip(""));
+        assertFalse(LeanProductRestController.acceptsGzip("identity"));
+        assertFalse(LeanProductRestController.acceptsGzip("gzip;q=0"));
+        assertFalse(LeanProductRestController.acceptsGzip("gzip;q=0.0, deflate"));
+        assertFalse(LeanProductRestController.acceptsGzip("gzip;q=zero"));
+        assertFalse(LeanProductRestController.acceptsGzip("*;q=0"));
+        assertFalse(LeanProductRestController.acceptsGzip("gzip;q=0, *"));
+        assertFalse(LeanProductRestController.acceptsGzip("x-gzipped"));
+    }
+
+    @Test
+    public void testListIsGzippedWhenAccepted() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.findBySaleable(true, "gzip", response);
+
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(SALEABLE, gunzip(response.getContentAsByteArray()));
+    }
+
+    @Test
+    public void testListIsPlainWhenGzipIsRefused() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.findBySaleable(true, "gzip;q=0, identity", response);
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(SALEABLE, response.getContentAsString());
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[1024];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toString("UTF-8");
+    }
+}
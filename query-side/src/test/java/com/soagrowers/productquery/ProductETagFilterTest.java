@@ -0,0 +1,151 @@
+package com.soagrowers.productquery;
+
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.handlers.ProductViewVersion;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ProductETagFilterTest {
+
+    @Mock
+    ProductRepository productRepository;
+
+    ProductViewVersion productViewVersion = new ProductViewVersion();
+    ProductETagFilter filter;
+    MockFilterChain chain = new MockFilterChain();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        filter = new ProductETagFilter();
+        filter.productRepository = productRepository;
+        filter.productViewVersion = productViewVersion;
+        when(productRepository.findOne("product-1")).thenReturn(new Product("product-1", "one", true, 3));
+        when(productRepository.findChange("product-1")).thenReturn(new ProductChange("product-1", "one", true, 3));
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(ProductETagFilter.matches("W/\"3\"", "W/\"3\""));
+        assertTrue(ProductETagFilter.matches("\"3\"", "W/\"3\""));
+        assertTrue(ProductETagFilter.matches("W/\"2\", W/\"3\"", "W/\"3\""));
+        assertTrue(ProductETagFilter.matches(" W/\"2\" ,\"3\" ", "W/\"3\""));
+        assertTrue(ProductETagFilter.matches("*", "W/\"3\""));
+    }
+
+    @Test
+    public void testDoesNotMatch() {
+        assertFalse(ProductETagFilter.matches(null, "W/\"3\""));
+        assertFalse(ProductETagFilter.matches("", "W/\"3\""));
+        assertFalse(ProductETagFilter.matches("W/\"2\"", "W/\"3\""));
+        assertFalse(ProductETagFilter.matches("W/\"33\"", "W/\"3\""));
+        assertFalse(ProductETagFilter.matches("3", "W/\"3\""));
+    }
+
+    @Test
+    public void testProductIsTaggedFromTheCachedEntity() throws Exception {
+        filter.doFilter(get("/products/product-1", null), response, chain);
+
+        assertEquals("W/\"3\"", response.getHeader(HttpHeaders.ETAG));
+        assertNotNull(chain.getRequest());
+        verify(productRepository, never()).findChange(anyString());
+    }
+
+    @Test
+    public void testUnchangedProductIsNotModified() throws Exception {
+        filter.doFilter(get("/lean/products/product-1", "W/\"3\""), response, chain);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertNull(chain.getRequest());
+        verify(productRepository, never()).findOne(anyString());
+    }
+
+    @Test
+    public void testChangedProductIsSentWithItsNewTag() throws Exception {
+        filter.doFilter(get("/products/product-1", "W/\"2\""), response, chain);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("W/\"3\"", response.getHeader(HttpHeaders.ETAG));
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    public void testProductThatGetsItsNameIsSentAgain() throws Exception {
+        when(productRepository.findOne("product-2")).thenReturn(new Product("product-2", null, true, 3));
+        filter.doFilter(get("/products/product-2", null), response, chain);
+        String unnamed = response.getHeader(HttpHeaders.ETAG);
+        assertEquals("W/\"3-unnamed\"", unnamed);
+
+        when(productRepository.findChange("product-2")).thenReturn(new ProductChange("product-2", null, true, 3));
+        MockHttpServletResponse notModified = new MockHttpServletResponse();
+        filter.doFilter(get("/products/product-2", unnamed), notModified, new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.getStatus());
+
+        when(productRepository.findChange("product-2")).thenReturn(new ProductChange("product-2", "two", true, 3));
+        MockHttpServletResponse named = new MockHttpServletResponse();
+        MockFilterChain namedChain = new MockFilterChain();
+        filter.doFilter(get("/products/product-2", unnamed), named, namedChain);
+        assertEquals(HttpServletResponse.SC_OK, named.getStatus());
+        assertEquals("W/\"3\"", named.getHeader(HttpHeaders.ETAG));
+        assertNotNull(namedChain.getRequest());
+    }
+
+    @Test
+    public void testUnknownProductIsNotTagged() throws Exception {
+        filter.doFilter(get("/products/product-2", null), response, chain);
+
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    public void testListingsAreTaggedWithTheViewVersion() throws Exception {
+        String eTag = "W/\"" + productViewVersion.getTag() + "\"";
+        filter.doFilter(get("/products/search/findBySaleable", null), response, chain);
+        assertEquals(eTag, response.getHeader(HttpHeaders.ETAG));
+
+        MockHttpServletResponse notModified = new MockHttpServletResponse();
+        filter.doFilter(get("/export/products", eTag), notModified, new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.getStatus());
+
+        productViewVersion.changed();
+        MockHttpServletResponse changed = new MockHttpServletResponse();
+        filter.doFilter(get("/lean/products/search/findBySaleable", eTag), changed, new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_OK, changed.getStatus());
+        verifyZeroInteractions(productRepository);
+    }
+
+    @Test
+    public void testOtherRequestsAreNotTagged() throws Exception {
+        filter.doFilter(get("/changes", null), response, chain);
+        MockHttpServletRequest post = get("/products/product-1", null);
+        post.setMethod("POST");
+        filter.doFilter(post, response, new MockFilterChain());
+
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+        verifyZeroInteractions(productRepository);
+    }
+
+    private static MockHttpServletRequest get(String path, String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        if (null != ifNoneMatch) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return request;
+    }
+}
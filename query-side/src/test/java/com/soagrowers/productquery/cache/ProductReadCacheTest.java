@@ -0,0 +1,176 @@
+package com.soagrowers.productquery.cache;
+
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.repository.ProductRepository;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ProductReadCacheTest {
+
+    @Mock
+    ProductRepository target;
+
+    CacheManager cacheManager;
+    ProductReadCache productReadCache;
+    ProductRepository productRepository;
+    EmbeddedDatabase database;
+    TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        cacheManager = new CacheManager(new Configuration().name("ProductReadCacheTest"));
+        productReadCache = new ProductReadCache(cache("products"), cache("saleableProducts"));
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.addInterface(ProductRepository.class);
+        proxyFactory.addAspect(productReadCache);
+        productRepository = proxyFactory.getProxy();
+
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+
+        when(target.findOne("product-1")).thenReturn(new Product("product-1", "one", false, 0));
+        when(target.findBySaleable(true)).thenReturn(Collections.<Product>emptyList());
+        when(target.findBySaleable(false)).thenReturn(Collections.singletonList(new Product("product-1", "one", false, 0)));
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+        database.shutdown();
+    }
+
+    @Test
+    public void testReadsAreCached() {
+        Product product = productRepository.findOne("product-1");
+        assertSame(product, productRepository.findOne("product-1"));
+        productRepository.findBySaleable(false);
+        productRepository.findBySaleable(false);
+
+        verify(target, times(1)).findOne("product-1");
+        verify(target, times(1)).findBySaleable(false);
+    }
+
+    @Test
+    public void testMissingProductsAreNotCached() {
+        assertNull(productRepository.findOne("product-2"));
+        assertNull(productRepository.findOne("product-2"));
+
+        verify(target, times(2)).findOne("product-2");
+    }
+
+    @Test
+    public void testAddedProductIsEvictedFromTheUnsaleableListOnly() {
+        readEverything();
+
+        productReadCache.productAdded("product-1");
+        readEverything();
+
+        verify(target, times(2)).findOne("product-1");
+        verify(target, times(2)).findBySaleable(false);
+        verify(target, times(1)).findBySaleable(true);
+    }
+
+    @Test
+    public void testSaleableChangeIsEvictedFromBothLists() {
+        readEverything();
+
+        productReadCache.saleableChanged("product-1");
+        readEverything();
+
+        verify(target, times(2)).findOne("product-1");
+        verify(target, times(2)).findBySaleable(false);
+        verify(target, times(2)).findBySaleable(true);
+    }
+
+    @Test
+    public void testEvictionWaitsForTheCommit() {
+        readEverything();
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                productReadCache.saleableChanged("product-1");
+                readEverything();
+                verify(target, times(1)).findOne("product-1");
+            }
+        });
+        readEverything();
+
+        verify(target, times(2)).findOne("product-1");
+        verify(target, times(2)).findBySaleable(true);
+    }
+
+    @Test
+    public void testRolledBackChangesAreNotEvicted() {
+        readEverything();
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                productReadCache.saleableChanged("product-1");
+                status.setRollbackOnly();
+            }
+        });
+        readEverything();
+
+        verify(target, times(1)).findOne("product-1");
+        verify(target, times(1)).findBySaleable(true);
+    }
+
+    @Test
+    public void testLoadThatOverlapsAnEvictionIsNotCached() {
+        when(target.findOne("product-1")).thenAnswer(new Answer<Product>() {
+            @Override
+            public Product answer(InvocationOnMock invocation) throws Throwable {
+                productReadCache.saleableChanged("product-1");
+                return new Product("product-1", "one", false, 0);
+            }
+        });
+
+        assertNotNull(productRepository.findOne("product-1"));
+        assertEquals(1, productReadCache.getUncachedLoadCount());
+        assertEquals(0, productReadCache.getProducts().getSize());
+
+        productRepository.findOne("product-1");
+        verify(target, times(2)).findOne("product-1");
+    }
+
+    private void readEverything() {
+        productRepository.findOne("product-1");
+        List<Product> saleable = productRepository.findBySaleable(true);
+        List<Product> unsaleable = productRepository.findBySaleable(false);
+        assertEquals(0, saleable.size());
+        assertEquals(1, unsaleable.size());
+    }
+
+    private Cache cache(String name) {
+        Cache cache = new Cache(new CacheConfiguration().name(name).maxEntriesLocalHeap(100).eternal(true));
+        cacheManager.addCache(cache);
+        return cache;
+    }
+}
@@ -0,0 +1,136 @@
+package com.soagrowers.productquery.cluster;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.SimpleCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class PartitionedClusterTest {
+
+    static final String FAIL = "fail";
+
+    EmbeddedDatabase database;
+    DataSourceTransactionManager transactionManager;
+    PartitionedCluster cluster;
+
+    final Map<Object, List<Long>> handled = new ConcurrentHashMap<Object, List<Long>>();
+    final Map<Object, Set<String>> threads = new ConcurrentHashMap<Object, Set<String>>();
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        transactionManager = new DataSourceTransactionManager(database);
+
+        SimpleCluster delegate = new SimpleCluster("products");
+        delegate.subscribe(new EventListener() {
+            @Override
+            public void handle(EventMessage event) {
+                if (FAIL.equals(event.getPayload())) {
+                    throw new IllegalStateException("Handler failed");
+                }
+                DomainEventMessage domainEvent = (DomainEventMessage) event;
+                Object id = domainEvent.getAggregateIdentifier();
+                handled.putIfAbsent(id, Collections.synchronizedList(new ArrayList<Long>()));
+                handled.get(id).add(domainEvent.getSequenceNumber());
+                threads.putIfAbsent(id, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+                threads.get(id).add(Thread.currentThread().getName());
+            }
+        });
+        cluster = new PartitionedCluster(delegate, 4, transactionManager);
+    }
+
+    @After
+    public void tearDown() {
+        cluster.shutdown();
+        database.shutdown();
+    }
+
+    @Test
+    public void testEventsOfAProductAreHandledInOrderOnOneLane() {
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (int sequenceNumber = 0; sequenceNumber < 20; sequenceNumber++) {
+                    for (int product = 0; product < 16; product++) {
+                        cluster.publish(event("product-" + product, sequenceNumber, "changed"));
+                    }
+                }
+            }
+        });
+
+        assertEquals(16, handled.size());
+        Set<String> lanes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        for (Object id : handled.keySet()) {
+            List<Long> sequenceNumbers = handled.get(id);
+            assertEquals(20, sequenceNumbers.size());
+            for (int i = 0; i < sequenceNumbers.size(); i++) {
+                assertEquals(id + " out of order", i, sequenceNumbers.get(i).longValue());
+            }
+            assertEquals(1, threads.get(id).size());
+            lanes.addAll(threads.get(id));
+        }
+        assertTrue("Lanes used: " + lanes, lanes.size() > 1);
+
+        long processed = 0;
+        for (int lane = 0; lane < cluster.getLaneCount(); lane++) {
+            assertEquals(0, cluster.getBacklog(lane));
+            processed += cluster.getProcessedCount(lane);
+        }
+        assertEquals(320, processed);
+    }
+
+    @Test
+    public void testLaneFailureRollsTheConsumerTransactionBack() {
+        try {
+            new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    cluster.publish(event("product-1", 0, "added"), event("product-2", 0, FAIL));
+                }
+            });
+            fail("The lane's failure should fail the consumer's commit");
+        } catch (IllegalStateException e) {
+            assertEquals("Handler failed", e.getMessage());
+        }
+
+        cluster.publish(event("product-2", 0, "added"));
+        assertEquals(Collections.singletonList(0L), handled.get("product-2"));
+    }
+
+    @Test
+    public void testPublishWithoutATransactionWaitsForTheLanes() {
+        cluster.publish(event("product-1", 0, "added"), event("product-1", 1, "changed"));
+        assertEquals(2, handled.get("product-1").size());
+
+        try {
+            cluster.publish(event("product-1", 2, FAIL));
+            fail("The lane's failure should be thrown to the publisher");
+        } catch (IllegalStateException e) {
+            assertEquals(2, handled.get("product-1").size());
+        }
+    }
+
+    private static EventMessage event(String id, long sequenceNumber, String payload) {
+        return new GenericDomainEventMessage<Object>(id, sequenceNumber, payload);
+    }
+}
@@ -0,0 +1,214 @@
+package com.soagrowers.productquery.compact;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompactProductViewTest {
+
+    CompactProductView view = new CompactProductView(4);
+    CompactProductView.Row row = new CompactProductView.Row();
+
+    @Test
+    public void testStaleAndDuplicateEventsAreSkipped() {
+        assertTrue(view.add("product-1", "one", 0));
+        assertFalse(view.add("product-1", "renamed", 0));
+        assertTrue(view.setSaleable("product-1", true, 2));
+        assertFalse(view.setSaleable("product-1", false, 1));
+        assertFalse(view.setSaleable("product-1", false, 2));
+
+        assertProduct("product-1", "one", true, 2);
+        assertEquals(1, view.count(true));
+    }
+
+    @Test
+    public void testSaleableEventBeforeTheAddedEventKeepsItsFlag() {
+        assertTrue(view.setSaleable("product-1", true, 1));
+        assertProduct("product-1", null, true, 1);
+        assertEquals(1, view.count(true));
+
+        assertTrue(view.add("product-1", "one", 0));
+        assertFalse(view.add("product-1", "renamed", 0));
+
+        assertProduct("product-1", "one", true, 1);
+        assertEquals(1, view.size());
+        assertEquals(1, view.count(true));
+    }
+
+    @Test
+    public void testUnsaleableEventBeforeTheAddedEvent() {
+        assertTrue(view.setSaleable("product-1", false, 2));
+        assertFalse(view.setSaleable("product-1", true, 1));
+
+        assertProduct("product-1", null, false, 2);
+        assertEquals(1, view.count(false));
+    }
+
+    @Test
+    public void testLoadAddsUnknownProducts() {
+        assertTrue(view.load("product-1", "one", true, 3));
+        assertTrue(view.load("product-2", null, false, 1));
+
+        assertProduct("product-1", "one", true, 3);
+        assertProduct("product-2", null, false, 1);
+        assertEquals(1, view.count(true));
+        assertEquals(1, view.count(false));
+    }
+
+    @Test
+    public void testLoadKeepsNewerEvents() {
+        view.setSaleable("product-1", false, 4);
+        assertTrue(view.load("product-1", "one", true, 3));
+        assertProduct("product-1", "one", false, 4);
+
+        assertFalse(view.load("product-1", "one", true, 4));
+        assertTrue(view.load("product-1", "one", true, 5));
+        assertProduct("product-1", "one", true, 5);
+        assertEquals(1, view.count(true));
+    }
+
+    @Test
+    public void testViewIsOnlyLoadedWhenMarked() {
+        assertFalse(view.isLoaded());
+        view.markLoaded();
+        assertTrue(view.isLoaded());
+    }
+
+    @Test
+    public void testUnknownProduct() {
+        view.add("product-1", "one", 0);
+
+        assertFalse(view.find("product-2", row));
+    }
+
+    @Test
+    public void testRowGivesTheIdAndNameAsCharRanges() {
+        view.add("product-1", "one", 0);
+        view.find("product-1", row);
+
+        assertEquals("product-1", new String(row.getChars(), row.getIdOffset(), row.getIdLength()));
+        assertEquals("one", new String(row.getChars(), row.getNameOffset(), row.getNameLength()));
+    }
+
+    @Test
+    public void testProductWithoutAName() {
+        view.add("product-1", null, 0);
+        view.find("product-1", row);
+
+        assertFalse(row.hasName());
+        assertNull(row.getName());
+    }
+
+    @Test
+    public void testNamesAreShared() {
+        view.add("product-1", "same", 0);
+        view.add("product-2", "same", 0);
+        view.add("product-3", "other", 0);
+
+        assertEquals(3, view.size());
+        assertEquals(2, view.nameCount());
+    }
+
+    @Test
+    public void testCounts() {
+        for (int i = 0; i < 10; i++) {
+            view.add("product-" + i, "name", 0);
+        }
+        view.setSaleable("product-3", true, 1);
+        view.setSaleable("product-5", true, 1);
+        view.setSaleable("product-5", false, 2);
+        view.setSaleable("product-7", true, 1);
+
+        assertEquals(2, view.count(true));
+        assertEquals(8, view.count(false));
+    }
+
+    @Test
+    public void testForEachVisitsInTheOrderAddedAcrossChunks() throws IOException {
+        int products = CompactProductView.CHUNK_SIZE * 2 + 10;
+        for (int i = 0; i < products; i++) {
+            view.add("product-" + i, "name-" + i, 0);
+            if (i % 2 == 1) {
+                view.setSaleable("product-" + i, true, 1);
+            }
+        }
+
+        final List<String> saleable = new ArrayList<String>();
+        view.forEach(true, row, new CompactProductView.Visitor() {
+            @Override
+            public void visit(CompactProductView.Row row) {
+                assertTrue(row.isSaleable());
+                saleable.add(row.getId());
+            }
+        });
+        final List<String> unsaleable = new ArrayList<String>();
+        view.forEach(false, row, new CompactProductView.Visitor() {
+            @Override
+            public void visit(CompactProductView.Row row) {
+                assertEquals("name-" + row.getId().substring("product-".length()), row.getName());
+                unsaleable.add(row.getId());
+            }
+        });
+
+        assertEquals(products / 2, saleable.size());
+        assertEquals(products / 2, unsaleable.size());
+        for (int i = 0; i < products / 2; i++) {
+            assertEquals("product-" + (i * 2 + 1), saleable.get(i));
+            assertEquals("product-" + (i * 2), unsaleable.get(i));
+        }
+    }
+
+    @Test
+    public void testForEachOverAnEmptyView() throws IOException {
+        view.forEach(true, row, new CompactProductView.Visitor() {
+            @Override
+            public void visit(CompactProductView.Row row) {
+                fail("Nothing to visit");
+            }
+        });
+    }
+
+    @Test
+    public void testVisitorExceptionStopsTheVisit() {
+        for (int i = 0; i < CompactProductView.CHUNK_SIZE * 2; i++) {
+            view.add("product-" + i, "name", 0);
+        }
+        final int[] visits = new int[1];
+        try {
+            view.forEach(false, row, new CompactProductView.Visitor() {
+                @Override
+                public void visit(CompactProductView.Row row) throws IOException {
+                    if (++visits[0] == 3) {
+                        throw new IOException("Client has gone");
+                    }
+                }
+            });
+            fail("The visitor's exception should be thrown");
+        } catch (IOException e) {
+            assertEquals(3, visits[0]);
+        }
+    }
+
+    @Test
+    public void testLongNamesGrowTheRow() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < CompactProductView.CHUNK_SIZE * 64; i++) {
+            name.append('x');
+        }
+        view.add("product-1", name.toString(), 0);
+
+        assertProduct("product-1", name.toString(), false, 0);
+    }
+
+    private void assertProduct(String id, String name, boolean saleable, long sequenceNumber) {
+        assertTrue(view.find(id, row));
+        assertEquals(id, row.getId());
+        assertEquals(name, row.getName());
+        assertEquals(saleable, row.isSaleable());
+        assertEquals(sequenceNumber, row.getSequenceNumber());
+    }
+}
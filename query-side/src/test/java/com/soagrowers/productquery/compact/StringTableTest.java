@@ -0,0 +1,72 @@
+package com.soagrowers.productquery.compact;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringTableTest {
+
+    StringTable table = new StringTable(4);
+
+    @Test
+    public void testHandlesAreGivenInOrder() {
+        assertEquals(0, table.intern("one"));
+        assertEquals(1, table.intern("two"));
+        assertEquals(0, table.intern("one"));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testFind() {
+        table.intern("one");
+        table.intern("two");
+
+        assertEquals(1, table.find("two"));
+        assertEquals(-1, table.find("three"));
+        assertEquals(-1, table.find("tw"));
+        assertEquals(-1, table.find(""));
+    }
+
+    @Test
+    public void testStringsAreStoredInTheSharedChars() {
+        table.intern("one");
+        int h = table.intern("three");
+
+        assertEquals("three", new String(table.chars(), table.offset(h), table.length(h)));
+        assertEquals(3, table.offset(h));
+    }
+
+    @Test
+    public void testEmptyString() {
+        int h = table.intern("");
+
+        assertEquals(h, table.find(""));
+        assertEquals(0, table.length(h));
+    }
+
+    @Test
+    public void testCollidingHashes() {
+        // "Aa" and "BB" have the same hash code
+        int aa = table.intern("Aa");
+        int bb = table.intern("BB");
+
+        assertNotEquals(aa, bb);
+        assertEquals(aa, table.find("Aa"));
+        assertEquals(bb, table.find("BB"));
+    }
+
+    @Test
+    public void testTableGrows() {
+        long heapBytes = table.heapBytes();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, table.intern("product-" + i));
+        }
+
+        assertEquals(10000, table.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, table.find("product-" + i));
+            assertEquals("product-" + i, new String(table.chars(), table.offset(i), table.length(i)));
+        }
+        assertTrue(table.heapBytes() > heapBytes);
+    }
+}
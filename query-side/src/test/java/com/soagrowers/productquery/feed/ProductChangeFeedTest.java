@@ -0,0 +1,135 @@
+package com.soagrowers.productquery.feed;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ProductChangeFeedTest {
+
+    ProductChangeFeed feed = new ProductChangeFeed(2, 2, 60000, 100);
+
+    @After
+    public void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    public void testBlockedWriteIsInterruptedAtTheDeadline() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final AtomicBoolean expired = new AtomicBoolean();
+        feed.execute(new Runnable() {
+            @Override
+            public void run() {
+                WriteDeadline deadline = feed.startWrite();
+                try {
+                    new CountDownLatch(1).await();// a write to a client that doesn't read
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                expired.set(deadline.finish());
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+        assertTrue(expired.get());
+    }
+
+    @Test
+    public void testWriteWithinTheDeadlineIsLeftAlone() throws Exception {
+        WriteDeadline deadline = feed.startWrite();
+        assertFalse(deadline.finish());
+
+        Thread.sleep(200);
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    public void testFinishingClearsTheInterrupt() throws Exception {
+        WriteDeadline deadline = feed.startWrite();
+        try {
+            Thread.sleep(5000);
+            fail("The write wasn't interrupted");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();// as a write that gives up may leave it
+        }
+
+        assertTrue(deadline.finish());
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    public void testBlockedWritersDoNotHoldTheFeedThreads() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(2);
+        for (int writer = 0; writer < 2; writer++) {
+            feed.execute(new Runnable() {
+                @Override
+                public void run() {
+                    WriteDeadline deadline = feed.startWrite();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        blocked.countDown();
+                    } finally {
+                        deadline.finish();
+                    }
+                }
+            });
+        }
+
+        final CountDownLatch healthy = new CountDownLatch(1);
+        feed.execute(new Runnable() {
+            @Override
+            public void run() {
+                healthy.countDown();
+            }
+        });
+
+        assertTrue(healthy.await(5, TimeUnit.SECONDS));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubscriberTooFarBehindIsDisconnected() {
+        Subscription subscription = feed.subscribe(false);
+        feed.changed(new ProductChange("product-1", "one", true, 1));
+        feed.changed(new ProductChange("product-2", "two", true, 1));
+        feed.changed(new ProductChange("product-3", "three", true, 1));
+
+        assertNull(feed.getSubscription(subscription.getId()));
+        assertNull(subscription.drainOrListen(new Subscription.Listener() {
+            @Override
+            public void changesAvailable() {
+            }
+        }));
+        assertEquals(1, feed.getDisconnectedCount());
+        assertEquals(3, feed.getPublishedCount());
+    }
+
+    @Test
+    public void testWaitingSubscriberIsWokenUp() {
+        Subscription subscription = feed.subscribe(false);
+        final AtomicBoolean woken = new AtomicBoolean();
+        Subscription.Listener listener = new Subscription.Listener() {
+            @Override
+            public void changesAvailable() {
+                woken.set(true);
+            }
+        };
+        assertTrue(subscription.drainOrListen(listener).isEmpty());
+
+        feed.changed(new ProductChange("product-1", "one", true, 1));
+
+        assertTrue(woken.get());
+        List<ProductChange> changes = subscription.drainOrListen(listener);
+        assertEquals(1, changes.size());
+    }
+}
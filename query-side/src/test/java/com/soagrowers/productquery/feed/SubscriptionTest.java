@@ -0,0 +1,183 @@
+package com.soagrowers.productquery.feed;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SubscriptionTest {
+
+    Subscription subscription = new Subscription("subscription-1", 2, true);
+
+    Subscription.Listener listener = new NoOpListener();
+
+    @Test
+    public void testChangesAreDrainedInTheOrderTheProductsFirstChanged() {
+        assertEquals(Subscription.Offer.ADDED, subscription.offer(new ProductChange("product-2", "two", false, 0)));
+        assertEquals(Subscription.Offer.ADDED, subscription.offer(new ProductChange("product-1", "one", false, 0)));
+        subscription.offer(new ProductChange("product-2", null, true, 1));
+
+        List<ProductChange> changes = subscription.drainOrListen(listener);
+        assertEquals(2, changes.size());
+        assertEquals("product-2", changes.get(0).getId());
+        assertEquals("product-1", changes.get(1).getId());
+        assertEquals(Collections.emptyList(), subscription.drainOrListen(listener));
+    }
+
+    @Test
+    public void testNewerChangeIsMergedIntoThePendingOne() {
+        subscription.offer(new ProductChange("product-1", "one", false, 0));
+        assertEquals(Subscription.Offer.COALESCED, subscription.offer(new ProductChange("product-1", null, true, 1)));
+        assertEquals(Subscription.Offer.COALESCED, subscription.offer(new ProductChange("product-1", null, false, 2)));
+
+        List<ProductChange> changes = subscription.drainOrListen(listener);
+        assertEquals(1, changes.size());
+        assertEquals("one", changes.get(0).getName());
+        assertFalse(changes.get(0).isSaleable());
+        assertEquals(2, changes.get(0).getVersion());
+    }
+
+    @Test
+    public void testOlderOrRepeatedChangeIsStale() {
+        subscription.offer(new ProductChange("product-1", null, true, 2));
+        assertEquals(Subscription.Offer.STALE, subscription.offer(new ProductChange("product-1", null, false, 1)));
+        assertEquals(Subscription.Offer.STALE, subscription.offer(new ProductChange("product-1", null, false, 2)));
+
+        assertTrue(subscription.drainOrListen(listener).get(0).isSaleable());
+    }
+
+    @Test
+    public void testRepeatedChangeThatFillsTheNameInIsMerged() {
+        subscription.offer(new ProductChange("product-1", null, true, 2));
+        assertEquals(Subscription.Offer.COALESCED, subscription.offer(new ProductChange("product-1", "one", true, 2)));
+        assertEquals(Subscription.Offer.STALE, subscription.offer(new ProductChange("product-1", "one", true, 2)));
+
+        ProductChange change = subscription.drainOrListen(listener).get(0);
+        assertEquals("one", change.getName());
+        assertTrue(change.isSaleable());
+        assertEquals(2, change.getVersion());
+    }
+
+    @Test
+    public void testOlderChangeOnlyFillsTheNameIn() {
+        subscription.offer(new ProductChange("product-1", null, false, 3));
+        assertEquals(Subscription.Offer.COALESCED, subscription.offer(new ProductChange("product-1", "one", true, 2)));
+
+        ProductChange change = subscription.drainOrListen(listener).get(0);
+        assertEquals("one", change.getName());
+        assertFalse(change.isSaleable());
+        assertEquals(3, change.getVersion());
+    }
+
+    @Test
+    public void testCoalescingDoesNotCountTowardsTheCapacity() {
+        subscription.offer(new ProductChange("product-1", null, true, 1));
+        subscription.offer(new ProductChange("product-2", null, true, 1));
+        for (long version = 2; version < 10; version++) {
+            assertEquals(Subscription.Offer.COALESCED, subscription.offer(new ProductChange("product-1", null, true, version)));
+        }
+
+        assertEquals(2, subscription.drainOrListen(listener).size());
+    }
+
+    @Test
+    public void testSubscriberTooFarBehindIsClosed() {
+        subscription.offer(new ProductChange("product-1", null, true, 1));
+        subscription.offer(new ProductChange("product-2", null, true, 1));
+        assertEquals(Subscription.Offer.OVERFLOWED, subscription.offer(new ProductChange("product-3", null, true, 1)));
+
+        assertEquals(Subscription.Offer.CLOSED, subscription.offer(new ProductChange("product-4", null, true, 1)));
+        assertNull(subscription.drainOrListen(listener));
+    }
+
+    @Test
+    public void testDrainedSubscriberHasRoomAgain() {
+        subscription.offer(new ProductChange("product-1", null, true, 1));
+        subscription.offer(new ProductChange("product-2", null, true, 1));
+        subscription.drainOrListen(listener);
+
+        assertEquals(Subscription.Offer.ADDED, subscription.offer(new ProductChange("product-3", null, true, 1)));
+        assertEquals(Subscription.Offer.ADDED, subscription.offer(new ProductChange("product-4", null, true, 1)));
+    }
+
+    @Test
+    public void testListenerIsKeptUntilThereAreChanges() {
+        assertNull(subscription.takeListener());
+        assertEquals(Collections.emptyList(), subscription.drainOrListen(listener));
+
+        assertSame(listener, subscription.takeListener());
+        assertNull(subscription.takeListener());
+    }
+
+    @Test
+    public void testDrainingForgetsTheListener() {
+        subscription.drainOrListen(listener);
+        subscription.offer(new ProductChange("product-1", null, true, 1));
+        subscription.drainOrListen(listener);
+
+        assertNull(subscription.takeListener());
+    }
+
+    @Test
+    public void testStopListening() {
+        subscription.drainOrListen(listener);
+        subscription.stopListening(new NoOpListener());
+        assertSame(listener, subscription.takeListener());
+
+        subscription.drainOrListen(listener);
+        subscription.stopListening(listener);
+        assertNull(subscription.takeListener());
+    }
+
+    @Test
+    public void testUnpolledSubscriptionBecomesIdle() {
+        long now = System.currentTimeMillis();
+
+        assertFalse(subscription.isIdle(now, 1000));
+        assertTrue(subscription.isIdle(now + 5000, 1000));
+    }
+
+    @Test
+    public void testPollingKeepsTheSubscriptionActive() throws InterruptedException {
+        long before = System.currentTimeMillis();
+        Thread.sleep(5);
+        subscription.drainOrListen(listener);
+        subscription.stopListening(listener);
+
+        assertFalse(subscription.isIdle(before + 1004, 1000));
+    }
+
+    @Test
+    public void testWaitingSubscriptionIsNeverIdle() {
+        subscription.drainOrListen(listener);
+
+        assertFalse(subscription.isIdle(System.currentTimeMillis() + 5000, 1000));
+    }
+
+    @Test
+    public void testStreamingSubscriptionNeverExpires() {
+        Subscription stream = new Subscription("subscription-2", 2, false);
+
+        assertFalse(stream.isIdle(System.currentTimeMillis() + 5000, 1000));
+    }
+
+    @Test
+    public void testClosedSubscription() {
+        subscription.offer(new ProductChange("product-1", null, true, 1));
+        subscription.drainOrListen(listener);
+        subscription.close();
+
+        assertEquals(Subscription.Offer.CLOSED, subscription.offer(new ProductChange("product-2", null, true, 1)));
+        assertNull(subscription.drainOrListen(listener));
+        assertNull(subscription.takeListener());
+    }
+
+    private static class NoOpListener implements Subscription.Listener {
+
+        @Override
+        public void changesAvailable() {
+        }
+    }
+}
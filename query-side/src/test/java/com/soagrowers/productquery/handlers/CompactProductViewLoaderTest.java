@@ -0,0 +1,70 @@
+package com.soagrowers.productquery.handlers;
+
+import com.soagrowers.productquery.compact.CompactProductView;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.repository.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CompactProductViewLoaderTest {
+
+    @Mock
+    ProductRepository productRepository;
+
+    CompactProductView view = new CompactProductView(4);
+    CompactProductViewLoader loader;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        loader = new CompactProductViewLoader(productRepository, view, 2);
+    }
+
+    @Test
+    public void testEveryPageIsLoaded() {
+        when(productRepository.findFirstPage(any(Pageable.class))).thenReturn(Arrays.asList(
+                new Product("product-1", "one", true, 1), new Product("product-2", null, false, 2)));
+        when(productRepository.findAfter(eq("product-2"), any(Pageable.class))).thenReturn(Arrays.asList(
+                new Product("product-3", "three", true, 3), new Product("product-4", "four", false, 0)));
+        when(productRepository.findAfter(eq("product-4"), any(Pageable.class))).thenReturn(Collections.<Product>emptyList());
+
+        assertEquals(4, loader.load());
+
+        assertEquals(4, view.size());
+        assertEquals(2, view.count(true));
+        assertTrue(view.isLoaded());
+    }
+
+    @Test
+    public void testShortPageIsTheLast() {
+        when(productRepository.findFirstPage(any(Pageable.class))).thenReturn(Collections.singletonList(
+                new Product("product-1", "one", true, 1)));
+
+        assertEquals(1, loader.load());
+
+        verify(productRepository, never()).findAfter(anyString(), any(Pageable.class));
+        assertTrue(view.isLoaded());
+    }
+
+    @Test
+    public void testEmptyViewIsLoaded() {
+        when(productRepository.findFirstPage(any(Pageable.class))).thenReturn(Collections.<Product>emptyList());
+
+        assertEquals(0, loader.load());
+
+        assertEquals(0, view.size());
+        assertTrue(view.isLoaded());
+    }
+}
@@ -0,0 +1,215 @@
+package com.soagrowers.productquery.handlers;
+
+import com.soagrowers.productevents.events.ProductAddedEvent;
+import com.soagrowers.productevents.events.ProductSaleableEvent;
+import com.soagrowers.productevents.events.ProductUnsaleableEvent;
+import com.soagrowers.productquery.cache.ProductReadCache;
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import com.soagrowers.productquery.feed.ProductChangeFeed;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProductViewBatchWriterTest {
+
+    static final String CREATE_PRODUCT = "create table product (id varchar(255) primary key, name varchar(255), " +
+            "saleable boolean not null, sequence_number bigint not null)";
+
+    @Mock
+    ProductReadCache productReadCache;
+
+    @Mock
+    ProductChangeFeed productChangeFeed;
+
+    EmbeddedDatabase database;
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+    ProductViewVersion productViewVersion;
+    ProductViewBatchWriter writer;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute(CREATE_PRODUCT);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        productViewVersion = new ProductViewVersion();
+        writer = new ProductViewBatchWriter(database, productReadCache, productViewVersion, productChangeFeed);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testBatchIsWrittenWhenTheTransactionCommits() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductAddedEvent("product-1", "one"), 0);
+                writer.add(new ProductSaleableEvent("product-1"), 1);
+                writer.add(new ProductUnsaleableEvent("product-1"), 2);
+                writer.add(new ProductAddedEvent("product-2", "two"), 0);
+                assertEquals(0, count());
+            }
+        });
+
+        assertEquals(2, count());
+        assertRow("product-1", "one", false, 2);
+        assertRow("product-2", "two", false, 0);
+        verify(productReadCache).productAdded("product-1");
+        verify(productReadCache).productAdded("product-2");
+        verify(productChangeFeed, times(2)).changed(any(ProductChange.class));
+        assertEquals(1, productViewVersion.getVersion());
+    }
+
+    @Test
+    public void testChangedRowsAreUpdatedOnce() {
+        jdbcTemplate.update("insert into product values ('product-1', 'one', false, 0)");
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductSaleableEvent("product-1"), 1);
+                writer.add(new ProductUnsaleableEvent("product-1"), 2);
+                writer.add(new ProductSaleableEvent("product-1"), 3);
+            }
+        });
+
+        assertRow("product-1", "one", true, 3);
+        verify(productReadCache, times(1)).saleableChanged("product-1");
+        verify(productChangeFeed, times(1)).changed(any(ProductChange.class));
+    }
+
+    @Test
+    public void testStaleAndDuplicateEventsAreSkipped() {
+        jdbcTemplate.update("insert into product values ('product-1', 'one', true, 5)");
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductAddedEvent("product-1", "renamed"), 0);
+                writer.add(new ProductUnsaleableEvent("product-1"), 3);
+                writer.add(new ProductUnsaleableEvent("product-1"), 5);
+            }
+        });
+
+        assertRow("product-1", "one", true, 5);
+        verifyZeroInteractions(productReadCache, productChangeFeed);
+        assertEquals(0, productViewVersion.getVersion());
+    }
+
+    @Test
+    public void testSaleableEventBeforeTheAddedEventKeepsItsFlag() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductSaleableEvent("product-1"), 1);
+                writer.add(new ProductUnsaleableEvent("product-2"), 2);
+            }
+        });
+
+        assertRow("product-1", null, true, 1);
+        assertRow("product-2", null, false, 2);
+        verify(productReadCache).saleableChanged("product-1");
+        verify(productReadCache).productAdded("product-2");
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductAddedEvent("product-1", "one"), 0);
+                writer.add(new ProductAddedEvent("product-2", "two"), 0);
+                writer.add(new ProductAddedEvent("product-2", "renamed"), 0);
+            }
+        });
+
+        assertRow("product-1", "one", true, 1);
+        assertRow("product-2", "two", false, 2);
+        verify(productChangeFeed, times(4)).changed(any(ProductChange.class));
+    }
+
+    @Test
+    public void testAddedEventAfterItsSaleableEventInTheSameBatch() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductSaleableEvent("product-1"), 1);
+                writer.add(new ProductAddedEvent("product-1", "one"), 0);
+                writer.add(new ProductSaleableEvent("product-1"), 1);
+            }
+        });
+
+        assertRow("product-1", "one", true, 1);
+        verify(productChangeFeed, times(1)).changed(any(ProductChange.class));
+    }
+
+    @Test
+    public void testRolledBackBatchIsNotWritten() {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                writer.add(new ProductAddedEvent("product-1", "one"), 0);
+                status.setRollbackOnly();
+            }
+        });
+
+        assertEquals(0, count());
+        verifyZeroInteractions(productReadCache, productChangeFeed);
+    }
+
+    @Test
+    public void testEventsOutsideATransactionAreWrittenStraightAway() {
+        writer.add(new ProductAddedEvent("product-1", "one"), 0);
+        assertEquals(1, count());
+
+        writer.add(new ProductSaleableEvent("product-1"), 1);
+        assertRow("product-1", "one", true, 1);
+        assertEquals(2, productViewVersion.getVersion());
+    }
+
+    @Test
+    public void testSecondaryIndexesCanBeDroppedAndRebuilt() {
+        writer.createSecondaryIndexes();
+        assertEquals(1, indexCount());
+        writer.dropSecondaryIndexes();
+        assertEquals(0, indexCount());
+        writer.createSecondaryIndexes();
+        writer.createSecondaryIndexes();
+        assertEquals(1, indexCount());
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("select count(*) from product", Integer.class);
+    }
+
+    private int indexCount() {
+        return jdbcTemplate.queryForObject("select count(distinct index_name) from information_schema.indexes where index_name = upper(?)",
+                Integer.class, Product.SALEABLE_INDEX);
+    }
+
+    private void assertRow(String id, String name, boolean saleable, long sequenceNumber) {
+        Map<String, Object> row = jdbcTemplate.queryForMap("select * from product where id = ?", id);
+        assertEquals(name, row.get("NAME"));
+        assertEquals(saleable, row.get("SALEABLE"));
+        assertEquals(sequenceNumber, ((Number) row.get("SEQUENCE_NUMBER")).longValue());
+    }
+}
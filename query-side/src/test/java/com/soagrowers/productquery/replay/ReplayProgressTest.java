@@ -0,0 +1,104 @@
+package com.soagrowers.productquery.replay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReplayProgressTest {
+
+    @Test
+    public void testIdleUntilStarted() {
+        ReplayProgress progress = new ReplayProgress();
+
+        assertEquals(ReplayProgress.State.IDLE, progress.getState());
+        assertEquals(0, progress.getElapsedMillis());
+        assertEquals(0.0, progress.getPercentComplete(), 0.0);
+        assertEquals(-1, progress.getRemainingSeconds());
+    }
+
+    @Test
+    public void testCountsTheEventsReplayed() {
+        ReplayProgress progress = new ReplayProgress();
+        assertTrue(progress.start(4));
+
+        assertEquals(1, progress.replayed());
+        assertEquals(2, progress.replayed());
+
+        assertEquals(ReplayProgress.State.RUNNING, progress.getState());
+        assertEquals(2, progress.getReplayed());
+        assertEquals(50.0, progress.getPercentComplete(), 0.0);
+    }
+
+    @Test
+    public void testMoreEventsThanExpectedStopAtOneHundredPercent() {
+        ReplayProgress progress = new ReplayProgress();
+        progress.start(1);
+        progress.replayed();
+        progress.replayed();
+
+        assertEquals(100.0, progress.getPercentComplete(), 0.0);
+    }
+
+    @Test
+    public void testOnlyOneReplayRunsAtATime() {
+        ReplayProgress progress = new ReplayProgress();
+        assertTrue(progress.start(10));
+        progress.replayed();
+
+        assertFalse(progress.start(20));
+        assertEquals(10, progress.getTotal());
+        assertEquals(1, progress.getReplayed());
+    }
+
+    @Test
+    public void testFinishedReplayIsComplete() {
+        ReplayProgress progress = new ReplayProgress();
+        progress.start(10);
+        progress.replayed();
+        progress.finished();
+
+        assertEquals(ReplayProgress.State.FINISHED, progress.getState());
+        assertEquals(100.0, progress.getPercentComplete(), 0.0);
+        assertEquals(-1, progress.getRemainingSeconds());
+        assertNull(progress.getFailure());
+    }
+
+    @Test
+    public void testFailedReplayKeepsTheCause() {
+        ReplayProgress progress = new ReplayProgress();
+        progress.start(10);
+        progress.failed(new IllegalStateException("Mongo went away"));
+
+        assertEquals(ReplayProgress.State.FAILED, progress.getState());
+        assertEquals("java.lang.IllegalStateException: Mongo went away", progress.getFailure());
+    }
+
+    @Test
+    public void testReplayStartsAgainAfterAFailure() {
+        ReplayProgress progress = new ReplayProgress();
+        progress.start(10);
+        progress.replayed();
+        progress.failed(new IllegalStateException("Mongo went away"));
+
+        assertTrue(progress.start(12));
+
+        assertEquals(ReplayProgress.State.RUNNING, progress.getState());
+        assertEquals(12, progress.getTotal());
+        assertEquals(0, progress.getReplayed());
+        assertNull(progress.getFailure());
+    }
+
+    @Test
+    public void testReplayStartsAgainOnceFinished() {
+        ReplayProgress progress = new ReplayProgress();
+        progress.start(1);
+        progress.replayed();
+        progress.finished();
+
+        assertTrue(progress.start(2));
+
+        assertEquals(ReplayProgress.State.RUNNING, progress.getState());
+        assertEquals(0, progress.getReplayed());
+        assertEquals(0.0, progress.getPercentComplete(), 0.0);
+    }
+}
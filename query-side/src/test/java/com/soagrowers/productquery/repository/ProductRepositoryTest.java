@@ -0,0 +1,179 @@
+package com.soagrowers.productquery.repository;
+
+import com.soagrowers.productquery.domain.Product;
+import com.soagrowers.productquery.feed.ProductChange;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.orm.jpa.hibernate.SpringNamingStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ProductRepositoryTest.JpaConfiguration.class)
+@Transactional
+public class ProductRepositoryTest {
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Test
+    public void testAddIfAbsent() {
+        assertEquals(1, productRepository.addIfAbsent("product-1", "one", 0));
+        assertEquals(0, productRepository.addIfAbsent("product-1", "renamed", 0));
+
+        assertProduct("product-1", "one", false, 0);
+    }
+
+    @Test
+    public void testUpdateSaleableIfNewer() {
+        productRepository.addIfAbsent("product-1", "one", 0);
+
+        assertEquals(1, productRepository.updateSaleableIfNewer("product-1", true, 2));
+        assertEquals(0, productRepository.updateSaleableIfNewer("product-1", false, 1));
+        assertEquals(0, productRepository.updateSaleableIfNewer("product-1", false, 2));
+
+        assertProduct("product-1", "one", true, 2);
+    }
+
+    @Test
+    public void testUpdateSaleableOfAnUnknownProductChangesNothing() {
+        assertEquals(0, productRepository.updateSaleableIfNewer("product-1", true, 1));
+        assertNull(productRepository.findSequenceNumber("product-1"));
+    }
+
+    @Test
+    public void testSaleableEventBeforeTheAddedEventKeepsItsFlag() {
+        assertEquals(1, productRepository.addUnnamedIfAbsent("product-1", true, 1));
+        assertProduct("product-1", null, true, 1);
+
+        assertEquals(0, productRepository.addIfAbsent("product-1", "one", 0));
+        assertEquals(1, productRepository.nameIfUnnamed("product-1", "one"));
+
+        assertProduct("product-1", "one", true, 1);
+    }
+
+    @Test
+    public void testNamedProductsAreNotRenamed() {
+        productRepository.addIfAbsent("product-1", "one", 0);
+
+        assertEquals(0, productRepository.addUnnamedIfAbsent("product-1", true, 1));
+        assertEquals(0, productRepository.nameIfUnnamed("product-1", "renamed"));
+        assertEquals(0, productRepository.nameIfUnnamed("product-2", "two"));
+
+        assertProduct("product-1", "one", false, 0);
+    }
+
+    @Test
+    public void testPagingThroughTheProducts() {
+        addProducts();
+
+        assertIds(productRepository.findFirstPage(new PageRequest(0, 2)), "product-0", "product-1");
+        assertIds(productRepository.findAfter("product-1", new PageRequest(0, 2)), "product-10", "product-11");
+        assertIds(productRepository.findAfter("product-11", new PageRequest(0, 2)), "product-2", "product-3");
+        assertIds(productRepository.findAfter("product-8", new PageRequest(0, 2)), "product-9");
+        assertIds(productRepository.findAfter("product-9", new PageRequest(0, 2)));
+    }
+
+    @Test
+    public void testPagingStartsAfterAnIdThatIsntThere() {
+        addProducts();
+
+        assertIds(productRepository.findAfter("product-5a", new PageRequest(0, 2)), "product-6", "product-7");
+        assertIds(productRepository.findAfter("", new PageRequest(0, 1)), "product-0");
+    }
+
+    @Test
+    public void testPagingThroughTheSaleableProducts() {
+        addProducts();
+
+        assertIds(productRepository.findFirstPageBySaleable(true, new PageRequest(0, 3)), "product-0", "product-10", "product-2");
+        assertIds(productRepository.findBySaleableAfter(true, "product-2", new PageRequest(0, 3)), "product-4", "product-6", "product-8");
+        assertIds(productRepository.findBySaleableAfter(true, "product-8", new PageRequest(0, 3)));
+        assertIds(productRepository.findFirstPageBySaleable(false, new PageRequest(0, 2)), "product-1", "product-11");
+        assertIds(productRepository.findBySaleableAfter(false, "product-7", new PageRequest(0, 2)), "product-9");
+    }
+
+    @Test
+    public void testFirstPageOfAnEmptyView() {
+        assertIds(productRepository.findFirstPage(new PageRequest(0, 2)));
+        assertIds(productRepository.findFirstPageBySaleable(true, new PageRequest(0, 2)));
+    }
+
+    /**
+     * product-0 to product-11, the even ones saleable. In id order product-10 and product-11
+     * come straight after product-1.
+     */
+    private void addProducts() {
+        for (int i = 0; i < 12; i++) {
+            productRepository.addIfAbsent("product-" + i, "name-" + i, 0);
+            if (i % 2 == 0) {
+                productRepository.updateSaleableIfNewer("product-" + i, true, 1);
+            }
+        }
+    }
+
+    private static void assertIds(List<Product> products, String... ids) {
+        List<String> actual = new ArrayList<String>();
+        for (Product product : products) {
+            actual.add(product.getId());
+        }
+        assertEquals(Arrays.asList(ids), actual);
+    }
+
+    private void assertProduct(String id, String name, boolean saleable, long sequenceNumber) {
+        ProductChange product = productRepository.findChange(id);
+        assertEquals(name, product.getName());
+        assertEquals(saleable, product.isSaleable());
+        assertEquals(sequenceNumber, product.getVersion());
+        assertEquals(Long.valueOf(sequenceNumber), productRepository.findSequenceNumber(id));
+    }
+
+    @Configuration
+    @EnableJpaRepositories(basePackageClasses = ProductRepository.class)
+    @EnableTransactionManagement
+    static class JpaConfiguration {
+
+        @Bean
+        public DataSource dataSource() {
+            return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        }
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+            HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+            vendorAdapter.setGenerateDdl(true);
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource());
+            factory.setPackagesToScan(Product.class.getPackage().getName());
+            factory.setJpaVendorAdapter(vendorAdapter);
+            factory.getJpaPropertyMap().put("hibernate.ejb.naming_strategy", SpringNamingStrategy.class.getName());
+            return factory;
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}